@@ -0,0 +1,59 @@
+package de.zalando.tip.zalenium.container;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The operations the proxies need from a container backend. {@link DockerContainerClient} is the one used by the
+ * hub, {@link InMemoryContainerClient} simulates containers so the starter logic can be tested without a daemon.
+ */
+public interface ContainerClient {
+
+    /*
+        Creates the container without starting it and returns its id.
+     */
+    String createContainer(ContainerSpec spec) throws ContainerException, InterruptedException;
+
+    void startContainer(String containerId) throws ContainerException, InterruptedException;
+
+    void stopContainer(String containerId, int secondsToWaitBeforeKilling) throws ContainerException,
+            InterruptedException;
+
+    /*
+        Runs a command in the container and returns its output.
+     */
+    String execute(String containerId, String[] command) throws ContainerException, InterruptedException;
+
+    /*
+        A tar stream with the contents of the path, the caller closes it.
+     */
+    InputStream archiveContainer(String containerId, String path) throws ContainerException, InterruptedException;
+
+    /*
+        All the containers, including the stopped ones.
+     */
+    List<ContainerInfo> listContainers() throws ContainerException, InterruptedException;
+
+    /*
+        A resource usage sample of a running container.
+     */
+    ContainerStats getStats(String containerId) throws ContainerException, InterruptedException;
+
+    /*
+        The memory of the host the containers run on, 0 when it is unknown.
+     */
+    long getHostMemoryBytes() throws ContainerException, InterruptedException;
+
+    /*
+        The most recent downloaded tag of the image, null when there is none.
+     */
+    String getLatestImage(String imageName) throws ContainerException, InterruptedException;
+
+    /*
+        Container events are passed to the listener until the returned subscription is closed.
+     */
+    Closeable subscribeToEvents(Consumer<ContainerEvent> listener) throws ContainerException;
+
+}
@@ -0,0 +1,46 @@
+package de.zalando.tip.zalenium.container;
+
+/**
+ * Something that happened to a container, e.g. start, die, oom, destroy (the Docker event names are used).
+ */
+public class ContainerEvent {
+
+    public static final String START = "start";
+    public static final String DIE = "die";
+    public static final String OOM = "oom";
+    public static final String DESTROY = "destroy";
+
+    private final String containerId;
+    private final String image;
+    private final String action;
+    private final long timeMillis;
+
+    public ContainerEvent(String containerId, String image, String action, long timeMillis) {
+        this.containerId = containerId;
+        this.image = image;
+        this.action = action;
+        this.timeMillis = timeMillis;
+    }
+
+    public String getContainerId() {
+        return containerId;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s (%s)", action, containerId, image);
+    }
+
+}
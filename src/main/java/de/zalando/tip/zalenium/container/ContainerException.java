@@ -0,0 +1,16 @@
+package de.zalando.tip.zalenium.container;
+
+/**
+ * A container backend could not perform an operation.
+ */
+public class ContainerException extends Exception {
+
+    public ContainerException(String message) {
+        super(message);
+    }
+
+    public ContainerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
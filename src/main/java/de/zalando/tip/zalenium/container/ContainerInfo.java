@@ -0,0 +1,61 @@
+package de.zalando.tip.zalenium.container;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A container as listed by a backend.
+ */
+public class ContainerInfo {
+
+    private final String id;
+    private final String name;
+    private final String image;
+    private final String state;
+    private final Map<String, String> labels;
+
+    public ContainerInfo(String id, String name, String image, String state, Map<String, String> labels) {
+        this.id = id;
+        this.name = name;
+        this.image = image;
+        this.state = state;
+        this.labels = labels == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(labels));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /*
+        Without the leading slash Docker adds.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    /*
+        created, running, exited...
+     */
+    public String getState() {
+        return state;
+    }
+
+    public Map<String, String> getLabels() {
+        return labels;
+    }
+
+    public boolean isExited() {
+        return "exited".equalsIgnoreCase(state);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s, %s, %s)", name, id, image, state);
+    }
+
+}
@@ -0,0 +1,116 @@
+package de.zalando.tip.zalenium.container;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What is needed to create a container, independent of the backend.
+ */
+public class ContainerSpec {
+
+    private final String name;
+    private final String image;
+    private final List<String> env;
+    private final Map<String, String> labels;
+    private final ResourceProfile resources;
+    private final String networkMode;
+    private final boolean autoRemove;
+
+    private ContainerSpec(Builder builder) {
+        this.name = builder.name;
+        this.image = builder.image;
+        this.env = Collections.unmodifiableList(new ArrayList<>(builder.env));
+        this.labels = Collections.unmodifiableMap(new HashMap<>(builder.labels));
+        this.resources = builder.resources;
+        this.networkMode = builder.networkMode;
+        this.autoRemove = builder.autoRemove;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    /*
+        Entries in the KEY=value form.
+     */
+    public List<String> getEnv() {
+        return env;
+    }
+
+    public Map<String, String> getLabels() {
+        return labels;
+    }
+
+    public ResourceProfile getResources() {
+        return resources;
+    }
+
+    public String getNetworkMode() {
+        return networkMode;
+    }
+
+    public boolean isAutoRemove() {
+        return autoRemove;
+    }
+
+    public static class Builder {
+        private String name;
+        private String image;
+        private List<String> env = new ArrayList<>();
+        private Map<String, String> labels = new HashMap<>();
+        private ResourceProfile resources = ResourceProfile.NONE;
+        private String networkMode;
+        private boolean autoRemove;
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder image(String image) {
+            this.image = image;
+            return this;
+        }
+
+        public Builder env(List<String> env) {
+            this.env = new ArrayList<>(env);
+            return this;
+        }
+
+        public Builder label(String key, String value) {
+            this.labels.put(key, value);
+            return this;
+        }
+
+        public Builder resources(ResourceProfile resources) {
+            this.resources = resources;
+            return this;
+        }
+
+        public Builder networkMode(String networkMode) {
+            this.networkMode = networkMode;
+            return this;
+        }
+
+        public Builder autoRemove(boolean autoRemove) {
+            this.autoRemove = autoRemove;
+            return this;
+        }
+
+        public ContainerSpec build() {
+            return new ContainerSpec(this);
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package de.zalando.tip.zalenium.container;
+
+/**
+ * A resource usage sample of a container. The CPU share is the fraction of all the host's CPUs the container used
+ * since the previous sample (0 to 1), the memory limit is the host memory when the container has no limit.
+ */
+public class ContainerStats {
+
+    private final double cpuShare;
+    private final long memoryUsageBytes;
+    private final long memoryLimitBytes;
+
+    public ContainerStats(double cpuShare, long memoryUsageBytes, long memoryLimitBytes) {
+        this.cpuShare = cpuShare;
+        this.memoryUsageBytes = memoryUsageBytes;
+        this.memoryLimitBytes = memoryLimitBytes;
+    }
+
+    public double getCpuShare() {
+        return cpuShare;
+    }
+
+    public long getMemoryUsageBytes() {
+        return memoryUsageBytes;
+    }
+
+    public long getMemoryLimitBytes() {
+        return memoryLimitBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f%% CPU, %s/%s MB", cpuShare * 100, memoryUsageBytes / (1024 * 1024),
+                memoryLimitBytes / (1024 * 1024));
+    }
+
+}
@@ -0,0 +1,326 @@
+package de.zalando.tip.zalenium.container;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.CpuStats;
+import com.spotify.docker.client.messages.Event;
+import com.spotify.docker.client.messages.ExecCreation;
+import com.spotify.docker.client.messages.HostConfig;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.MemoryStats;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Container backend talking to a Docker daemon through the spotify docker-client.
+ */
+public class DockerContainerClient implements ContainerClient {
+
+    private static final Logger LOGGER = Logger.getLogger(DockerContainerClient.class.getName());
+
+    private static final long DEFAULT_EVENT_STREAM_INITIAL_RETRY_MILLIS = 1000;
+    private static final long DEFAULT_EVENT_STREAM_MAX_RETRY_MILLIS = 60 * 1000;
+    private static long eventStreamInitialRetryMillis = DEFAULT_EVENT_STREAM_INITIAL_RETRY_MILLIS;
+    private static long eventStreamMaxRetryMillis = DEFAULT_EVENT_STREAM_MAX_RETRY_MILLIS;
+
+    private final DockerClient dockerClient;
+
+    public DockerContainerClient(DockerClient dockerClient) {
+        this.dockerClient = dockerClient;
+    }
+
+    public DockerClient getDockerClient() {
+        return dockerClient;
+    }
+
+    @Override
+    public String createContainer(ContainerSpec spec) throws ContainerException, InterruptedException {
+        HostConfig.Builder hostConfig = HostConfig.builder().autoRemove(spec.isAutoRemove());
+        applyResources(hostConfig, spec.getResources());
+        if (spec.getNetworkMode() != null) {
+            hostConfig.networkMode(spec.getNetworkMode());
+        }
+        ContainerConfig containerConfig = ContainerConfig.builder()
+                .image(spec.getImage())
+                .env(spec.getEnv())
+                .labels(spec.getLabels())
+                .hostConfig(hostConfig.build())
+                .build();
+        try {
+            ContainerCreation containerCreation = dockerClient.createContainer(containerConfig, spec.getName());
+            return containerCreation.id();
+        } catch (DockerException e) {
+            throw new ContainerException("Container " + spec.getName() + " could not be created", e);
+        }
+    }
+
+    private static void applyResources(HostConfig.Builder hostConfig, ResourceProfile resources) {
+        if (resources.getShmSizeBytes() > 0) {
+            hostConfig.shmSize(resources.getShmSizeBytes());
+        }
+        if (resources.getCpuQuotaMicroseconds() > 0) {
+            // The daemon applies the quota to its default period of 100ms.
+            hostConfig.cpuQuota(resources.getCpuQuotaMicroseconds());
+        }
+        if (resources.getCpuShares() > 0) {
+            hostConfig.cpuShares(resources.getCpuShares());
+        }
+        if (resources.getMemoryBytes() > 0) {
+            // Without swap, so a runaway browser is killed instead of slowing down the whole host.
+            hostConfig.memory(resources.getMemoryBytes()).memorySwap(resources.getMemoryBytes());
+        }
+        if (resources.getPidsLimit() > 0) {
+            hostConfig.pidsLimit(resources.getPidsLimit());
+        }
+    }
+
+    @Override
+    public void startContainer(String containerId) throws ContainerException, InterruptedException {
+        try {
+            dockerClient.startContainer(containerId);
+        } catch (DockerException e) {
+            throw new ContainerException("Container " + containerId + " could not be started", e);
+        }
+    }
+
+    @Override
+    public void stopContainer(String containerId, int secondsToWaitBeforeKilling) throws ContainerException,
+            InterruptedException {
+        try {
+            dockerClient.stopContainer(containerId, secondsToWaitBeforeKilling);
+        } catch (DockerException e) {
+            throw new ContainerException("Container " + containerId + " could not be stopped", e);
+        }
+    }
+
+    @Override
+    public String execute(String containerId, String[] command) throws ContainerException, InterruptedException {
+        LogStream output;
+        try {
+            ExecCreation execCreation = dockerClient.execCreate(containerId, command,
+                    DockerClient.ExecCreateParam.attachStdout(), DockerClient.ExecCreateParam.attachStderr());
+            output = dockerClient.execStart(execCreation.id());
+        } catch (DockerException e) {
+            throw new ContainerException(String.format("%s could not be executed in %s", String.join(" ", command),
+                    containerId), e);
+        }
+        try {
+            return output.readFully();
+        } catch (RuntimeException e) {
+            // The command was executed, only its output is lost.
+            LOGGER.log(Level.FINE, containerId + " " + e.toString(), e);
+            return "";
+        }
+    }
+
+    @Override
+    public InputStream archiveContainer(String containerId, String path) throws ContainerException,
+            InterruptedException {
+        try {
+            return dockerClient.archiveContainer(containerId, path);
+        } catch (DockerException e) {
+            throw new ContainerException(path + " could not be copied from " + containerId, e);
+        }
+    }
+
+    @Override
+    public List<ContainerInfo> listContainers() throws ContainerException, InterruptedException {
+        List<Container> containers;
+        try {
+            containers = dockerClient.listContainers(DockerClient.ListContainersParam.allContainers());
+        } catch (DockerException e) {
+            throw new ContainerException("Containers could not be listed", e);
+        }
+        List<ContainerInfo> containerInfos = new ArrayList<>();
+        for (Container container : containers) {
+            String name = container.names() == null || container.names().isEmpty() ? "" : container.names().get(0);
+            containerInfos.add(new ContainerInfo(container.id(), name.startsWith("/") ? name.substring(1) : name,
+                    container.image(), container.state(), container.labels()));
+        }
+        return containerInfos;
+    }
+
+    /*
+        Same calculation as "docker stats", without multiplying by the number of CPUs.
+     */
+    @Override
+    public ContainerStats getStats(String containerId) throws ContainerException, InterruptedException {
+        com.spotify.docker.client.messages.ContainerStats stats;
+        try {
+            stats = dockerClient.stats(containerId);
+        } catch (DockerException e) {
+            throw new ContainerException("Stats of " + containerId + " could not be read", e);
+        }
+        double cpuShare = 0;
+        CpuStats cpuStats = stats.cpuStats();
+        CpuStats previousCpuStats = stats.precpuStats();
+        if (cpuStats != null && previousCpuStats != null && cpuStats.cpuUsage() != null &&
+                previousCpuStats.cpuUsage() != null && cpuStats.systemCpuUsage() != null &&
+                previousCpuStats.systemCpuUsage() != null) {
+            long containerDelta = cpuStats.cpuUsage().totalUsage() - previousCpuStats.cpuUsage().totalUsage();
+            long systemDelta = cpuStats.systemCpuUsage() - previousCpuStats.systemCpuUsage();
+            if (containerDelta > 0 && systemDelta > 0) {
+                cpuShare = (double) containerDelta / systemDelta;
+            }
+        }
+        MemoryStats memoryStats = stats.memoryStats();
+        long memoryUsage = memoryStats == null || memoryStats.usage() == null ? 0 : memoryStats.usage();
+        long memoryLimit = memoryStats == null || memoryStats.limit() == null ? 0 : memoryStats.limit();
+        return new ContainerStats(cpuShare, memoryUsage, memoryLimit);
+    }
+
+    @Override
+    public long getHostMemoryBytes() throws ContainerException, InterruptedException {
+        try {
+            return dockerClient.info().memTotal();
+        } catch (DockerException e) {
+            throw new ContainerException("Docker info could not be read", e);
+        }
+    }
+
+    @Override
+    public String getLatestImage(String imageName) throws ContainerException, InterruptedException {
+        List<Image> images;
+        try {
+            images = new ArrayList<>(dockerClient.listImages(DockerClient.ListImagesParam.byName(imageName)));
+        } catch (DockerException e) {
+            throw new ContainerException("Images could not be listed", e);
+        }
+        images.removeIf(image -> image.repoTags() == null || image.repoTags().isEmpty());
+        if (images.isEmpty()) {
+            return null;
+        }
+        images.sort((o1, o2) -> o2.created().compareTo(o1.created()));
+        return images.get(0).repoTags().get(0);
+    }
+
+    /*
+        Reads the daemon's event stream in a daemon thread until the subscription is closed. When the daemon ends the
+        stream (it restarted or the connection dropped) it is opened again, waiting longer after each failed attempt.
+     */
+    @Override
+    public Closeable subscribeToEvents(Consumer<ContainerEvent> listener) throws ContainerException {
+        EventSubscription subscription = new EventSubscription(listener, openEventStream());
+        Thread reader = new Thread(subscription, "DockerContainerClientEvents");
+        reader.setDaemon(true);
+        reader.start();
+        return subscription;
+    }
+
+    @VisibleForTesting
+    static void setEventStreamRetryMillis(long initialRetryMillis, long maxRetryMillis) {
+        eventStreamInitialRetryMillis = initialRetryMillis;
+        eventStreamMaxRetryMillis = maxRetryMillis;
+    }
+
+    @VisibleForTesting
+    static void restoreEventStreamRetryMillis() {
+        eventStreamInitialRetryMillis = DEFAULT_EVENT_STREAM_INITIAL_RETRY_MILLIS;
+        eventStreamMaxRetryMillis = DEFAULT_EVENT_STREAM_MAX_RETRY_MILLIS;
+    }
+
+    private EventStream openEventStream() throws ContainerException {
+        try {
+            return dockerClient.events(DockerClient.EventsParam.type("container"));
+        } catch (DockerException e) {
+            throw new ContainerException("Docker events could not be read", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ContainerException("Interrupted while subscribing to the Docker events", e);
+        }
+    }
+
+    private class EventSubscription implements Runnable, Closeable {
+
+        private final Consumer<ContainerEvent> listener;
+        private volatile EventStream eventStream;
+        private volatile boolean closed;
+
+        EventSubscription(Consumer<ContainerEvent> listener, EventStream eventStream) {
+            this.listener = listener;
+            this.eventStream = eventStream;
+        }
+
+        @Override
+        public void run() {
+            long retryMillis = eventStreamInitialRetryMillis;
+            while (!closed) {
+                if (readEvents()) {
+                    retryMillis = eventStreamInitialRetryMillis;
+                }
+                if (closed) {
+                    return;
+                }
+                LOGGER.log(Level.WARNING, "Docker event stream ended, dead containers are only noticed by the " +
+                        "registry polling until it is read again");
+                try {
+                    retryMillis = reopen(retryMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /*
+            Opens the stream again, waiting twice as long after each failed attempt. Returns the next wait.
+         */
+        private long reopen(long retryMillis) throws InterruptedException {
+            long nextRetryMillis = retryMillis;
+            while (!closed) {
+                Thread.sleep(nextRetryMillis);
+                nextRetryMillis = Math.min(nextRetryMillis * 2, eventStreamMaxRetryMillis);
+                try {
+                    eventStream = openEventStream();
+                } catch (ContainerException e) {
+                    LOGGER.log(Level.FINE, e.toString(), e);
+                    continue;
+                }
+                LOGGER.log(Level.INFO, "Docker event stream read again");
+                if (closed) {
+                    eventStream.close();
+                }
+                break;
+            }
+            return nextRetryMillis;
+        }
+
+        /*
+            Passes the events to the listener until the stream ends, returns whether there was at least one.
+         */
+        private boolean readEvents() {
+            boolean eventsRead = false;
+            try {
+                while (eventStream.hasNext()) {
+                    Event event = eventStream.next();
+                    long time = event.time() == null ? System.currentTimeMillis() : event.time().getTime();
+                    listener.accept(new ContainerEvent(event.id(), event.from(), event.status(), time));
+                    eventsRead = true;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Docker event stream closed: " + e.toString(), e);
+            }
+            eventStream.close();
+            return eventsRead;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            eventStream.close();
+        }
+    }
+
+}
@@ -0,0 +1,322 @@
+package de.zalando.tip.zalenium.container;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Simulated container backend, it keeps the containers in memory and moves them through their lifecycle using the
+ * given clock: a started container boots for bootDelayMs and then takes registrationDelayMs to register with the
+ * hub, at that point the registration handler is called (e.g. to register a proxy in a test registry).
+ *
+ * Registrations are processed when the containers are listed and on {@link #advance()}, so with a manual clock the
+ * simulation is fully deterministic. This allows testing the scheduling and throughput of the starter with
+ * thousands of containers and without a Docker daemon.
+ */
+public class InMemoryContainerClient implements ContainerClient {
+
+    public static final String RUNNING = "running";
+    public static final String CREATED = "created";
+    public static final String EXITED = "exited";
+
+    private final LongSupplier clock;
+    private final long bootDelayMs;
+    private final long registrationDelayMs;
+    private final Map<String, SimulatedContainer> containers = new LinkedHashMap<>();
+    private final List<Consumer<ContainerEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final List<ContainerEvent> pendingEvents = new ArrayList<>();
+    private final List<ContainerInfo> pendingRegistrations = new ArrayList<>();
+    private Consumer<ContainerInfo> registrationHandler = container -> { };
+    private int videoSizeBytes = 1024;
+    private ContainerStats containerStats = new ContainerStats(0, 0, 0);
+    private final Map<String, ContainerStats> containerStatsByName = new HashMap<>();
+    private long hostMemoryBytes;
+    private int failingCreations;
+    private long createdContainers;
+
+    public InMemoryContainerClient(LongSupplier clock, long bootDelayMs, long registrationDelayMs) {
+        this.clock = clock;
+        this.bootDelayMs = bootDelayMs;
+        this.registrationDelayMs = registrationDelayMs;
+    }
+
+    public InMemoryContainerClient(long bootDelayMs, long registrationDelayMs) {
+        this(System::currentTimeMillis, bootDelayMs, registrationDelayMs);
+    }
+
+    public synchronized void setRegistrationHandler(Consumer<ContainerInfo> registrationHandler) {
+        this.registrationHandler = registrationHandler;
+    }
+
+    public synchronized void setVideoSizeBytes(int videoSizeBytes) {
+        this.videoSizeBytes = videoSizeBytes;
+    }
+
+    /*
+        The stats every running container reports.
+     */
+    public synchronized void setContainerStats(ContainerStats containerStats) {
+        this.containerStats = containerStats;
+    }
+
+    /*
+        The stats one container reports, instead of the ones of every running container.
+     */
+    public synchronized void setContainerStats(String containerName, ContainerStats containerStats) {
+        containerStatsByName.put(containerName, containerStats);
+    }
+
+    /*
+        The memory the simulated host reports, 0 (the default) when it is unknown.
+     */
+    public synchronized void setHostMemoryBytes(long hostMemoryBytes) {
+        this.hostMemoryBytes = hostMemoryBytes;
+    }
+
+    /*
+        The next creations fail, to simulate a daemon in trouble.
+     */
+    public synchronized void failNextCreations(int count) {
+        this.failingCreations = count;
+    }
+
+    @Override
+    public String createContainer(ContainerSpec spec) throws ContainerException {
+        synchronized (this) {
+            if (failingCreations > 0) {
+                failingCreations--;
+                throw new ContainerException("Simulated failure creating " + spec.getName());
+            }
+            for (SimulatedContainer container : containers.values()) {
+                if (container.spec.getName() != null && container.spec.getName().equals(spec.getName())) {
+                    throw new ContainerException("Conflict, the name " + spec.getName() + " is already in use");
+                }
+            }
+            createdContainers++;
+            String id = String.format("%064x", createdContainers);
+            containers.put(id, new SimulatedContainer(id, spec));
+            return id;
+        }
+    }
+
+    @Override
+    public void startContainer(String containerId) throws ContainerException {
+        synchronized (this) {
+            SimulatedContainer container = getContainer(containerId);
+            if (!RUNNING.equals(container.state)) {
+                container.state = RUNNING;
+                container.startedAt = clock.getAsLong();
+                queueEvent(container, ContainerEvent.START);
+            }
+        }
+        dispatchEvents();
+    }
+
+    @Override
+    public void stopContainer(String containerId, int secondsToWaitBeforeKilling) throws ContainerException {
+        synchronized (this) {
+            exit(getContainer(containerId), ContainerEvent.DIE);
+        }
+        dispatchEvents();
+    }
+
+    /*
+        Simulates the kernel killing the container because it ran out of memory.
+     */
+    public void killOutOfMemory(String containerId) throws ContainerException {
+        synchronized (this) {
+            SimulatedContainer container = getContainer(containerId);
+            queueEvent(container, ContainerEvent.OOM);
+            exit(container, ContainerEvent.DIE);
+        }
+        dispatchEvents();
+    }
+
+    @Override
+    public synchronized String execute(String containerId, String[] command) throws ContainerException {
+        SimulatedContainer container = getContainer(containerId);
+        if (!RUNNING.equals(container.state)) {
+            throw new ContainerException("Container " + containerId + " is not running");
+        }
+        container.executedCommands.add(String.join(" ", command));
+        return "";
+    }
+
+    @Override
+    public synchronized InputStream archiveContainer(String containerId, String path) throws ContainerException {
+        SimulatedContainer container = getContainer(containerId);
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarStream = new TarArchiveOutputStream(tar)) {
+            TarArchiveEntry entry = new TarArchiveEntry(String.format("vid_%s.mp4", container.spec.getName()));
+            entry.setSize(videoSizeBytes);
+            tarStream.putArchiveEntry(entry);
+            tarStream.write(new byte[videoSizeBytes]);
+            tarStream.closeArchiveEntry();
+        } catch (IOException e) {
+            throw new ContainerException("Simulated archive of " + path + " could not be built", e);
+        }
+        return new ByteArrayInputStream(tar.toByteArray());
+    }
+
+    @Override
+    public List<ContainerInfo> listContainers() {
+        List<ContainerInfo> containerInfos = new ArrayList<>();
+        synchronized (this) {
+            processTransitions();
+            for (SimulatedContainer container : containers.values()) {
+                containerInfos.add(container.toContainerInfo());
+            }
+        }
+        dispatchEvents();
+        return containerInfos;
+    }
+
+    @Override
+    public synchronized ContainerStats getStats(String containerId) throws ContainerException {
+        SimulatedContainer container = getContainer(containerId);
+        if (!RUNNING.equals(container.state)) {
+            throw new ContainerException("Container " + containerId + " is not running");
+        }
+        return containerStatsByName.getOrDefault(container.spec.getName(), containerStats);
+    }
+
+    @Override
+    public synchronized long getHostMemoryBytes() {
+        return hostMemoryBytes;
+    }
+
+    @Override
+    public String getLatestImage(String imageName) {
+        return imageName + ":latest";
+    }
+
+    @Override
+    public Closeable subscribeToEvents(Consumer<ContainerEvent> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /*
+        Processes the registrations that are due according to the clock (listing the containers does it too).
+     */
+    public void advance() {
+        synchronized (this) {
+            processTransitions();
+        }
+        dispatchEvents();
+    }
+
+    public synchronized boolean isRegistered(String containerId) {
+        SimulatedContainer container = containers.get(containerId);
+        return container != null && container.registered;
+    }
+
+    public synchronized List<String> getExecutedCommands(String containerId) {
+        SimulatedContainer container = containers.get(containerId);
+        return container == null ? Collections.emptyList() : new ArrayList<>(container.executedCommands);
+    }
+
+    public synchronized ContainerSpec getSpec(String containerId) {
+        SimulatedContainer container = containers.get(containerId);
+        return container == null ? null : container.spec;
+    }
+
+    public synchronized long getCreatedContainers() {
+        return createdContainers;
+    }
+
+    private SimulatedContainer getContainer(String containerId) throws ContainerException {
+        SimulatedContainer container = containers.get(containerId);
+        if (container == null) {
+            throw new ContainerException("No such container: " + containerId);
+        }
+        return container;
+    }
+
+    private void exit(SimulatedContainer container, String action) {
+        if (EXITED.equals(container.state)) {
+            return;
+        }
+        container.state = EXITED;
+        queueEvent(container, action);
+        if (container.spec.isAutoRemove()) {
+            containers.remove(container.id);
+            queueEvent(container, ContainerEvent.DESTROY);
+        }
+    }
+
+    private void processTransitions() {
+        long now = clock.getAsLong();
+        for (SimulatedContainer container : containers.values()) {
+            if (RUNNING.equals(container.state) && !container.registered &&
+                    now >= container.startedAt + bootDelayMs + registrationDelayMs) {
+                container.registered = true;
+                pendingRegistrations.add(container.toContainerInfo());
+            }
+        }
+    }
+
+    private void queueEvent(SimulatedContainer container, String action) {
+        pendingEvents.add(new ContainerEvent(container.id, container.spec.getImage(), action, clock.getAsLong()));
+    }
+
+    /*
+        Listeners and the registration handler are called outside of the lock, so they can call back into the client.
+     */
+    private void dispatchEvents() {
+        List<ContainerEvent> events;
+        List<ContainerInfo> registrations;
+        Consumer<ContainerInfo> handler;
+        synchronized (this) {
+            if (pendingEvents.isEmpty() && pendingRegistrations.isEmpty()) {
+                return;
+            }
+            events = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+            registrations = new ArrayList<>(pendingRegistrations);
+            pendingRegistrations.clear();
+            handler = registrationHandler;
+        }
+        for (ContainerEvent event : events) {
+            for (Consumer<ContainerEvent> listener : listeners) {
+                listener.accept(event);
+            }
+        }
+        for (ContainerInfo registration : registrations) {
+            handler.accept(registration);
+        }
+    }
+
+    private static final class SimulatedContainer {
+        private final String id;
+        private final ContainerSpec spec;
+        private final List<String> executedCommands = new ArrayList<>();
+        private String state = CREATED;
+        private long startedAt;
+        private boolean registered;
+
+        private SimulatedContainer(String id, ContainerSpec spec) {
+            this.id = id;
+            this.spec = spec;
+        }
+
+        private ContainerInfo toContainerInfo() {
+            return new ContainerInfo(id, spec.getName(), spec.getImage(), state, spec.getLabels());
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package de.zalando.tip.zalenium.container;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The resources a container may use. A value of 0 leaves it unlimited (or at the backend's default). Profiles are
+ * written as comma separated key=value pairs, e.g. "cpus=1.5,shares=512,memory=2048,pids=512,shm=1024", where
+ * memory and shm are in MB and the keys that are not given keep the value of the base profile.
+ */
+public class ResourceProfile {
+
+    private static final Logger LOGGER = Logger.getLogger(ResourceProfile.class.getName());
+
+    public static final ResourceProfile NONE = new ResourceProfile(0, 0, 0, 0, 0);
+    private static final long MB = 1024L * 1024;
+    // CFS period Docker uses when only the quota is given, in microseconds.
+    public static final long CPU_PERIOD_MICROSECONDS = 100000;
+
+    private final double cpus;
+    private final long cpuShares;
+    private final long memoryBytes;
+    private final int pidsLimit;
+    private final long shmSizeBytes;
+
+    public ResourceProfile(double cpus, long cpuShares, long memoryBytes, int pidsLimit, long shmSizeBytes) {
+        this.cpus = cpus;
+        this.cpuShares = cpuShares;
+        this.memoryBytes = memoryBytes;
+        this.pidsLimit = pidsLimit;
+        this.shmSizeBytes = shmSizeBytes;
+    }
+
+    public static ResourceProfile parse(String profile, ResourceProfile base) {
+        if (profile == null || profile.trim().isEmpty()) {
+            return base;
+        }
+        double cpus = base.cpus;
+        long cpuShares = base.cpuShares;
+        long memoryBytes = base.memoryBytes;
+        int pidsLimit = base.pidsLimit;
+        long shmSizeBytes = base.shmSizeBytes;
+        for (String entry : profile.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] keyAndValue = entry.split("=", 2);
+            String key = keyAndValue[0].trim().toLowerCase();
+            String value = keyAndValue.length > 1 ? keyAndValue[1].trim() : "";
+            try {
+                switch (key) {
+                    case "cpus":
+                        cpus = Double.parseDouble(value);
+                        break;
+                    case "shares":
+                        cpuShares = Long.parseLong(value);
+                        break;
+                    case "memory":
+                        memoryBytes = Long.parseLong(value) * MB;
+                        break;
+                    case "pids":
+                        pidsLimit = Integer.parseInt(value);
+                        break;
+                    case "shm":
+                        shmSizeBytes = Long.parseLong(value) * MB;
+                        break;
+                    default:
+                        LOGGER.log(Level.WARNING, String.format("Unknown resource %s in profile %s", key, profile));
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, String.format("Invalid value for %s in profile %s", key, profile));
+            }
+        }
+        return new ResourceProfile(Math.max(0, cpus), Math.max(0, cpuShares), Math.max(0, memoryBytes),
+                Math.max(0, pidsLimit), Math.max(0, shmSizeBytes));
+    }
+
+    public double getCpus() {
+        return cpus;
+    }
+
+    /*
+        The CFS quota for the CPUs in a period of CPU_PERIOD_MICROSECONDS, 0 when the CPUs are not limited.
+     */
+    public long getCpuQuotaMicroseconds() {
+        return Math.round(cpus * CPU_PERIOD_MICROSECONDS);
+    }
+
+    public long getCpuShares() {
+        return cpuShares;
+    }
+
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public int getPidsLimit() {
+        return pidsLimit;
+    }
+
+    public long getShmSizeBytes() {
+        return shmSizeBytes;
+    }
+
+    @Override
+    public String toString() {
+        List<String> resources = new ArrayList<>();
+        resources.add(cpus > 0 ? String.format("%s CPUs", cpus) : "unlimited CPUs");
+        if (cpuShares > 0) {
+            resources.add(cpuShares + " CPU shares");
+        }
+        resources.add(memoryBytes > 0 ? String.format("%s MB memory", memoryBytes / MB) : "unlimited memory");
+        if (pidsLimit > 0) {
+            resources.add(pidsLimit + " pids");
+        }
+        if (shmSizeBytes > 0) {
+            resources.add(String.format("%s MB shm", shmSizeBytes / MB));
+        }
+        return String.join(", ", resources);
+    }
+
+}
@@ -0,0 +1,106 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import de.zalando.tip.zalenium.util.Environment;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Adjusts the max. amount of docker-selenium containers to the load of the hosts, sampled by the
+    ContainerLoadSampler with the container stats.
+    When the CPU or memory used by the containers of a host goes above its target the limit is lowered to what the
+    hosts can run at the target (and the host gets no new nodes), when every host is well below its targets and the
+    limit is being reached it is raised by one. The limit stays between ZALENIUM_ADAPTIVE_MIN_CONTAINERS and
+    ZALENIUM_ADAPTIVE_MAX_CONTAINERS, which defaults to ZALENIUM_MAX_DOCKER_SELENIUM_CONTAINERS.
+ */
+class AdaptiveContainerLimiter {
+
+    private static final Logger LOGGER = Logger.getLogger(AdaptiveContainerLimiter.class.getName());
+
+    static final String ZALENIUM_ADAPTIVE_LIMIT_ENABLED = "ZALENIUM_ADAPTIVE_LIMIT_ENABLED";
+    static final String ZALENIUM_ADAPTIVE_MIN_CONTAINERS = "ZALENIUM_ADAPTIVE_MIN_CONTAINERS";
+    static final String ZALENIUM_ADAPTIVE_MAX_CONTAINERS = "ZALENIUM_ADAPTIVE_MAX_CONTAINERS";
+    static final String ZALENIUM_ADAPTIVE_TARGET_CPU = "ZALENIUM_ADAPTIVE_TARGET_CPU";
+    static final String ZALENIUM_ADAPTIVE_TARGET_MEMORY = "ZALENIUM_ADAPTIVE_TARGET_MEMORY";
+    private static final int DEFAULT_TARGET_CPU_PERCENT = 75;
+    private static final int DEFAULT_TARGET_MEMORY_PERCENT = 80;
+    // Below this fraction of the targets the hosts have room for one more container.
+    private static final double RAISE_THRESHOLD = 0.8;
+
+    private final boolean enabled;
+    private final int minContainers;
+    private final int maxContainers;
+    private final double targetCpu;
+    private final double targetMemory;
+    private int effectiveMaxContainers;
+
+    AdaptiveContainerLimiter(Environment env, int configuredMaxContainers) {
+        this.enabled = env.getBooleanEnvVariable(ZALENIUM_ADAPTIVE_LIMIT_ENABLED, false);
+        this.maxContainers = Math.max(1, env.getIntEnvVariable(ZALENIUM_ADAPTIVE_MAX_CONTAINERS,
+                configuredMaxContainers));
+        this.minContainers = Math.min(maxContainers, Math.max(1,
+                env.getIntEnvVariable(ZALENIUM_ADAPTIVE_MIN_CONTAINERS, 1)));
+        this.targetCpu = toFraction(env.getIntEnvVariable(ZALENIUM_ADAPTIVE_TARGET_CPU, DEFAULT_TARGET_CPU_PERCENT),
+                DEFAULT_TARGET_CPU_PERCENT);
+        this.targetMemory = toFraction(env.getIntEnvVariable(ZALENIUM_ADAPTIVE_TARGET_MEMORY,
+                DEFAULT_TARGET_MEMORY_PERCENT), DEFAULT_TARGET_MEMORY_PERCENT);
+        this.effectiveMaxContainers = Math.max(minContainers, Math.min(maxContainers, configuredMaxContainers));
+        if (enabled) {
+            LOGGER.log(Level.INFO, String.format("Adapting the max. amount of containers between %s and %s, " +
+                    "targets %.0f%% CPU and %.0f%% memory", minContainers, maxContainers, targetCpu * 100,
+                    targetMemory * 100));
+        }
+    }
+
+    /*
+        The configured max. amount when the limiter is disabled.
+     */
+    synchronized int getMaxContainers(int configuredMaxContainers) {
+        return enabled ? effectiveMaxContainers : configuredMaxContainers;
+    }
+
+    /*
+        Called with every sample of the ContainerLoadSampler.
+     */
+    void update(List<HostLoad> hostLoads) {
+        if (!enabled) {
+            return;
+        }
+        for (HostLoad hostLoad : hostLoads) {
+            if (hostLoad.getHost() != null) {
+                hostLoad.getHost().setOverloaded(hostLoad.getPressure(targetCpu, targetMemory) > 1);
+            }
+        }
+        adjust(hostLoads);
+    }
+
+    @VisibleForTesting
+    synchronized int adjust(List<HostLoad> hostLoads) {
+        int runningContainers = 0;
+        double pressure = 0;
+        for (HostLoad hostLoad : hostLoads) {
+            runningContainers += hostLoad.getRunningContainers();
+            pressure = Math.max(pressure, hostLoad.getPressure(targetCpu, targetMemory));
+        }
+        int previousMax = effectiveMaxContainers;
+        if (pressure > 1) {
+            int sustainable = (int) Math.floor(runningContainers / pressure);
+            effectiveMaxContainers = Math.max(minContainers, Math.min(previousMax - 1, sustainable));
+        } else if (pressure < RAISE_THRESHOLD && runningContainers >= previousMax - 1) {
+            effectiveMaxContainers = Math.min(maxContainers, previousMax + 1);
+        }
+        if (effectiveMaxContainers != previousMax) {
+            LOGGER.log(Level.INFO, String.format("Max. amount of containers changed from %s to %s, %s running, " +
+                    "host load at %.0f%% of the target", previousMax, effectiveMaxContainers, runningContainers,
+                    pressure * 100));
+        }
+        return effectiveMaxContainers;
+    }
+
+    private static double toFraction(int percent, int defaultPercent) {
+        return (percent > 0 && percent <= 100 ? percent : defaultPercent) / 100.0;
+    }
+
+}
@@ -25,6 +25,11 @@ public class BrowserStackRemoteProxy extends CloudTestingRemoteProxy {
     private static final String BROWSER_STACK_CAPABILITIES_BK_FILE = "browserstack_capabilities.json";
     private static final String BROWSER_STACK_USER = getEnv().getStringEnvVariable("BROWSER_STACK_USER", "");
     private static final String BROWSER_STACK_KEY = getEnv().getStringEnvVariable("BROWSER_STACK_KEY", "");
+    private static final String BROWSER_STACK_PLAN_URL = "https://%s:%s@api.browserstack.com/automate/plan.json";
+    @VisibleForTesting
+    static final String ZALENIUM_BROWSER_STACK_PARALLEL_SESSIONS = "ZALENIUM_BROWSER_STACK_PARALLEL_SESSIONS";
+    @VisibleForTesting
+    static final String ZALENIUM_BROWSER_STACK_COST_WEIGHT = "ZALENIUM_BROWSER_STACK_COST_WEIGHT";
 
     public BrowserStackRemoteProxy(RegistrationRequest request, Registry registry) {
         super(updateBSCapabilities(request, String.format(BROWSER_STACK_CAPABILITIES_URL, BROWSER_STACK_USER,
@@ -34,6 +39,10 @@ public class BrowserStackRemoteProxy extends CloudTestingRemoteProxy {
     @VisibleForTesting
     private static RegistrationRequest updateBSCapabilities(RegistrationRequest registrationRequest, String url) {
         JsonElement bsCapabilities = getCommonProxyUtilities().readJSONFromUrl(url);
+        String planUrl = BROWSER_STACK_USER.isEmpty() ? null :
+                String.format(BROWSER_STACK_PLAN_URL, BROWSER_STACK_USER, BROWSER_STACK_KEY);
+        int maxParallelSessions = getMaxParallelSessions("[BS]", ZALENIUM_BROWSER_STACK_PARALLEL_SESSIONS, planUrl,
+                plan -> plan.getAsJsonObject().get("parallel_sessions_max_allowed").getAsInt());
         try {
             registrationRequest.getCapabilities().clear();
             String userPasswordSuppress = String.format("%s:%s@", BROWSER_STACK_USER, BROWSER_STACK_KEY);
@@ -44,19 +53,19 @@ public class BrowserStackRemoteProxy extends CloudTestingRemoteProxy {
                 bsCapabilities = getCommonProxyUtilities().readJSONFromFile(BROWSER_STACK_CAPABILITIES_BK_FILE);
             }
             logger.log(Level.INFO, logMessage);
-            return addCapabilitiesToRegistrationRequest(registrationRequest, bsCapabilities);
+            addCapabilitiesToRegistrationRequest(registrationRequest, bsCapabilities);
         } catch (Exception e) {
             logger.log(Level.SEVERE, e.toString(), e);
             getGa().trackException(e);
         }
-        return registrationRequest;
+        return setMaxParallelSessions(registrationRequest, maxParallelSessions);
     }
 
-    private static RegistrationRequest addCapabilitiesToRegistrationRequest(RegistrationRequest registrationRequest, JsonElement slCapabilities) {
+    private static RegistrationRequest addCapabilitiesToRegistrationRequest(RegistrationRequest registrationRequest,
+                                                                            JsonElement slCapabilities) {
         for (JsonElement cap : slCapabilities.getAsJsonArray()) {
             JsonObject capAsJsonObject = cap.getAsJsonObject();
             DesiredCapabilities desiredCapabilities = new DesiredCapabilities();
-            desiredCapabilities.setCapability(RegistrationRequest.MAX_INSTANCES, 5);
             String browser = capAsJsonObject.get("browser").getAsString();
             desiredCapabilities.setBrowserName(getBrowser(browser));
             String os = capAsJsonObject.get("os").getAsString();
@@ -121,4 +130,9 @@ public class BrowserStackRemoteProxy extends CloudTestingRemoteProxy {
         return BROWSER_STACK_URL;
     }
 
+    @Override
+    int getCostWeight() {
+        return getEnv().getIntEnvVariable(ZALENIUM_BROWSER_STACK_COST_WEIGHT, DEFAULT_COST_WEIGHT);
+    }
+
 }
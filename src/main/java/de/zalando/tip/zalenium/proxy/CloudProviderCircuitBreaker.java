@@ -0,0 +1,109 @@
+package de.zalando.tip.zalenium.proxy;
+
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Circuit breaker around the session creation of a cloud testing provider. After a number of consecutive failed
+    session starts (server errors, connection errors or timeouts) the circuit opens and the provider is not matched
+    for a while. Requests the provider turns down (a 4xx, e.g. an unsupported capability) are not counted.
+    When the open period is over, one trial session is let through: the circuit closes if it starts and opens again
+    if it fails. A trial that never reports back stops blocking new trials after one open period.
+ */
+class CloudProviderCircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Logger logger = Logger.getLogger(CloudProviderCircuitBreaker.class.getName());
+
+    private final String providerName;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long trialStartedAt;
+
+    CloudProviderCircuitBreaker(String providerName, int failureThreshold, long openMillis) {
+        this(providerName, failureThreshold, openMillis, System::currentTimeMillis);
+    }
+
+    CloudProviderCircuitBreaker(String providerName, int failureThreshold, long openMillis, LongSupplier clock) {
+        this.providerName = providerName;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /*
+        Whether the provider should be matched at all. Moves an open circuit to half open when its period is over.
+     */
+    synchronized boolean isAvailable() {
+        endOpenPeriod();
+        return state == State.CLOSED || (state == State.HALF_OPEN &&
+                (trialStartedAt == 0 || clock.getAsLong() - trialStartedAt >= openMillis));
+    }
+
+    /*
+        Whether the circuit is open. Unlike isAvailable, a half open circuit with a trial running is not open, the
+        requests can wait for the provider until the trial reports back.
+     */
+    synchronized boolean isOpen() {
+        endOpenPeriod();
+        return state == State.OPEN;
+    }
+
+    private void endOpenPeriod() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+            logger.log(Level.INFO, "{0} Circuit half open, the next session is a trial.", providerName);
+            state = State.HALF_OPEN;
+            trialStartedAt = 0;
+        }
+    }
+
+    /*
+        Invoked when a session was created for the provider, in half open state it becomes the only trial.
+     */
+    synchronized void sessionCreated() {
+        if (state == State.HALF_OPEN) {
+            trialStartedAt = clock.getAsLong();
+        }
+    }
+
+    synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            logger.log(Level.INFO, "{0} Circuit closed, the provider is creating sessions again.", providerName);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /*
+        The provider answered but turned the session down, a running trial ends without changing the state so the
+        next session is a new trial.
+     */
+    synchronized void recordRefused() {
+        if (state == State.HALF_OPEN) {
+            trialStartedAt = 0;
+        }
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            logger.log(Level.WARNING, "{0} Circuit open after {1} consecutive failed session starts, the provider " +
+                    "won''t be used for {2}ms.", new Object[]{providerName, consecutiveFailures, openMillis});
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+}
@@ -0,0 +1,64 @@
+package de.zalando.tip.zalenium.proxy;
+
+/*
+    Keeps track of how a cloud testing provider has been behaving lately and turns it into a score between 0
+    (best) and 1 (worst). The score combines the session start latency and failure rate (both as exponentially
+    weighted moving averages, so recent sessions count more), the sessions currently in flight vs. the parallel
+    sessions allowed, and a configured cost weight. CloudTestingRemoteProxy maps the score into its resource usage,
+    which is what the hub uses to order the proxies when more than one can handle a capability.
+ */
+class CloudProviderRoutingStats {
+
+    // Weight of the newest observation in the moving averages.
+    private static final double SMOOTHING_FACTOR = 0.3;
+    // Start latency that gives half of the latency score, 10 seconds is a normal start for most providers.
+    private static final double REFERENCE_LATENCY_MS = 10000;
+    private static final double LATENCY_WEIGHT = 0.35;
+    private static final double FAILURE_WEIGHT = 0.30;
+    private static final double LOAD_WEIGHT = 0.20;
+    private static final double COST_WEIGHT = 0.15;
+
+    private double averageStartLatencyMs;
+    private double failureRate;
+    private long startedSessions;
+    private long failedSessions;
+
+    synchronized void recordSessionStart(long latencyMs, boolean successful) {
+        boolean firstObservation = startedSessions + failedSessions == 0;
+        if (successful) {
+            averageStartLatencyMs = startedSessions == 0 ? latencyMs :
+                    SMOOTHING_FACTOR * latencyMs + (1 - SMOOTHING_FACTOR) * averageStartLatencyMs;
+            startedSessions++;
+        } else {
+            failedSessions++;
+        }
+        double failure = successful ? 0 : 1;
+        failureRate = firstObservation ? failure : SMOOTHING_FACTOR * failure + (1 - SMOOTHING_FACTOR) * failureRate;
+    }
+
+    /*
+        A provider without observations gets the best latency and failure scores, so it is tried soon and starts
+        collecting data.
+     */
+    synchronized double getScore(int inFlightSessions, int maxSessions, int costWeight) {
+        double latencyScore = averageStartLatencyMs / (averageStartLatencyMs + REFERENCE_LATENCY_MS);
+        double loadScore = maxSessions <= 0 ? 1 : Math.min(1, (double) inFlightSessions / maxSessions);
+        double costScore = Math.max(0, Math.min(100, costWeight)) / 100d;
+        return LATENCY_WEIGHT * latencyScore + FAILURE_WEIGHT * failureRate + LOAD_WEIGHT * loadScore
+                + COST_WEIGHT * costScore;
+    }
+
+    synchronized double getAverageStartLatencyMs() {
+        return averageStartLatencyMs;
+    }
+
+    synchronized double getFailureRate() {
+        return failureRate;
+    }
+
+    synchronized String getSummary() {
+        return String.format("%s sessions started, %s failed, average start latency %.0fms, failure rate %.2f",
+                startedSessions, failedSessions, averageStartLatencyMs, failureRate);
+    }
+
+}
@@ -0,0 +1,123 @@
+package de.zalando.tip.zalenium.proxy;
+
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.openqa.selenium.remote.internal.HttpClientFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    The grid's default HttpClientFactory shares one pool among all nodes and closes every connection that has
+    been idle for more than 100ms each time a client is requested, so commands forwarded to a cloud provider
+    almost always open a new connection (and do a new TLS handshake). This factory keeps a pool per provider,
+    reuses the connections while they are not idle for longer than the configured keep alive, and counts how
+    many connections were opened vs. how many requests were sent through them.
+ */
+class CloudTestingHttpClientFactory extends HttpClientFactory {
+
+    private static final Logger LOGGER = Logger.getLogger(CloudTestingHttpClientFactory.class.getName());
+    // Connections idle for longer than this are checked before being leased again.
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+    private final String providerName;
+    private final long keepAliveMs;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final Map<String, CloseableHttpClient> gridClients = new ConcurrentHashMap<>();
+    private final AtomicLong sentRequests = new AtomicLong();
+    private final AtomicLong openedConnections = new AtomicLong();
+
+    CloudTestingHttpClientFactory(String providerName, int poolSize, long keepAliveMs) {
+        super();
+        this.providerName = providerName;
+        this.keepAliveMs = keepAliveMs;
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+        HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> countingConnectionFactory =
+                (route, config) -> {
+                    openedConnections.incrementAndGet();
+                    return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+                };
+        connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry, countingConnectionFactory);
+        connectionManager.setMaxTotal(poolSize);
+        connectionManager.setDefaultMaxPerRoute(poolSize);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+    }
+
+    /*
+        Clients are built once per timeout combination and all of them share the provider's connection pool.
+     */
+    @Override
+    public HttpClient getGridHttpClient(int connectionTimeout, int socketTimeout) {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS);
+        String key = connectionTimeout + ":" + socketTimeout;
+        return gridClients.computeIfAbsent(key, k -> HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .disableRedirectHandling()
+                .setDefaultSocketConfig(createSocketConfig(socketTimeout))
+                .setDefaultRequestConfig(createRequestConfig(connectionTimeout, socketTimeout))
+                .setRoutePlanner(createRoutePlanner())
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) -> sentRequests.incrementAndGet())
+                .build());
+    }
+
+    long getSentRequests() {
+        return sentRequests.get();
+    }
+
+    long getOpenedConnections() {
+        return openedConnections.get();
+    }
+
+    long getReusedConnections() {
+        return Math.max(0, getSentRequests() - getOpenedConnections());
+    }
+
+    PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    String getMetricsSummary() {
+        PoolStats poolStats = getPoolStats();
+        return String.format("%s HTTP pool: %s requests, %s connections opened, %s reused, %s leased, " +
+                        "%s available, %s max", providerName, getSentRequests(), getOpenedConnections(),
+                getReusedConnections(), poolStats.getLeased(), poolStats.getAvailable(), poolStats.getMax());
+    }
+
+    @Override
+    public void close() {
+        for (CloseableHttpClient client : gridClients.values()) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, e.toString(), e);
+            }
+        }
+        gridClients.clear();
+        connectionManager.shutdown();
+        super.close();
+    }
+
+}
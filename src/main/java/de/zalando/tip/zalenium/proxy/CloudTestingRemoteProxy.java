@@ -6,11 +6,15 @@ package de.zalando.tip.zalenium.proxy;
  */
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonElement;
 import de.zalando.tip.zalenium.util.CommonProxyUtilities;
+import de.zalando.tip.zalenium.util.DrainMode;
 import de.zalando.tip.zalenium.util.Environment;
 import de.zalando.tip.zalenium.util.GoogleAnalyticsApi;
+import de.zalando.tip.zalenium.util.LifecycleJournal;
+import de.zalando.tip.zalenium.util.SessionTracing;
+import de.zalando.tip.zalenium.util.NewSessionBodyRewriter;
+import de.zalando.tip.zalenium.util.TelemetryEvent;
 import de.zalando.tip.zalenium.util.ZaleniumCapabilityMatcher;
 import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.internal.Registry;
@@ -19,28 +23,69 @@ import org.openqa.grid.internal.utils.CapabilityMatcher;
 import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
 import org.openqa.grid.web.servlet.handler.RequestType;
 import org.openqa.grid.web.servlet.handler.WebDriverRequest;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.internal.HttpClientFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
 
+    @VisibleForTesting
+    static final String ZALENIUM_CLOUD_HTTP_POOL_SIZE = "ZALENIUM_CLOUD_HTTP_POOL_SIZE";
+    @VisibleForTesting
+    static final String ZALENIUM_CLOUD_HTTP_KEEP_ALIVE_SECONDS = "ZALENIUM_CLOUD_HTTP_KEEP_ALIVE_SECONDS";
+    @VisibleForTesting
+    static final int DEFAULT_CLOUD_HTTP_POOL_SIZE = 20;
+    @VisibleForTesting
+    static final int DEFAULT_CLOUD_HTTP_KEEP_ALIVE_SECONDS = 60;
+    @VisibleForTesting
+    static final int DEFAULT_MAX_PARALLEL_SESSIONS = 5;
+    @VisibleForTesting
+    static final int DEFAULT_COST_WEIGHT = 50;
+    @VisibleForTesting
+    static final String ZALENIUM_CLOUD_CIRCUIT_BREAKER_FAILURES = "ZALENIUM_CLOUD_CIRCUIT_BREAKER_FAILURES";
+    @VisibleForTesting
+    static final String ZALENIUM_CLOUD_CIRCUIT_BREAKER_OPEN_SECONDS = "ZALENIUM_CLOUD_CIRCUIT_BREAKER_OPEN_SECONDS";
+    @VisibleForTesting
+    static final int DEFAULT_CIRCUIT_BREAKER_FAILURES = 3;
+    @VisibleForTesting
+    static final int DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS = 60;
+    // Session attribute holding the time when the new session request was sent to the provider.
+    private static final String SESSION_START_REQUESTED = "zal:cloudSessionStartRequested";
     private static final Logger logger = Logger.getLogger(CloudTestingRemoteProxy.class.getName());
     private static final GoogleAnalyticsApi defaultGA = new GoogleAnalyticsApi();
     private static final CommonProxyUtilities defaultCommonProxyUtilities = new CommonProxyUtilities();
     private static final Environment defaultEnvironment = new Environment();
+    private static final NewSessionBodyRewriter newSessionBodyRewriter = new NewSessionBodyRewriter();
     private static GoogleAnalyticsApi ga = defaultGA;
     private static CommonProxyUtilities commonProxyUtilities = defaultCommonProxyUtilities;
     private static Environment env = defaultEnvironment;
+
+    enum SessionStart {
+        STARTED, REFUSED, FAILED
+    }
+
     private CapabilityMatcher capabilityHelper;
+    private CloudTestingHttpClientFactory httpClientFactory;
+    private URL cloudTestingServiceUrl;
+    private final CloudProviderRoutingStats routingStats = new CloudProviderRoutingStats();
+    private final int costWeight;
+    private volatile float resourceUsage;
+    private CloudProviderCircuitBreaker circuitBreaker;
 
     @SuppressWarnings("WeakerAccess")
     public CloudTestingRemoteProxy(RegistrationRequest request, Registry registry) {
         super(request, registry);
+        this.costWeight = getCostWeight();
+        refreshResourceUsage(0);
     }
 
     static GoogleAnalyticsApi getGa() {
@@ -85,35 +130,205 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
         env = defaultEnvironment;
     }
 
+    /*
+        Account wide limit of parallel sessions for a provider. A positive value in the env variable wins, otherwise
+        the limit is fetched from the provider's concurrency API (when a url is given) and if that is not possible,
+        DEFAULT_MAX_PARALLEL_SESSIONS is used.
+     */
+    @VisibleForTesting
+    static int getMaxParallelSessions(String logPrefix, String envVariable, String concurrencyUrl,
+                                      Function<JsonElement, Integer> concurrencyReader) {
+        int configuredSessions = getEnv().getIntEnvVariable(envVariable, 0);
+        if (configuredSessions > 0) {
+            logger.log(Level.INFO, "{0} Parallel sessions limit set to {1} via {2}",
+                    new Object[]{logPrefix, configuredSessions, envVariable});
+            return configuredSessions;
+        }
+        if (concurrencyUrl != null) {
+            JsonElement concurrency = getCommonProxyUtilities().readJSONFromUrl(concurrencyUrl);
+            try {
+                if (concurrency != null) {
+                    int allowedSessions = concurrencyReader.apply(concurrency);
+                    if (allowedSessions > 0) {
+                        logger.log(Level.INFO, "{0} Parallel sessions limit fetched from the provider: {1}",
+                                new Object[]{logPrefix, allowedSessions});
+                        return allowedSessions;
+                    }
+                }
+            } catch (Exception e) {
+                logger.log(Level.WARNING, logPrefix + " Parallel sessions limit could not be read. " + e.toString(), e);
+            }
+        }
+        logger.log(Level.INFO, "{0} Parallel sessions limit not configured nor fetched, using default: {1}",
+                new Object[]{logPrefix, DEFAULT_MAX_PARALLEL_SESSIONS});
+        return DEFAULT_MAX_PARALLEL_SESSIONS;
+    }
+
+    /*
+        The limit is applied to the whole node (maxSession) and to every capability (maxInstances), so the hub
+        never sends more sessions than the account allows. The requests above it wait in the hub queue. It has to be
+        called once the capabilities are in the request.
+     */
+    static RegistrationRequest setMaxParallelSessions(RegistrationRequest registrationRequest,
+                                                      int maxParallelSessions) {
+        registrationRequest.getConfiguration().put(RegistrationRequest.MAX_SESSION, maxParallelSessions);
+        for (DesiredCapabilities desiredCapabilities : registrationRequest.getCapabilities()) {
+            desiredCapabilities.setCapability(RegistrationRequest.MAX_INSTANCES, maxParallelSessions);
+        }
+        return registrationRequest;
+    }
+
+    @Override
+    public synchronized TestSession getNewSession(Map<String, Object> requestedCapability) {
+        if (DrainMode.isDraining()) {
+            return SessionRejection.draining().markSession(super.getNewSession(requestedCapability));
+        }
+        if (!getCircuitBreaker().isAvailable()) {
+            return null;
+        }
+        TestSession newSession = super.getNewSession(requestedCapability);
+        if (newSession != null) {
+            getCircuitBreaker().sessionCreated();
+            refreshResourceUsage(getTotalUsed());
+            LifecycleJournal.record(LifecycleJournal.Event.SESSION_STARTED, getId(), getTotalUsed());
+            SessionTracing.get().sessionAssigned(requestedCapability, newSession, getId());
+        }
+        return newSession;
+    }
+
+    /*
+        While the circuit is open the provider does not offer any capability, so requests are matched with other
+        providers (or rejected right away) instead of waiting for a provider that is failing. While it is half open
+        the capabilities are still offered, so the requests wait in the hub queue for the outcome of the trial.
+     */
+    @Override
+    public boolean hasCapability(Map<String, Object> requestedCapability) {
+        return !getCircuitBreaker().isOpen() && super.hasCapability(requestedCapability);
+    }
+
+    synchronized CloudProviderCircuitBreaker getCircuitBreaker() {
+        if (circuitBreaker == null) {
+            int failures = getEnv().getIntEnvVariable(ZALENIUM_CLOUD_CIRCUIT_BREAKER_FAILURES,
+                    DEFAULT_CIRCUIT_BREAKER_FAILURES);
+            int openSeconds = getEnv().getIntEnvVariable(ZALENIUM_CLOUD_CIRCUIT_BREAKER_OPEN_SECONDS,
+                    DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS);
+            failures = failures <= 0 ? DEFAULT_CIRCUIT_BREAKER_FAILURES : failures;
+            openSeconds = openSeconds < 0 ? DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS : openSeconds;
+            circuitBreaker = new CloudProviderCircuitBreaker(getClass().getSimpleName(), failures,
+                    openSeconds * 1000L);
+        }
+        return circuitBreaker;
+    }
+
+    @VisibleForTesting
+    synchronized void setCircuitBreaker(CloudProviderCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
     @Override
     public void beforeCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
+        SessionRejection.rejectIfMarked(session, request, response);
         if (request instanceof WebDriverRequest && "POST".equalsIgnoreCase(request.getMethod())) {
             WebDriverRequest seleniumRequest = (WebDriverRequest) request;
             if (seleniumRequest.getRequestType().equals(RequestType.START_SESSION)) {
-                String body = seleniumRequest.getBody();
-                JsonObject jsonObject = new JsonParser().parse(body).getAsJsonObject();
-                JsonObject desiredCapabilities = jsonObject.getAsJsonObject("desiredCapabilities");
-                desiredCapabilities.addProperty(getUserNameProperty(), getUserNameValue());
-                desiredCapabilities.addProperty(getAccessKeyProperty(), getAccessKeyValue());
-                seleniumRequest.setBody(jsonObject.toString());
+                Map<String, String> credentials = new LinkedHashMap<>();
+                credentials.put(getUserNameProperty(), getUserNameValue());
+                credentials.put(getAccessKeyProperty(), getAccessKeyValue());
+                seleniumRequest.setBody(newSessionBodyRewriter.rewrite(seleniumRequest.getBody(), credentials));
+                session.put(SESSION_START_REQUESTED, System.currentTimeMillis());
             }
         }
+        SessionTracing.commandStarted(session, request);
         super.beforeCommand(session, request, response);
     }
 
     @Override
     public void afterCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
+        SessionTracing.commandFinished(session, response);
+        if (request instanceof WebDriverRequest && "POST".equalsIgnoreCase(request.getMethod())) {
+            WebDriverRequest seleniumRequest = (WebDriverRequest) request;
+            if (seleniumRequest.getRequestType().equals(RequestType.START_SESSION)) {
+                boolean sessionCreated = session.getExternalKey() != null;
+                recordSessionStart(session, getSessionStart(response.getStatus(), sessionCreated));
+            }
+        }
         if (request instanceof WebDriverRequest && "DELETE".equalsIgnoreCase(request.getMethod())) {
             WebDriverRequest seleniumRequest = (WebDriverRequest) request;
             if (seleniumRequest.getRequestType().equals(RequestType.STOP_SESSION)) {
                 long executionTime = (System.currentTimeMillis() - session.getSlot().getLastSessionStart()) / 1000;
+                LifecycleJournal.record(LifecycleJournal.Event.SESSION_STOPPED, getId(), executionTime);
                 getGa().testEvent(BrowserStackRemoteProxy.class.getName(), session.getRequestedCapabilities().toString(),
-                        executionTime);
+                        executionTime, TelemetryEvent.getSessionOutcome(response.getStatus()));
+                if (httpClientFactory != null) {
+                    logger.log(Level.FINE, httpClientFactory.getMetricsSummary());
+                }
             }
         }
         super.afterCommand(session, request, response);
     }
 
+    /*
+        When the provider could not be reached, afterCommand is not invoked for the new session request and the
+        session is released right away, so it is recorded as a failed start here.
+     */
+    @Override
+    public void afterSession(TestSession session) {
+        recordSessionStart(session, SessionStart.FAILED);
+        // The slot is released after this, so the session is not in flight anymore.
+        refreshResourceUsage(Math.max(0, getTotalUsed() - 1));
+        SessionTracing.get().finish(SessionTracing.getTrace(session));
+        if (!SessionRejection.isRejected(session)) {
+            SaturationGuard.get().sessionFinished(System.currentTimeMillis());
+        }
+        super.afterSession(session);
+    }
+
+    /*
+        Only server errors, timeouts and answers without a session count against the provider. Other client errors
+        (e.g. an unsupported capability or wrong credentials) are refused requests.
+     */
+    static SessionStart getSessionStart(int responseStatus, boolean sessionCreated) {
+        if (responseStatus >= 500 || responseStatus == HttpServletResponse.SC_REQUEST_TIMEOUT) {
+            return SessionStart.FAILED;
+        }
+        if (responseStatus >= 400) {
+            return SessionStart.REFUSED;
+        }
+        return sessionCreated ? SessionStart.STARTED : SessionStart.FAILED;
+    }
+
+    private void recordSessionStart(TestSession session, SessionStart sessionStart) {
+        Object startRequested = session.get(SESSION_START_REQUESTED);
+        if (startRequested instanceof Long) {
+            session.put(SESSION_START_REQUESTED, null);
+            if (sessionStart == SessionStart.REFUSED) {
+                getCircuitBreaker().recordRefused();
+                return;
+            }
+            boolean successful = sessionStart == SessionStart.STARTED;
+            routingStats.recordSessionStart(System.currentTimeMillis() - (Long) startRequested, successful);
+            refreshResourceUsage(getTotalUsed());
+            if (successful) {
+                getCircuitBreaker().recordSuccess();
+            } else {
+                getCircuitBreaker().recordFailure();
+            }
+            logger.log(Level.FINE, "{0} {1}", new Object[]{getClass().getSimpleName(), routingStats.getSummary()});
+        }
+    }
+
+    CloudProviderRoutingStats getRoutingStats() {
+        return routingStats;
+    }
+
+    /*
+        From 0 to 100, the higher the weight the more expensive the provider is considered while routing. Read once,
+        when the proxy is created.
+     */
+    int getCostWeight() {
+        return DEFAULT_COST_WEIGHT;
+    }
+
     String getUserNameProperty() {
         return null;
     }
@@ -144,17 +359,38 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
 
     /*
         Making the node seem as heavily used, in order to get it listed after the 'docker-selenium' nodes.
-        99% used.
+        Between 99% and 100% used, depending on the routing score, so among the cloud testing providers that
+        support a capability, the one with the best score (faster, more reliable, less loaded, cheaper) is used first.
+        A provider running all the sessions it allows is 100% used.
+        The hub sorts the proxies by this value, so it must not change during a sort. It is a snapshot refreshed
+        when a session starts or ends, not computed on every call.
     */
     @Override
     public float getResourceUsageInPercent() {
-        return 99;
+        return resourceUsage;
+    }
+
+    void refreshResourceUsage(int inFlightSessions) {
+        int maxSessions = getMaxNumberOfConcurrentTestSessions();
+        if (inFlightSessions >= maxSessions) {
+            resourceUsage = 100;
+            return;
+        }
+        double score = routingStats.getScore(inFlightSessions, maxSessions, costWeight);
+        resourceUsage = (float) (99 + Math.min(0.99, score));
     }
 
+    /*
+        The URL is built once, this method is invoked for every forwarded command.
+     */
     @Override
     public URL getRemoteHost() {
+        if (cloudTestingServiceUrl != null) {
+            return cloudTestingServiceUrl;
+        }
         try {
-            return new URL(getCloudTestingServiceUrl());
+            cloudTestingServiceUrl = new URL(getCloudTestingServiceUrl());
+            return cloudTestingServiceUrl;
         } catch (MalformedURLException e) {
             logger.log(Level.SEVERE, e.toString(), e);
             getGa().trackException(e);
@@ -162,4 +398,35 @@ public class CloudTestingRemoteProxy extends DefaultRemoteProxy {
         return null;
     }
 
+    /*
+        Each cloud testing provider gets its own pool of keep-alive connections, see CloudTestingHttpClientFactory.
+     */
+    @Override
+    public synchronized HttpClientFactory getHttpClientFactory() {
+        if (httpClientFactory == null) {
+            int poolSize = getEnv().getIntEnvVariable(ZALENIUM_CLOUD_HTTP_POOL_SIZE, DEFAULT_CLOUD_HTTP_POOL_SIZE);
+            int keepAliveSeconds = getEnv().getIntEnvVariable(ZALENIUM_CLOUD_HTTP_KEEP_ALIVE_SECONDS,
+                    DEFAULT_CLOUD_HTTP_KEEP_ALIVE_SECONDS);
+            poolSize = poolSize <= 0 ? DEFAULT_CLOUD_HTTP_POOL_SIZE : poolSize;
+            keepAliveSeconds = keepAliveSeconds < 0 ? DEFAULT_CLOUD_HTTP_KEEP_ALIVE_SECONDS : keepAliveSeconds;
+            httpClientFactory = new CloudTestingHttpClientFactory(getClass().getSimpleName(), poolSize,
+                    keepAliveSeconds * 1000L);
+        }
+        return httpClientFactory;
+    }
+
+    @Override
+    public void teardown() {
+        try {
+            super.teardown();
+        } finally {
+            synchronized (this) {
+                if (httpClientFactory != null) {
+                    httpClientFactory.close();
+                    httpClientFactory = null;
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,70 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.container.ContainerEvent;
+import de.zalando.tip.zalenium.container.ContainerException;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Listens to the container events of every host, so a node whose container dies (it crashed or it was killed for
+    running out of memory) is unregistered right away instead of when the registry polling times out. Nodes are found
+    by the id of their container, which they look up when they register.
+ */
+class ContainerEventMonitor {
+
+    private static final Logger LOGGER = Logger.getLogger(ContainerEventMonitor.class.getName());
+
+    private final List<Closeable> subscriptions = new ArrayList<>();
+
+    synchronized void start(ContainerHostPool pool, String image, Registry registry) {
+        if (!subscriptions.isEmpty()) {
+            return;
+        }
+        for (ContainerHost host : pool.getHosts()) {
+            try {
+                subscriptions.add(host.getContainerClient().subscribeToEvents(event -> {
+                    if (event.getImage() != null && event.getImage().contains(image)) {
+                        onEvent(pool, host, event, registry.getAllProxies());
+                    }
+                }));
+            } catch (ContainerException e) {
+                LOGGER.log(Level.WARNING, String.format("Container events of %s could not be read, dead nodes " +
+                        "will be found by the registry polling: %s", host.getName(), e.getMessage()));
+            }
+        }
+    }
+
+    /*
+        Evicts the node of the container that died, returns whether there was one. Containers stopped by their own
+        node while it shuts down are left to the node.
+     */
+    boolean onEvent(ContainerHostPool pool, ContainerHost host, ContainerEvent event, Iterable<RemoteProxy> proxies) {
+        if (!ContainerEvent.DIE.equals(event.getAction()) && !ContainerEvent.OOM.equals(event.getAction())) {
+            return false;
+        }
+        for (RemoteProxy proxy : proxies) {
+            if (!(proxy instanceof DockerSeleniumRemoteProxy)) {
+                continue;
+            }
+            DockerSeleniumRemoteProxy node = (DockerSeleniumRemoteProxy) proxy;
+            if (event.getContainerId().equals(node.getKnownContainerId()) &&
+                    pool.forNodeHost(node.getRemoteHost().getHost()) == host) {
+                // Nodes shutting down stop their container themselves, that is not a failure.
+                if (node.isStopping()) {
+                    return false;
+                }
+                node.containerDied(ContainerEvent.OOM.equals(event.getAction()) ?
+                        "its container ran out of memory" : "its container died");
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
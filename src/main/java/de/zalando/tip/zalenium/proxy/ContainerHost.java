@@ -0,0 +1,202 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import de.zalando.tip.zalenium.container.ContainerClient;
+import de.zalando.tip.zalenium.container.ContainerInfo;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    A container backend where docker-selenium nodes can be placed, with the addresses the nodes use to reach the hub
+    and to be reached by it. The local host shares the network of the hub container, remote hosts use the host
+    network so the node and noVNC ports are reachable on the host's address.
+ */
+class ContainerHost {
+
+    private static final Logger LOGGER = Logger.getLogger(ContainerHost.class.getName());
+
+    static final String LOCAL_NETWORK_MODE = "container:zalenium";
+    static final String REMOTE_NETWORK_MODE = "host";
+    private static final String CONTAINER_NAME_PREFIX = "zalenium_";
+    private static final long INITIAL_HEALTH_CHECK_BACKOFF_MS = 5000;
+    private static final long MAX_HEALTH_CHECK_BACKOFF_MS = 60000;
+
+    private final String name;
+    private final ContainerClient containerClient;
+    private final String nodeHost;
+    private final String hubHost;
+    private final int capacity;
+    private final boolean local;
+    private final Set<Integer> allocatedPorts = new HashSet<>();
+    private int runningContainers;
+    private boolean available = true;
+    private long nextHealthCheckMillis;
+    private long healthCheckBackoffMillis = INITIAL_HEALTH_CHECK_BACKOFF_MS;
+    private boolean overloaded;
+
+    ContainerHost(String name, ContainerClient containerClient, String nodeHost, String hubHost, int capacity,
+                  boolean local) {
+        this.name = name;
+        this.containerClient = containerClient;
+        this.nodeHost = nodeHost;
+        this.hubHost = hubHost;
+        this.capacity = capacity;
+        this.local = local;
+    }
+
+    static ContainerHost local(String name, ContainerClient containerClient, int capacity) {
+        return new ContainerHost(name, containerClient, "localhost", "localhost", capacity, true);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    ContainerClient getContainerClient() {
+        return containerClient;
+    }
+
+    String getNodeHost() {
+        return nodeHost;
+    }
+
+    String getHubHost() {
+        return hubHost;
+    }
+
+    String getNetworkMode() {
+        return local ? LOCAL_NETWORK_MODE : REMOTE_NETWORK_MODE;
+    }
+
+    /*
+        0 means the host is only limited by the max. amount of docker-selenium containers.
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    synchronized int getRunningContainers() {
+        return runningContainers;
+    }
+
+    synchronized boolean isAvailable() {
+        return available;
+    }
+
+    /*
+        Counts the running docker-selenium containers, a host whose daemon cannot be reached gets no new nodes until
+        it answers again. While it is unavailable it is only checked now and then (a single call, with a backoff
+        that grows up to a minute) and 0 is returned in between, so a daemon that does not answer is not polled on
+        every refresh.
+     */
+    int refresh(String image) throws InterruptedException {
+        long nowMillis = System.currentTimeMillis();
+        boolean healthCheck;
+        synchronized (this) {
+            if (!available && nowMillis < nextHealthCheckMillis) {
+                return 0;
+            }
+            healthCheck = !available;
+        }
+        try {
+            List<ContainerInfo> containers = healthCheck ?
+                    DockerApiExecutor.get().execute(this, DockerApiExecutor.Operation.LIST, "listContainers", null,
+                            containerClient::listContainers) :
+                    DockerApiExecutor.get().executeIdempotent(this, DockerApiExecutor.Operation.LIST,
+                            "listContainers", null, containerClient::listContainers);
+            int running = 0;
+            Set<Integer> usedPorts = new HashSet<>();
+            for (ContainerInfo container : containers) {
+                if (container.getImage().contains(image) && !container.isExited()) {
+                    running++;
+                    usedPorts.add(getPort(container.getName()));
+                }
+            }
+            synchronized (this) {
+                runningContainers = running;
+                allocatedPorts.addAll(usedPorts);
+                if (healthCheck) {
+                    LOGGER.log(Level.INFO, String.format("%s answers again, nodes will be placed there", name));
+                }
+                available = true;
+                healthCheckBackoffMillis = INITIAL_HEALTH_CHECK_BACKOFF_MS;
+            }
+            return running;
+        } catch (DockerException e) {
+            synchronized (this) {
+                if (available) {
+                    LOGGER.log(Level.WARNING, String.format("Containers on %s could not be listed, no nodes will be " +
+                            "placed there until it answers: %s", name, e.getMessage()));
+                } else {
+                    healthCheckBackoffMillis = Math.min(MAX_HEALTH_CHECK_BACKOFF_MS, healthCheckBackoffMillis * 2);
+                }
+                available = false;
+                nextHealthCheckMillis = System.currentTimeMillis() + healthCheckBackoffMillis;
+            }
+            return 0;
+        }
+    }
+
+    synchronized boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /*
+        Set by the AdaptiveContainerLimiter when the host's CPU or memory is above the target.
+     */
+    synchronized void setOverloaded(boolean overloaded) {
+        this.overloaded = overloaded;
+    }
+
+    synchronized void reserve() {
+        runningContainers++;
+    }
+
+    /*
+        Only ports of the local host can be probed, on remote hosts the ports used by its containers are skipped.
+     */
+    synchronized int allocatePort(int lowerBoundary, int upperBoundary) {
+        for (int portNumber = lowerBoundary; portNumber <= upperBoundary; portNumber++) {
+            if (!allocatedPorts.contains(portNumber) && (!local || isLocalPortFree(portNumber))) {
+                allocatedPorts.add(portNumber);
+                return portNumber;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s/%s containers)", name, getRunningContainers(), capacity);
+    }
+
+    /*
+        Method adapted from https://gist.github.com/vorburger/3429822
+     */
+    private static boolean isLocalPortFree(int portNumber) {
+        try (ServerSocket serverSocket = new ServerSocket(portNumber)) {
+            return serverSocket.getLocalPort() == portNumber;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, e.toString(), e);
+            return false;
+        }
+    }
+
+    private static int getPort(String containerName) {
+        if (containerName != null && containerName.startsWith(CONTAINER_NAME_PREFIX)) {
+            try {
+                return Integer.parseInt(containerName.substring(CONTAINER_NAME_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINE, e.toString(), e);
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,230 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.container.ContainerClient;
+import de.zalando.tip.zalenium.container.DockerContainerClient;
+import de.zalando.tip.zalenium.util.Environment;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    The container hosts the starter places docker-selenium nodes on. By default it is only the daemon the hub runs
+    on, ZALENIUM_DOCKER_HOSTS takes a comma separated list of endpoints, each one optionally followed by #capacity,
+    e.g. "unix:///var/run/docker.sock#10,tcp://10.0.0.2:2375#20". Nodes on remote hosts register with the hub at
+    ZALENIUM_HUB_HOST, which defaults to the address of this machine.
+    The hosts are refreshed in the background, each one on its own, so the hub only reads the counts of their last
+    refresh when it matches a request and a host that does not answer does not hold back the others.
+ */
+class ContainerHostPool {
+
+    private static final Logger LOGGER = Logger.getLogger(ContainerHostPool.class.getName());
+
+    static final String ZALENIUM_DOCKER_HOSTS = "ZALENIUM_DOCKER_HOSTS";
+    static final String ZALENIUM_DOCKER_PLACEMENT = "ZALENIUM_DOCKER_PLACEMENT";
+    static final String ZALENIUM_HUB_HOST = "ZALENIUM_HUB_HOST";
+    private static final int REFRESH_INTERVAL_SECONDS = 5;
+
+    enum Placement {
+        // Spreads the nodes, each one goes to the host with the lowest share of its capacity in use.
+        LEAST_LOADED,
+        // Fills the busiest host that still has room first, so the other hosts can be scaled down.
+        BIN_PACKING
+    }
+
+    private static ContainerHostPool defaultContainerHostPool;
+
+    private final List<ContainerHost> hosts;
+    private final Placement placement;
+    private ScheduledExecutorService refresher;
+
+    ContainerHostPool(List<ContainerHost> hosts, Placement placement) {
+        this.hosts = Collections.unmodifiableList(new ArrayList<>(hosts));
+        this.placement = placement;
+    }
+
+    static ContainerHostPool single(ContainerClient containerClient) {
+        return new ContainerHostPool(Collections.singletonList(ContainerHost.local("local", containerClient, 0)),
+                Placement.LEAST_LOADED);
+    }
+
+    static synchronized ContainerHostPool getDefault() {
+        if (defaultContainerHostPool == null) {
+            defaultContainerHostPool = fromEnvironment(new Environment());
+            LOGGER.log(Level.INFO, String.format("Placing docker-selenium nodes on %s, %s",
+                    defaultContainerHostPool.getHosts(), defaultContainerHostPool.placement));
+        }
+        return defaultContainerHostPool;
+    }
+
+    static ContainerHostPool fromEnvironment(Environment env) {
+        String placementName = env.getStringEnvVariable(ZALENIUM_DOCKER_PLACEMENT, Placement.LEAST_LOADED.name());
+        Placement placement = Placement.LEAST_LOADED;
+        try {
+            placement = Placement.valueOf(placementName.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, String.format("Unknown placement %s, using %s", placementName, placement));
+        }
+        String hostList = env.getStringEnvVariable(ZALENIUM_DOCKER_HOSTS, "");
+        if (hostList.trim().isEmpty()) {
+            return new ContainerHostPool(Collections.singletonList(ContainerHost.local("local",
+                    new DockerContainerClient(DockerClientFactory.getDockerClient()), 0)), placement);
+        }
+        String hubHost = env.getStringEnvVariable(ZALENIUM_HUB_HOST, getLocalAddress());
+        List<ContainerHost> hosts = new ArrayList<>();
+        for (String entry : hostList.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] endpointAndCapacity = entry.trim().split("#", 2);
+            String endpoint = endpointAndCapacity[0];
+            int capacity = 0;
+            if (endpointAndCapacity.length > 1) {
+                try {
+                    capacity = Math.max(0, Integer.parseInt(endpointAndCapacity[1]));
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, String.format("Invalid capacity for %s, it will not be limited", entry));
+                }
+            }
+            ContainerClient containerClient = new DockerContainerClient(DockerClientFactory.getDockerClient(endpoint));
+            if (endpoint.startsWith("unix://")) {
+                hosts.add(ContainerHost.local(endpoint, containerClient, capacity));
+            } else {
+                hosts.add(new ContainerHost(endpoint, containerClient, URI.create(endpoint).getHost(), hubHost,
+                        capacity, false));
+            }
+        }
+        return new ContainerHostPool(hosts, placement);
+    }
+
+    List<ContainerHost> getHosts() {
+        return hosts;
+    }
+
+    Placement getPlacement() {
+        return placement;
+    }
+
+    /*
+        Refreshes every host every few seconds from now on, the first time right away.
+     */
+    synchronized void start(String image) {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newScheduledThreadPool(hosts.size(), runnable -> {
+            Thread thread = new Thread(runnable, "ContainerHostPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (ContainerHost host : hosts) {
+            refresher.scheduleWithFixedDelay(() -> {
+                try {
+                    host.refresh(image);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, String.format("%s could not be refreshed: %s", host.getName(), e), e);
+                }
+            }, 0, REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /*
+        Refreshes every host one after the other and returns the docker-selenium containers running on all of them.
+     */
+    int refresh(String image) throws InterruptedException {
+        int runningContainers = 0;
+        for (ContainerHost host : hosts) {
+            runningContainers += host.refresh(image);
+        }
+        return runningContainers;
+    }
+
+    /*
+        Picks the host for a new node and reserves a slot on it, null when every host is full, overloaded or
+        unavailable.
+        Hosts without a capacity are limited by defaultCapacity (the max. amount of docker-selenium containers).
+     */
+    synchronized ContainerHost place(int defaultCapacity) {
+        ContainerHost selected = null;
+        double selectedLoad = 0;
+        for (ContainerHost host : hosts) {
+            if (!hasRoom(host, defaultCapacity)) {
+                continue;
+            }
+            double load = (double) host.getRunningContainers() / getCapacity(host, defaultCapacity);
+            boolean better = placement == Placement.LEAST_LOADED ? load < selectedLoad : load > selectedLoad;
+            if (selected == null || better) {
+                selected = host;
+                selectedLoad = load;
+            }
+        }
+        if (selected != null) {
+            selected.reserve();
+        }
+        return selected;
+    }
+
+    /*
+        Whether a node could be placed now, based on the last refresh of the hosts.
+     */
+    boolean hasRoom(int defaultCapacity) {
+        for (ContainerHost host : hosts) {
+            if (hasRoom(host, defaultCapacity)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+        The docker-selenium containers running on all the hosts at their last refresh.
+     */
+    int getRunningContainers() {
+        int runningContainers = 0;
+        for (ContainerHost host : hosts) {
+            runningContainers += host.getRunningContainers();
+        }
+        return runningContainers;
+    }
+
+    /*
+        The host a registered node runs on, nodes are found by the address they registered with.
+     */
+    ContainerHost forNodeHost(String nodeHost) {
+        for (ContainerHost host : hosts) {
+            if (host.getNodeHost().equalsIgnoreCase(nodeHost)) {
+                return host;
+            }
+        }
+        return hosts.get(0);
+    }
+
+    private static boolean hasRoom(ContainerHost host, int defaultCapacity) {
+        int capacity = getCapacity(host, defaultCapacity);
+        return host.isAvailable() && !host.isOverloaded() && capacity > 0 && host.getRunningContainers() < capacity;
+    }
+
+    private static int getCapacity(ContainerHost host, int defaultCapacity) {
+        return host.getCapacity() > 0 ? host.getCapacity() : defaultCapacity;
+    }
+
+    private static String getLocalAddress() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            LOGGER.log(Level.WARNING, "The address of the hub could not be found, set " + ZALENIUM_HUB_HOST, e);
+            return "localhost";
+        }
+    }
+
+}
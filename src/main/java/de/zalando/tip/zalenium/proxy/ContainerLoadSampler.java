@@ -0,0 +1,163 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.exceptions.DockerException;
+import de.zalando.tip.zalenium.container.ContainerClient;
+import de.zalando.tip.zalenium.container.ContainerInfo;
+import de.zalando.tip.zalenium.container.ContainerStats;
+import de.zalando.tip.zalenium.util.Environment;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Reads the stats of the running docker-selenium containers of every host in the background, every
+    ZALENIUM_STATS_SAMPLE_INTERVAL seconds. The latest sample of each container is kept and, after each sample, the
+    free nodes take the load of their container from it, so they report it to the registry without calling the
+    daemon. The load of each host is passed to the listener (the AdaptiveContainerLimiter).
+ */
+class ContainerLoadSampler {
+
+    private static final Logger LOGGER = Logger.getLogger(ContainerLoadSampler.class.getName());
+
+    static final String ZALENIUM_STATS_SAMPLE_INTERVAL = "ZALENIUM_STATS_SAMPLE_INTERVAL";
+    private static final int DEFAULT_SAMPLE_INTERVAL_SECONDS = 15;
+
+    private static final ContainerLoadSampler defaultContainerLoadSampler = new ContainerLoadSampler(new Environment());
+    private static ContainerLoadSampler containerLoadSampler = defaultContainerLoadSampler;
+
+    private final int sampleIntervalSeconds;
+    // Node host -> container name -> latest stats
+    private final Map<String, Map<String, ContainerStats>> containerStats = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sampler;
+
+    ContainerLoadSampler(Environment env) {
+        int interval = env.getIntEnvVariable(ZALENIUM_STATS_SAMPLE_INTERVAL, DEFAULT_SAMPLE_INTERVAL_SECONDS);
+        this.sampleIntervalSeconds = interval > 0 ? interval : DEFAULT_SAMPLE_INTERVAL_SECONDS;
+    }
+
+    static ContainerLoadSampler get() {
+        return containerLoadSampler;
+    }
+
+    @VisibleForTesting
+    static void set(ContainerLoadSampler sampler) {
+        containerLoadSampler = sampler;
+    }
+
+    @VisibleForTesting
+    static void restore() {
+        containerLoadSampler = defaultContainerLoadSampler;
+    }
+
+    synchronized void start(ContainerHostPool pool, String image, Registry registry,
+                            Consumer<List<HostLoad>> listener) {
+        if (sampler != null) {
+            return;
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ContainerLoadSampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(() -> {
+            try {
+                List<HostLoad> hostLoads = sample(pool, image);
+                refreshNodes(registry.getAllProxies());
+                listener.accept(hostLoads);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Container load could not be sampled: " + e.toString(), e);
+            }
+        }, sampleIntervalSeconds, sampleIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    List<HostLoad> sample(ContainerHostPool pool, String image) throws InterruptedException {
+        List<HostLoad> hostLoads = new ArrayList<>();
+        for (ContainerHost host : pool.getHosts()) {
+            if (host.isAvailable()) {
+                hostLoads.add(measure(host, image));
+            }
+        }
+        return hostLoads;
+    }
+
+    /*
+        The docker-selenium nodes keep the load of their container until the next sample, so the value the registry
+        sorts them by does not change on every call.
+     */
+    static void refreshNodes(Iterable<RemoteProxy> proxies) {
+        for (RemoteProxy proxy : proxies) {
+            if (proxy instanceof DockerSeleniumRemoteProxy) {
+                ((DockerSeleniumRemoteProxy) proxy).refreshFreeResourceUsage();
+            }
+        }
+    }
+
+    /*
+        The latest stats of a node's container, null when it was not sampled yet.
+     */
+    ContainerStats getStats(String nodeHost, String containerName) {
+        Map<String, ContainerStats> hostStats = containerStats.get(nodeHost.toLowerCase());
+        return hostStats == null ? null : hostStats.get(containerName);
+    }
+
+    /*
+        The memory of the host as the daemon reports it, 0 when it could not be read.
+     */
+    private long getHostMemoryBytes(ContainerHost host) throws InterruptedException {
+        try {
+            return DockerApiExecutor.get().executeIdempotent(host, DockerApiExecutor.Operation.LIST, "info", null,
+                    host.getContainerClient()::getHostMemoryBytes);
+        } catch (DockerException e) {
+            LOGGER.log(Level.FINE, "Memory of " + host.getName() + " could not be read", e);
+            return 0;
+        }
+    }
+
+    /*
+        Stats are read one container at a time, a container that stopped meanwhile is skipped.
+     */
+    private HostLoad measure(ContainerHost host, String image) throws InterruptedException {
+        ContainerClient containerClient = host.getContainerClient();
+        HostLoad hostLoad = new HostLoad(host, getHostMemoryBytes(host));
+        Map<String, ContainerStats> hostStats = new HashMap<>();
+        try {
+            List<ContainerInfo> containers = DockerApiExecutor.get().executeIdempotent(host,
+                    DockerApiExecutor.Operation.LIST, "listContainers", null, containerClient::listContainers);
+            for (ContainerInfo container : containers) {
+                if (!container.getImage().contains(image) || container.isExited()) {
+                    continue;
+                }
+                hostLoad.addRunningContainer();
+                try {
+                    ContainerStats stats = DockerApiExecutor.get().execute(host, DockerApiExecutor.Operation.STATS,
+                            "stats", container.getId(), () -> containerClient.getStats(container.getId()));
+                    hostLoad.add(stats);
+                    hostStats.put(container.getName(), stats);
+                } catch (DockerException e) {
+                    LOGGER.log(Level.FINE, "Stats of " + container.getName() + " could not be read", e);
+                }
+            }
+        } catch (DockerException e) {
+            LOGGER.log(Level.FINE, "Containers on " + host.getName() + " could not be listed", e);
+        }
+        containerStats.put(host.getNodeHost().toLowerCase(), Collections.unmodifiableMap(hostStats));
+        LOGGER.log(Level.FINE, String.format("%s: %s", host.getName(), hostLoad));
+        return hostLoad;
+    }
+
+}
@@ -0,0 +1,95 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.zalando.tip.zalenium.util.StateStore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    The docker-selenium containers launched by the starter, kept in the StateStore so a restarted hub knows when and
+    for what each running container was launched, e.g. to collect the ones left behind without waiting for them.
+ */
+final class ContainerRecords {
+
+    private static final String KEY_PREFIX = "container/";
+
+    private ContainerRecords() {
+    }
+
+    static void launched(ContainerHost host, String containerName, String browser, int port, String traceId,
+                         long launchStartedAtMillis, long launchedAtMillis) {
+        JsonObject record = new JsonObject();
+        record.addProperty("browser", browser);
+        record.addProperty("port", port);
+        record.addProperty("launchStartedAt", launchStartedAtMillis);
+        record.addProperty("launchedAt", launchedAtMillis);
+        if (traceId != null) {
+            record.addProperty("traceId", traceId);
+        }
+        StateStore.getDefault().put(getKey(host, containerName), record.toString());
+    }
+
+    /*
+        When the launch of the container started, 0 when it is unknown.
+     */
+    static long getLaunchStartedAt(ContainerHost host, String containerName) {
+        return getTime(host, containerName, "launchStartedAt");
+    }
+
+    /*
+        When the container was started, 0 when it is unknown.
+     */
+    static long getLaunchedAt(ContainerHost host, String containerName) {
+        return getTime(host, containerName, "launchedAt");
+    }
+
+    /*
+        The trace id of the request the container was launched for, null when it is unknown.
+     */
+    static String getTraceId(ContainerHost host, String containerName) {
+        JsonObject record = getRecord(host, containerName);
+        return record == null || !record.has("traceId") ? null : record.get("traceId").getAsString();
+    }
+
+    static void removed(ContainerHost host, String containerName) {
+        StateStore.getDefault().remove(getKey(host, containerName));
+    }
+
+    /*
+        Container name -> launch time of the containers launched on the host.
+     */
+    static Map<String, Long> getLaunchTimes(ContainerHost host) {
+        String prefix = getKey(host, "");
+        Map<String, Long> launchTimes = new HashMap<>();
+        for (Map.Entry<String, String> entry : StateStore.getDefault().getAll(prefix).entrySet()) {
+            try {
+                JsonObject record = new JsonParser().parse(entry.getValue()).getAsJsonObject();
+                launchTimes.put(entry.getKey().substring(prefix.length()), record.get("launchedAt").getAsLong());
+            } catch (RuntimeException e) {
+                StateStore.getDefault().remove(entry.getKey());
+            }
+        }
+        return launchTimes;
+    }
+
+    private static long getTime(ContainerHost host, String containerName, String property) {
+        JsonObject record = getRecord(host, containerName);
+        return record == null || !record.has(property) ? 0 : record.get(property).getAsLong();
+    }
+
+    private static JsonObject getRecord(ContainerHost host, String containerName) {
+        String record = StateStore.getDefault().get(getKey(host, containerName));
+        try {
+            return record == null ? null : new JsonParser().parse(record).getAsJsonObject();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String getKey(ContainerHost host, String containerName) {
+        return KEY_PREFIX + host.getName() + "/" + containerName;
+    }
+
+}
@@ -0,0 +1,359 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.exceptions.DockerException;
+import de.zalando.tip.zalenium.util.Environment;
+import de.zalando.tip.zalenium.util.FlightRecorderEvents;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    All the Docker daemon calls of the docker-selenium proxies go through here. Each call runs in a worker thread
+    and the caller waits at most the timeout of its operation class, so a wedged daemon request cannot block a hub
+    thread or a node poller forever. Each operation class has its own bulkhead (a bounded number of calls in flight),
+    so e.g. many video archives being copied do not stop new containers from being launched. Each container host has
+    its own set of bulkheads, so a host whose daemon does not answer does not take the slots of the others. A call
+    that timed out keeps its bulkhead slot until the daemon answers, one that never started gives it back right away.
+    Idempotent calls are retried with jittered exponential backoff.
+ */
+class DockerApiExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(DockerApiExecutor.class.getName());
+
+    static final String ZALENIUM_DOCKER_RETRIES = "ZALENIUM_DOCKER_RETRIES";
+    private static final int DEFAULT_RETRIES = 2;
+    private static final long INITIAL_BACKOFF_MS = 200;
+    private static final long MAX_BACKOFF_MS = 5000;
+
+    enum Operation {
+        // createContainer, startContainer, stopContainer
+        LAUNCH(120, 4),
+        // execCreate, execStart and reading its output
+        EXEC(60, 8),
+        // archiveContainer and copying the videos out of it
+        ARCHIVE(300, 2),
+        // listContainers, listImages, info
+        LIST(15, 4),
+        // stats, each one waits for two samples of the daemon
+        STATS(30, 2);
+
+        private final int defaultTimeoutSeconds;
+        private final int defaultConcurrency;
+
+        Operation(int defaultTimeoutSeconds, int defaultConcurrency) {
+            this.defaultTimeoutSeconds = defaultTimeoutSeconds;
+            this.defaultConcurrency = defaultConcurrency;
+        }
+
+        String getTimeoutEnvVariable() {
+            return String.format("ZALENIUM_DOCKER_%s_TIMEOUT", name());
+        }
+
+        String getConcurrencyEnvVariable() {
+            return String.format("ZALENIUM_DOCKER_%s_CONCURRENCY", name());
+        }
+    }
+
+    interface DockerCall<T> {
+        T call() throws Exception;
+    }
+
+    private static final DockerApiExecutor defaultDockerApiExecutor = new DockerApiExecutor(new Environment());
+    private static DockerApiExecutor dockerApiExecutor = defaultDockerApiExecutor;
+
+    private final ExecutorService workers;
+    private final int retries;
+    // For the calls not tied to a host, and the settings the bulkheads of each host are created with.
+    private final Map<Operation, Bulkhead> bulkheads = new EnumMap<>(Operation.class);
+    private final Map<String, Map<Operation, Bulkhead>> hostBulkheads = new ConcurrentHashMap<>();
+    private final AtomicInteger callsInFlight = new AtomicInteger();
+    private final AtomicInteger peakCallsInFlight = new AtomicInteger();
+    private final AtomicLong saturatedCalls = new AtomicLong();
+
+    DockerApiExecutor(Environment env) {
+        this(env, newWorkers());
+    }
+
+    @VisibleForTesting
+    DockerApiExecutor(Environment env, ExecutorService workers) {
+        this.workers = workers;
+        this.retries = Math.max(0, env.getIntEnvVariable(ZALENIUM_DOCKER_RETRIES, DEFAULT_RETRIES));
+        for (Operation operation : Operation.values()) {
+            int timeoutSeconds = env.getIntEnvVariable(operation.getTimeoutEnvVariable(),
+                    operation.defaultTimeoutSeconds);
+            int concurrency = env.getIntEnvVariable(operation.getConcurrencyEnvVariable(),
+                    operation.defaultConcurrency);
+            bulkheads.put(operation, new Bulkhead(
+                    TimeUnit.SECONDS.toMillis(timeoutSeconds > 0 ? timeoutSeconds : operation.defaultTimeoutSeconds),
+                    concurrency > 0 ? concurrency : operation.defaultConcurrency));
+        }
+    }
+
+    private static ExecutorService newWorkers() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "DockerApiExecutor-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static DockerApiExecutor get() {
+        return dockerApiExecutor;
+    }
+
+    @VisibleForTesting
+    static void set(DockerApiExecutor executor) {
+        dockerApiExecutor = executor;
+    }
+
+    @VisibleForTesting
+    static void restore() {
+        dockerApiExecutor = defaultDockerApiExecutor;
+    }
+
+    <T> T executeIdempotent(Operation operation, String name, String containerId, DockerCall<T> call)
+            throws DockerException, InterruptedException {
+        return executeIdempotent(null, operation, name, containerId, call);
+    }
+
+    /*
+        Runs a call that can be repeated without side effects (listing, inspecting), retrying it when it fails.
+        The host is the one the call goes to, null when it is not tied to a host.
+     */
+    <T> T executeIdempotent(ContainerHost host, Operation operation, String name, String containerId,
+                            DockerCall<T> call) throws DockerException, InterruptedException {
+        long backoffMs = INITIAL_BACKOFF_MS;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return execute(host, operation, name, containerId, call);
+            } catch (DockerException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                getBulkhead(host, operation).retries.incrementAndGet();
+                long sleepMs = ThreadLocalRandom.current().nextLong(backoffMs / 2, backoffMs + 1);
+                LOGGER.log(Level.FINE, String.format("Docker %s failed (%s), retrying in %s ms", name,
+                        e.getMessage(), sleepMs));
+                Thread.sleep(sleepMs);
+                backoffMs = Math.min(MAX_BACKOFF_MS, backoffMs * 2);
+            }
+        }
+    }
+
+    <T> T execute(Operation operation, String name, String containerId, DockerCall<T> call)
+            throws DockerException, InterruptedException {
+        return execute(null, operation, name, containerId, call);
+    }
+
+    /*
+        Runs a call once. Whatever the call throws is rethrown as a DockerException (InterruptedException as is).
+     */
+    <T> T execute(ContainerHost host, Operation operation, String name, String containerId, DockerCall<T> call)
+            throws DockerException, InterruptedException {
+        Bulkhead bulkhead = getBulkhead(host, operation);
+        if (!bulkhead.permits.tryAcquire(bulkhead.timeoutMs, TimeUnit.MILLISECONDS)) {
+            bulkhead.rejected.incrementAndGet();
+            throw new DockerException(String.format("Docker %s rejected, %s %s calls already in flight", name,
+                    bulkhead.concurrency, operation));
+        }
+        bulkhead.calls.incrementAndGet();
+        FlightRecorderEvents.Timing timing = FlightRecorderEvents.dockerApiCall(name, containerId);
+        int inFlight = callsInFlight.incrementAndGet();
+        peakCallsInFlight.accumulateAndGet(inFlight, Math::max);
+        int poolSize = DockerClientFactory.getPoolSize();
+        if (poolSize > 0 && inFlight > poolSize) {
+            saturatedCalls.incrementAndGet();
+        }
+        // Claimed by the task when it starts, or by the caller when the call was cancelled before it started, so
+        // the slot is released exactly once either way.
+        AtomicBoolean claimed = new AtomicBoolean();
+        Runnable releaseSlot = () -> {
+            callsInFlight.decrementAndGet();
+            bulkhead.permits.release();
+        };
+        Callable<T> task = () -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                return call.call();
+            } finally {
+                releaseSlot.run();
+            }
+        };
+        Future<T> future;
+        try {
+            future = workers.submit(task);
+        } catch (RuntimeException e) {
+            releaseSlot.run();
+            throw e;
+        }
+        boolean succeeded = false;
+        try {
+            T result = future.get(bulkhead.timeoutMs, TimeUnit.MILLISECONDS);
+            succeeded = true;
+            return result;
+        } catch (TimeoutException e) {
+            bulkhead.timeouts.incrementAndGet();
+            cancel(future, claimed, releaseSlot);
+            throw new DockerException(String.format("Docker %s timed out after %s ms", name, bulkhead.timeoutMs), e);
+        } catch (InterruptedException e) {
+            cancel(future, claimed, releaseSlot);
+            throw e;
+        } catch (CancellationException e) {
+            throw new DockerException(String.format("Docker %s was cancelled", name), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DockerException) {
+                throw (DockerException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw new DockerException(String.format("Docker %s failed: %s", name, cause), cause);
+        } finally {
+            if (!succeeded) {
+                bulkhead.failures.incrementAndGet();
+            }
+            timing.end(succeeded);
+        }
+    }
+
+    /*
+        A call that is already running keeps its slot until it returns, one that did not start yet gives it back.
+     */
+    private static void cancel(Future<?> future, AtomicBoolean claimed, Runnable releaseSlot) {
+        future.cancel(true);
+        if (claimed.compareAndSet(false, true)) {
+            releaseSlot.run();
+        }
+    }
+
+    private Bulkhead getBulkhead(ContainerHost host, Operation operation) {
+        if (host == null) {
+            return bulkheads.get(operation);
+        }
+        return hostBulkheads.computeIfAbsent(host.getName(), hostName -> {
+            Map<Operation, Bulkhead> newBulkheads = new EnumMap<>(Operation.class);
+            for (Map.Entry<Operation, Bulkhead> entry : bulkheads.entrySet()) {
+                newBulkheads.put(entry.getKey(), new Bulkhead(entry.getValue().timeoutMs,
+                        entry.getValue().concurrency));
+            }
+            return newBulkheads;
+        }).get(operation);
+    }
+
+    /*
+        The bulkheads of an operation class, the shared one and the one of each host.
+     */
+    private List<Bulkhead> getBulkheads(Operation operation) {
+        List<Bulkhead> operationBulkheads = new ArrayList<>();
+        operationBulkheads.add(bulkheads.get(operation));
+        for (Map<Operation, Bulkhead> hostOperations : hostBulkheads.values()) {
+            operationBulkheads.add(hostOperations.get(operation));
+        }
+        return operationBulkheads;
+    }
+
+    long getCalls(Operation operation) {
+        return getBulkheads(operation).stream().mapToLong(bulkhead -> bulkhead.calls.get()).sum();
+    }
+
+    long getFailures(Operation operation) {
+        return getBulkheads(operation).stream().mapToLong(bulkhead -> bulkhead.failures.get()).sum();
+    }
+
+    long getTimeouts(Operation operation) {
+        return getBulkheads(operation).stream().mapToLong(bulkhead -> bulkhead.timeouts.get()).sum();
+    }
+
+    long getRejected(Operation operation) {
+        return getBulkheads(operation).stream().mapToLong(bulkhead -> bulkhead.rejected.get()).sum();
+    }
+
+    long getRetries(Operation operation) {
+        return getBulkheads(operation).stream().mapToLong(bulkhead -> bulkhead.retries.get()).sum();
+    }
+
+    int getInFlight(Operation operation) {
+        return getBulkheads(operation).stream()
+                .mapToInt(bulkhead -> bulkhead.concurrency - bulkhead.permits.availablePermits()).sum();
+    }
+
+    int getInFlight(ContainerHost host, Operation operation) {
+        Bulkhead bulkhead = getBulkhead(host, operation);
+        return bulkhead.concurrency - bulkhead.permits.availablePermits();
+    }
+
+    /*
+        The sum of the bulkheads of one host, the most calls that can hold a connection of its Docker client at the
+        same time.
+     */
+    int getMaxCallsInFlight() {
+        int maxCallsInFlight = 0;
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            maxCallsInFlight += bulkhead.concurrency;
+        }
+        return maxCallsInFlight;
+    }
+
+    int getCallsInFlight() {
+        return callsInFlight.get();
+    }
+
+    int getPeakCallsInFlight() {
+        return peakCallsInFlight.get();
+    }
+
+    long getSaturatedCalls() {
+        return saturatedCalls.get();
+    }
+
+    String getMetricsSummary() {
+        StringBuilder summary = new StringBuilder("Docker API:");
+        for (Operation operation : Operation.values()) {
+            summary.append(String.format(" %s %s calls, %s failed, %s timed out, %s rejected, %s retried, " +
+                            "%s in flight;", operation, getCalls(operation), getFailures(operation),
+                    getTimeouts(operation), getRejected(operation), getRetries(operation), getInFlight(operation)));
+        }
+        return summary.toString();
+    }
+
+    private static final class Bulkhead {
+        private final long timeoutMs;
+        private final int concurrency;
+        private final Semaphore permits;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+
+        private Bulkhead(long timeoutMs, int concurrency) {
+            this.timeoutMs = timeoutMs;
+            this.concurrency = concurrency;
+            this.permits = new Semaphore(concurrency);
+        }
+    }
+
+}
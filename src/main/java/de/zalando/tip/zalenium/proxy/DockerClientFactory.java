@@ -0,0 +1,110 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerCertificates;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerCertificateException;
+import de.zalando.tip.zalenium.util.Environment;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Builds the Docker client shared by all the docker-selenium proxies, so launches, execs and video archives use
+    one connection pool. By default the pool has a connection for every call the DockerApiExecutor bulkheads allow
+    in flight, so streaming archives can never take the connections that a container launch needs.
+    The endpoint can be the local socket (default) or a TCP endpoint, with TLS when a certificates path is given.
+    When containers are placed on several daemons (see ContainerHostPool) there is one client per endpoint, all
+    configured the same way.
+ */
+class DockerClientFactory {
+
+    private static final Logger LOGGER = Logger.getLogger(DockerClientFactory.class.getName());
+
+    static final String ZALENIUM_DOCKER_HOST = "ZALENIUM_DOCKER_HOST";
+    static final String ZALENIUM_DOCKER_CERT_PATH = "ZALENIUM_DOCKER_CERT_PATH";
+    static final String ZALENIUM_DOCKER_POOL_SIZE = "ZALENIUM_DOCKER_POOL_SIZE";
+    static final String ZALENIUM_DOCKER_CONNECT_TIMEOUT = "ZALENIUM_DOCKER_CONNECT_TIMEOUT";
+    static final String ZALENIUM_DOCKER_READ_TIMEOUT = "ZALENIUM_DOCKER_READ_TIMEOUT";
+    static final String DEFAULT_DOCKER_HOST = "unix:///var/run/docker.sock";
+    private static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 5;
+    private static final int DEFAULT_READ_TIMEOUT_SECONDS = 30;
+
+    private static final Map<String, DockerClient> dockerClients = new HashMap<>();
+    private static int poolSize;
+
+    private DockerClientFactory() {
+    }
+
+    static synchronized DockerClient getDockerClient() {
+        return getDockerClient(new Environment().getStringEnvVariable(ZALENIUM_DOCKER_HOST, DEFAULT_DOCKER_HOST));
+    }
+
+    static synchronized DockerClient getDockerClient(String dockerHost) {
+        DockerClient dockerClient = dockerClients.get(dockerHost);
+        if (dockerClient == null) {
+            Environment env = new Environment();
+            int defaultPoolSize = DockerApiExecutor.get().getMaxCallsInFlight();
+            DefaultDockerClient.Builder builder = createBuilder(env, dockerHost, defaultPoolSize);
+            poolSize = builder.connectionPoolSize();
+            if (poolSize < defaultPoolSize) {
+                LOGGER.log(Level.WARNING, String.format("The Docker connection pool (%s) is smaller than the calls " +
+                        "allowed in flight (%s), calls will wait for a free connection.", poolSize, defaultPoolSize));
+            }
+            dockerClient = builder.build();
+            dockerClients.put(dockerHost, dockerClient);
+            LOGGER.log(Level.INFO, String.format("Docker client for %s with a pool of %s connections", builder.uri(),
+                    poolSize));
+        }
+        return dockerClient;
+    }
+
+    @VisibleForTesting
+    static DefaultDockerClient.Builder createBuilder(Environment env, int defaultPoolSize) {
+        return createBuilder(env, env.getStringEnvVariable(ZALENIUM_DOCKER_HOST, DEFAULT_DOCKER_HOST),
+                defaultPoolSize);
+    }
+
+    @VisibleForTesting
+    static DefaultDockerClient.Builder createBuilder(Environment env, String dockerHost, int defaultPoolSize) {
+        int configuredPoolSize = env.getIntEnvVariable(ZALENIUM_DOCKER_POOL_SIZE, defaultPoolSize);
+        int connectTimeout = env.getIntEnvVariable(ZALENIUM_DOCKER_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT_SECONDS);
+        int readTimeout = env.getIntEnvVariable(ZALENIUM_DOCKER_READ_TIMEOUT, DEFAULT_READ_TIMEOUT_SECONDS);
+        DefaultDockerClient.Builder builder = DefaultDockerClient.builder()
+                .uri(dockerHost)
+                .connectionPoolSize(configuredPoolSize > 0 ? configuredPoolSize : defaultPoolSize)
+                .connectTimeoutMillis(TimeUnit.SECONDS.toMillis(connectTimeout >= 0 ? connectTimeout :
+                        DEFAULT_CONNECT_TIMEOUT_SECONDS))
+                .readTimeoutMillis(TimeUnit.SECONDS.toMillis(readTimeout >= 0 ? readTimeout :
+                        DEFAULT_READ_TIMEOUT_SECONDS));
+        String certPath = env.getStringEnvVariable(ZALENIUM_DOCKER_CERT_PATH, "");
+        if (!certPath.trim().isEmpty()) {
+            try {
+                builder.dockerCertificates(new DockerCertificates(Paths.get(certPath)));
+            } catch (DockerCertificateException e) {
+                LOGGER.log(Level.SEVERE, "Docker certificates could not be read from " + certPath, e);
+            }
+        }
+        return builder;
+    }
+
+    static synchronized int getPoolSize() {
+        return poolSize;
+    }
+
+    /*
+        Calls in flight go through DockerApiExecutor, each one holds a pooled connection while it runs.
+     */
+    static String getMetricsSummary() {
+        DockerApiExecutor executor = DockerApiExecutor.get();
+        return String.format("Docker client pool: %s connections, %s calls in flight, peak %s, " +
+                        "%s calls started with the pool saturated", getPoolSize(), executor.getCallsInFlight(),
+                executor.getPeakCallsInFlight(), executor.getSaturatedCalls());
+    }
+
+}
@@ -1,15 +1,23 @@
 package de.zalando.tip.zalenium.proxy;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
-import com.spotify.docker.client.LogStream;
 import com.spotify.docker.client.exceptions.DockerException;
-import com.spotify.docker.client.messages.Container;
-import com.spotify.docker.client.messages.ExecCreation;
+import de.zalando.tip.zalenium.container.ContainerClient;
+import de.zalando.tip.zalenium.container.ContainerException;
+import de.zalando.tip.zalenium.container.ContainerStats;
+import de.zalando.tip.zalenium.container.ContainerInfo;
+import de.zalando.tip.zalenium.container.DockerContainerClient;
+import de.zalando.tip.zalenium.container.ResourceProfile;
 import de.zalando.tip.zalenium.util.CommonProxyUtilities;
+import de.zalando.tip.zalenium.util.DrainMode;
 import de.zalando.tip.zalenium.util.Environment;
+import de.zalando.tip.zalenium.util.FlightRecorderEvents;
 import de.zalando.tip.zalenium.util.GoogleAnalyticsApi;
+import de.zalando.tip.zalenium.util.LifecycleJournal;
+import de.zalando.tip.zalenium.util.SessionTrace;
+import de.zalando.tip.zalenium.util.SessionTracing;
+import de.zalando.tip.zalenium.util.TelemetryEvent;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.utils.IOUtils;
@@ -17,10 +25,13 @@ import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.common.exception.RemoteNotReachableException;
 import org.openqa.grid.common.exception.RemoteUnregisterException;
 import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.SessionTerminationReason;
 import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.TestSlot;
 import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
 import org.openqa.grid.web.servlet.handler.RequestType;
 import org.openqa.grid.web.servlet.handler.WebDriverRequest;
+import org.openqa.selenium.remote.CapabilityType;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -34,6 +45,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,15 +61,28 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
     private static final Logger LOGGER = Logger.getLogger(DockerSeleniumRemoteProxy.class.getName());
     // Amount of tests that can be executed in the node
     private static final int MAX_UNIQUE_TEST_SESSIONS = 1;
-    private static final DockerClient defaultDockerClient = new DefaultDockerClient("unix:///var/run/docker.sock");
+    // Free nodes stay below the starter (90%-98%) and the cloud testing providers (99%-100%).
+    private static final int MAX_FREE_NODE_USAGE = 89;
+    private static final ContainerHostPool defaultContainerHostPool = ContainerHostPool.getDefault();
     private static final Environment defaultEnvironment = new Environment();
+    private static final IdleNodeReaper defaultIdleNodeReaper = new IdleNodeReaper(defaultEnvironment);
     private static boolean videoRecordingEnabled;
-    private static DockerClient dockerClient = defaultDockerClient;
+    private static ContainerHostPool containerHostPool = defaultContainerHostPool;
+    private static IdleNodeReaper idleNodeReaper = defaultIdleNodeReaper;
     private static Environment env = defaultEnvironment;
     private static CommonProxyUtilities commonProxyUtilities = new CommonProxyUtilities();
     private int amountOfExecutedTests;
     private String testName;
     private boolean stopSessionRequestReceived = false;
+    private boolean retired = false;
+    private boolean containerDead = false;
+    // The node stops its own container, so the container dying is expected.
+    private boolean stopping = false;
+    private volatile String containerId;
+    private volatile long lastActivityMillis = System.currentTimeMillis();
+    private volatile float freeResourceUsage;
+    private volatile SessionTrace sessionTrace;
+    private long registeredAtEpochNanos;
     private DockerSeleniumNodePoller dockerSeleniumNodePollerThread = null;
     private GoogleAnalyticsApi ga = new GoogleAnalyticsApi();
 
@@ -76,12 +101,43 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
 
     @VisibleForTesting
     static void setDockerClient(final DockerClient client) {
-        dockerClient = client;
+        containerHostPool = ContainerHostPool.single(new DockerContainerClient(client));
     }
 
     @VisibleForTesting
     static void restoreDockerClient() {
-        dockerClient = defaultDockerClient;
+        containerHostPool = defaultContainerHostPool;
+    }
+
+    @VisibleForTesting
+    static void setContainerClient(final ContainerClient client) {
+        containerHostPool = ContainerHostPool.single(client);
+    }
+
+    @VisibleForTesting
+    static void setContainerHostPool(final ContainerHostPool pool) {
+        containerHostPool = pool;
+    }
+
+    /*
+        The backend of the host this node was placed on.
+     */
+    private ContainerHost getContainerHost() {
+        return containerHostPool.forNodeHost(getRemoteHost().getHost());
+    }
+
+    private ContainerClient getContainerClient() {
+        return getContainerHost().getContainerClient();
+    }
+
+    @VisibleForTesting
+    static void setIdleNodeReaper(final IdleNodeReaper reaper) {
+        idleNodeReaper = reaper;
+    }
+
+    @VisibleForTesting
+    static void restoreIdleNodeReaper() {
+        idleNodeReaper = defaultIdleNodeReaper;
     }
 
     @VisibleForTesting
@@ -113,8 +169,25 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         if (!hasCapability(requestedCapability)) {
             return null;
         }
+        /*
+            While the grid drains the node only finishes the session it has, new requests go to the starter and
+            are rejected there.
+         */
+        if (DrainMode.isDraining()) {
+            return null;
+        }
+        String tenant = FairShareScheduler.getTenant(requestedCapability);
+        if (!FairShareScheduler.get().mayStart(tenant, System.currentTimeMillis())) {
+            return null;
+        }
         if (increaseCounter()) {
             TestSession newSession = super.getNewSession(requestedCapability);
+            if (newSession != null) {
+                LifecycleJournal.record(LifecycleJournal.Event.SESSION_STARTED, getId(), amountOfExecutedTests);
+                FairShareScheduler.get().started(newSession, tenant);
+                sessionTrace = SessionTracing.get().sessionAssigned(requestedCapability, newSession, getId());
+                addLaunchSpans(sessionTrace);
+            }
             testName = requestedCapability.getOrDefault("name", "").toString();
             videoRecording(VideoRecordingAction.START_RECORDING);
             return newSession;
@@ -123,8 +196,50 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         return null;
     }
 
+    /*
+        The container launch and the node registration go to the trace of the session the node got, which is not
+        always the request the container was launched for. A container launched before the request arrived (e.g.
+        a warm node) is left out. When the container was launched for another request, the launch span links to
+        that trace, which is the one the node logs with.
+     */
+    private void addLaunchSpans(SessionTrace trace) {
+        ContainerHost host = getContainerHost();
+        String containerName = "zalenium_" + getRemoteHost().getPort();
+        long launchStartedAtNanos = TimeUnit.MILLISECONDS.toNanos(
+                ContainerRecords.getLaunchStartedAt(host, containerName));
+        long launchedAtNanos = TimeUnit.MILLISECONDS.toNanos(ContainerRecords.getLaunchedAt(host, containerName));
+        if (launchStartedAtNanos <= 0 || launchedAtNanos <= 0 ||
+                launchStartedAtNanos < trace.getRootSpan().getStartEpochNanos()) {
+            return;
+        }
+        SessionTrace.Span launchSpan = trace.addSpan(SessionTracing.CONTAINER_LAUNCH, launchStartedAtNanos)
+                .setAttribute("container", containerName);
+        String launchTraceId = ContainerRecords.getTraceId(host, containerName);
+        if (launchTraceId != null && !launchTraceId.equals(trace.getTraceId())) {
+            launchSpan.setAttribute("launchTraceId", launchTraceId);
+        }
+        launchSpan.end(launchedAtNanos);
+        trace.addSpan(SessionTracing.NODE_REGISTRATION, launchedAtNanos).setAttribute("container", containerName)
+                .end(Math.max(launchedAtNanos, registeredAtEpochNanos));
+    }
+
+    @Override
+    public void afterSession(TestSession session) {
+        FairShareScheduler.get().finished(session);
+        SaturationGuard.get().sessionFinished(System.currentTimeMillis());
+        super.afterSession(session);
+    }
+
+    @Override
+    public void beforeCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
+        SessionTracing.commandStarted(session, request);
+        super.beforeCommand(session, request, response);
+    }
+
     @Override
     public void afterCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
+        SessionTracing.commandFinished(session, response);
+        lastActivityMillis = System.currentTimeMillis();
         if (request instanceof WebDriverRequest && "DELETE".equalsIgnoreCase(request.getMethod())) {
             WebDriverRequest seleniumRequest = (WebDriverRequest) request;
             if (RequestType.STOP_SESSION.equals(seleniumRequest.getRequestType())) {
@@ -133,16 +248,64 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
                         getNodeIpAndPort());
                 LOGGER.log(Level.INFO, message);
                 long executionTime = (System.currentTimeMillis() - session.getSlot().getLastSessionStart()) / 1000;
+                LifecycleJournal.record(LifecycleJournal.Event.SESSION_STOPPED, getId(), executionTime);
                 ga.testEvent(DockerSeleniumRemoteProxy.class.getName(), session.getRequestedCapabilities().toString(),
-                        executionTime);
+                        executionTime, TelemetryEvent.getSessionOutcome(response.getStatus()));
             }
         }
         super.afterCommand(session, request, response);
     }
 
+    /*
+        A free node reports the load of its container (up to 89%, so it is listed before the starter and the cloud
+        testing providers), the least loaded one gets the next session. The load is the largest of the host CPU share
+        and the memory used from the container's limit, as sampled in the background by the ContainerLoadSampler.
+        The hub sorts the nodes by this value, so it is not read from the sample on every call: the sampler refreshes
+        it after each sample.
+     */
+    @Override
+    public float getResourceUsageInPercent() {
+        if (getTotalUsed() > 0) {
+            return super.getResourceUsageInPercent();
+        }
+        return freeResourceUsage;
+    }
+
+    void refreshFreeResourceUsage() {
+        ContainerStats stats = ContainerLoadSampler.get().getStats(getRemoteHost().getHost(),
+                "zalenium_" + getRemoteHost().getPort());
+        if (stats == null) {
+            freeResourceUsage = 0;
+            return;
+        }
+        double memoryShare = stats.getMemoryLimitBytes() > 0 ?
+                (double) stats.getMemoryUsageBytes() / stats.getMemoryLimitBytes() : 0;
+        freeResourceUsage = (float) (MAX_FREE_NODE_USAGE * Math.min(1, Math.max(stats.getCpuShare(), memoryShare)));
+    }
+
+    /*
+        The resources the node's container was created with, according to the browser it offers.
+     */
+    public ResourceProfile getResourceProfile() {
+        return DockerSeleniumStarterRemoteProxy.getResourceProfile(getBrowser());
+    }
+
+    /*
+        The browser the node offers, null when it is unknown.
+     */
+    String getBrowser() {
+        if (getTestSlots().isEmpty()) {
+            return null;
+        }
+        Object browser = getTestSlots().get(0).getCapabilities().get(CapabilityType.BROWSER_NAME);
+        return browser == null ? null : browser.toString();
+    }
+
     @Override
     public void startPolling() {
         super.startPolling();
+        registeredAtEpochNanos = SessionTrace.nowEpochNanos();
+        LifecycleJournal.record(LifecycleJournal.Event.NODE_REGISTERED, getId(), getRemoteHost().getPort());
         dockerSeleniumNodePollerThread = new DockerSeleniumNodePoller(this);
         dockerSeleniumNodePollerThread.start();
     }
@@ -155,8 +318,14 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
 
     @Override
     public void teardown() {
+        LifecycleJournal.record(LifecycleJournal.Event.NODE_TORN_DOWN, getId(), amountOfExecutedTests);
         super.teardown();
         stopPolling();
+        SessionTrace trace = sessionTrace;
+        if (trace != null) {
+            trace.endSpan(SessionTracing.TEARDOWN);
+            SessionTracing.get().finish(trace);
+        }
     }
 
     String getNodeIpAndPort() {
@@ -167,14 +336,45 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         Incrementing variable to count the number of tests executed, if possible.
      */
     private synchronized boolean increaseCounter() {
-        // Meaning that we have already executed the allowed number of tests.
-        if (isTestSessionLimitReached()) {
+        // Meaning that we have already executed the allowed number of tests, or the node is being shut down.
+        if (retired || isTestSessionLimitReached()) {
             return false;
         }
         amountOfExecutedTests++;
+        lastActivityMillis = System.currentTimeMillis();
+        return true;
+    }
+
+    /*
+        Stops the node from taking new sessions before it is shut down for being idle, false when it got one meanwhile.
+        The idleness is checked again under the lock increaseCounter takes, because a session is counted there before
+        its slot is assigned and the node shows up as busy.
+     */
+    synchronized boolean retire(long idleTimeoutMillis) {
+        if (retired || isBusy() || (isTestSessionLimitReached() && isStopSessionRequestReceived()) ||
+                getIdleMillis() < idleTimeoutMillis) {
+            return false;
+        }
+        retired = true;
         return true;
     }
 
+    synchronized boolean isRetired() {
+        return retired;
+    }
+
+    /*
+        Time since the node got its session or ran a command, or since it was created when it never got one.
+     */
+    long getIdleMillis() {
+        return System.currentTimeMillis() - lastActivityMillis;
+    }
+
+    @VisibleForTesting
+    void setLastActivityMillis(long lastActivityMillis) {
+        this.lastActivityMillis = lastActivityMillis;
+    }
+
     /*
         Method to decide if the node can be removed based on the amount of executed tests.
      */
@@ -190,7 +390,15 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         if (isVideoRecordingEnabled()) {
             try {
                 String containerId = getContainerId();
+                SessionTrace trace = sessionTrace;
+                SessionTrace.Span videoStopSpan = trace != null && VideoRecordingAction.STOP_RECORDING == action ?
+                        trace.startSpan(SessionTracing.VIDEO_STOP) : null;
                 processVideoAction(action, containerId);
+                if (videoStopSpan != null) {
+                    videoStopSpan.end();
+                }
+                LifecycleJournal.record(VideoRecordingAction.START_RECORDING == action ?
+                        LifecycleJournal.Event.VIDEO_STARTED : LifecycleJournal.Event.VIDEO_STOPPED, getId(), 0);
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, getNodeIpAndPort() + e.toString(), e);
                 ga.trackException(e);
@@ -202,12 +410,20 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
         }
     }
 
+    /*
+        The id does not change while the node lives, so it is only looked up once.
+     */
     String getContainerId() throws DockerException, InterruptedException {
-        List<Container> containerList = dockerClient.listContainers(DockerClient.ListContainersParam.allContainers());
-        for (Container container : containerList) {
-            String containerName = "/zalenium_" + getRemoteHost().getPort();
-            if (containerName.equalsIgnoreCase(container.names().get(0))) {
-                return container.id();
+        if (containerId != null) {
+            return containerId;
+        }
+        List<ContainerInfo> containerList = DockerApiExecutor.get().executeIdempotent(getContainerHost(),
+                DockerApiExecutor.Operation.LIST, "listContainers", null, getContainerClient()::listContainers);
+        for (ContainerInfo container : containerList) {
+            String containerName = "zalenium_" + getRemoteHost().getPort();
+            if (containerName.equalsIgnoreCase(container.getName())) {
+                containerId = container.getId();
+                return containerId;
             }
         }
         return null;
@@ -217,28 +433,42 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
     void processVideoAction(final VideoRecordingAction action, final String containerId) throws
             DockerException, InterruptedException, IOException, URISyntaxException {
         final String[] command = {"bash", "-c", action.getRecordingAction()};
-        final ExecCreation execCreation = dockerClient.execCreate(containerId, command,
-                DockerClient.ExecCreateParam.attachStdout(), DockerClient.ExecCreateParam.attachStderr());
-        final LogStream output = dockerClient.execStart(execCreation.id());
+        String output = DockerApiExecutor.get().execute(getContainerHost(), DockerApiExecutor.Operation.EXEC,
+                "execCreate", containerId, () -> getContainerClient().execute(containerId, command));
         LOGGER.log(Level.INFO, String.format("%s %s", getNodeIpAndPort(), action.getRecordingAction()));
-        try {
-            LOGGER.log(Level.INFO, String.format("%s %s", getNodeIpAndPort(), output.readFully()));
-        } catch (RuntimeException e) {
-            LOGGER.log(Level.FINE, getNodeIpAndPort() + " " + e.toString(), e);
-            ga.trackException(e);
-        }
+        LOGGER.log(Level.INFO, String.format("%s %s", getNodeIpAndPort(), output));
 
         if (VideoRecordingAction.STOP_RECORDING == action) {
+            SessionTrace trace = sessionTrace;
+            SessionTrace.Span copySpan = trace == null ? null : trace.startSpan(SessionTracing.VIDEO_COPY);
             copyVideos(containerId);
+            if (copySpan != null) {
+                copySpan.end();
+            }
         }
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     @VisibleForTesting
     void copyVideos(final String containerId) throws IOException, DockerException, InterruptedException, URISyntaxException {
         String localPath = commonProxyUtilities.currentLocalPath();
-        try (TarArchiveInputStream tarStream = new TarArchiveInputStream(dockerClient.archiveContainer(containerId,
-                "/videos/"))) {
+        // The archive is streamed, so the whole copy runs as one archive call and has its timeout.
+        DockerApiExecutor.get().execute(getContainerHost(), DockerApiExecutor.Operation.ARCHIVE, "archiveContainer",
+                containerId, () -> {
+                    copyVideos(containerId, localPath);
+                    return null;
+                });
+        LOGGER.log(Level.INFO, "{0} Video files copies to: {1}", new Object[]{getNodeIpAndPort(), localPath});
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void copyVideos(final String containerId, final String localPath) throws IOException,
+            ContainerException, InterruptedException {
+        FlightRecorderEvents.Timing copyTiming = FlightRecorderEvents.videoCopy(containerId);
+        int copiedFiles = 0;
+        long copiedBytes = 0;
+        boolean copied = false;
+        try (TarArchiveInputStream tarStream = new TarArchiveInputStream(
+                getContainerClient().archiveContainer(containerId, "/videos/"))) {
             TarArchiveEntry entry;
             while ((entry = tarStream.getNextTarEntry()) != null) {
                 if (entry.isDirectory()) {
@@ -254,11 +484,67 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
                     parent.mkdirs();
                 }
                 OutputStream outputStream = new FileOutputStream(curFile);
-                IOUtils.copy(tarStream, outputStream);
+                copiedBytes += IOUtils.copy(tarStream, outputStream);
                 outputStream.close();
+                copiedFiles++;
             }
+            copied = true;
+        } finally {
+            copyTiming.setCount(copiedFiles).setBytes(copiedBytes).end(copied);
         }
-        LOGGER.log(Level.INFO, "{0} Video files copies to: {1}", new Object[]{getNodeIpAndPort(), localPath});
+    }
+
+    /*
+        The id of the node's container if it was already looked up, without calling the container backend.
+     */
+    String getKnownContainerId() {
+        return containerId;
+    }
+
+    /*
+        Called by the ContainerEventMonitor when the node's container died: the node is unregistered and its session
+        ended right away, instead of waiting for the registry polling to time out.
+     */
+    void containerDied(String reason) {
+        synchronized (this) {
+            if (containerDead || stopping) {
+                return;
+            }
+            containerDead = true;
+            retired = true;
+        }
+        String message = String.format("%s Marking the node as down because %s.", getNodeIpAndPort(), reason);
+        LOGGER.log(Level.WARNING, message);
+        LifecycleJournal.record(LifecycleJournal.Event.CONTAINER_FAILED, getId(), getRemoteHost().getPort());
+        for (TestSlot slot : getTestSlots()) {
+            if (slot.getSession() != null) {
+                getRegistry().forceRelease(slot, SessionTerminationReason.FORWARDING_TO_NODE_FAILED);
+            }
+        }
+        ContainerRecords.removed(getContainerHost(), "zalenium_" + getRemoteHost().getPort());
+        addNewEvent(new RemoteNotReachableException(message));
+        addNewEvent(new RemoteUnregisterException(message));
+        teardown();
+    }
+
+    synchronized boolean isContainerDead() {
+        return containerDead;
+    }
+
+    /*
+        Marks the node as stopping its own container, false when the container already died.
+     */
+    synchronized boolean markStopping() {
+        if (containerDead) {
+            return false;
+        }
+        stopping = true;
+        retired = true;
+        return true;
+    }
+
+    synchronized boolean isStopping() {
+        return stopping;
     }
 
     DockerSeleniumNodePoller getDockerSeleniumNodePollerThread() {
@@ -307,7 +593,16 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
 
         @Override
         public void run() {
+            // Looked up now so the ContainerEventMonitor can find the node when its container dies.
+            try {
+                dockerSeleniumRemoteProxy.getContainerId();
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, dockerSeleniumRemoteProxy.getNodeIpAndPort() + " " + e.toString(), e);
+            }
             while (true) {
+                if (dockerSeleniumRemoteProxy.isContainerDead()) {
+                    return;
+                }
                 /*
                     If the proxy is not busy and it can be released since the MAX_UNIQUE_TEST_SESSIONS have been executed,
                     then the node executes its teardown.
@@ -315,7 +610,20 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
                 if (!dockerSeleniumRemoteProxy.isBusy() && dockerSeleniumRemoteProxy.isTestSessionLimitReached() &&
                         dockerSeleniumRemoteProxy.isStopSessionRequestReceived()) {
                     dockerSeleniumRemoteProxy.videoRecording(VideoRecordingAction.STOP_RECORDING);
-                    shutdownNode();
+                    shutdownNode(String.format("it was stopped after %s tests", MAX_UNIQUE_TEST_SESSIONS));
+                    return;
+                }
+
+                /*
+                    Nodes that never got a session, or whose session was abandoned without a STOP_SESSION, are shut
+                    down when they were idle for too long.
+                */
+                if (!dockerSeleniumRemoteProxy.isBusy() && idleNodeReaper.tryRetire(dockerSeleniumRemoteProxy,
+                        dockerSeleniumRemoteProxy.getRegistry().getAllProxies())) {
+                    if (dockerSeleniumRemoteProxy.isTestSessionLimitReached()) {
+                        dockerSeleniumRemoteProxy.videoRecording(VideoRecordingAction.STOP_RECORDING);
+                    }
+                    shutdownNode("it was idle for too long");
                     return;
                 }
 
@@ -331,16 +639,32 @@ public class DockerSeleniumRemoteProxy extends DefaultRemoteProxy {
             }
         }
 
-        private void shutdownNode() {
-            String shutdownReason = String.format("%s Marking the node as down because it was stopped after %s tests.",
-                    dockerSeleniumRemoteProxy.getNodeIpAndPort(), MAX_UNIQUE_TEST_SESSIONS);
+        void shutdownNode(String reason) {
+            // When the container died meanwhile, the node was already unregistered by the ContainerEventMonitor.
+            if (!dockerSeleniumRemoteProxy.markStopping()) {
+                return;
+            }
+            SessionTrace trace = dockerSeleniumRemoteProxy.sessionTrace;
+            if (trace != null) {
+                trace.startSpan(SessionTracing.TEARDOWN);
+            }
+            LifecycleJournal.record(LifecycleJournal.Event.NODE_SHUTDOWN, dockerSeleniumRemoteProxy.getId(),
+                    dockerSeleniumRemoteProxy.getAmountOfExecutedTests());
+            String shutdownReason = String.format("%s Marking the node as down because %s.",
+                    dockerSeleniumRemoteProxy.getNodeIpAndPort(), reason);
             try {
                 String containerId = dockerSeleniumRemoteProxy.getContainerId();
-                dockerClient.stopContainer(containerId, 5);
+                DockerApiExecutor.get().executeIdempotent(dockerSeleniumRemoteProxy.getContainerHost(),
+                        DockerApiExecutor.Operation.LAUNCH, "stopContainer", containerId, () -> {
+                            dockerSeleniumRemoteProxy.getContainerClient().stopContainer(containerId, 5);
+                            return null;
+                        });
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, dockerSeleniumRemoteProxy.getNodeIpAndPort() + " " + e.getMessage(), e);
                 dockerSeleniumRemoteProxy.ga.trackException(e);
             } finally {
+                ContainerRecords.removed(dockerSeleniumRemoteProxy.getContainerHost(),
+                        "zalenium_" + dockerSeleniumRemoteProxy.getRemoteHost().getPort());
                 dockerSeleniumRemoteProxy.addNewEvent(new RemoteNotReachableException(shutdownReason));
                 dockerSeleniumRemoteProxy.addNewEvent(new RemoteUnregisterException(shutdownReason));
                 dockerSeleniumRemoteProxy.teardown();
@@ -3,19 +3,26 @@ package de.zalando.tip.zalenium.proxy;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.spotify.docker.client.DefaultDockerClient;
+import com.google.gson.JsonParser;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerException;
-import com.spotify.docker.client.messages.Container;
-import com.spotify.docker.client.messages.ContainerConfig;
-import com.spotify.docker.client.messages.ContainerCreation;
-import com.spotify.docker.client.messages.HostConfig;
-import com.spotify.docker.client.messages.Image;
+import de.zalando.tip.zalenium.container.ContainerClient;
+import de.zalando.tip.zalenium.container.ContainerSpec;
+import de.zalando.tip.zalenium.container.DockerContainerClient;
+import de.zalando.tip.zalenium.container.ResourceProfile;
 import de.zalando.tip.zalenium.util.CommonProxyUtilities;
+import de.zalando.tip.zalenium.util.DrainMode;
 import de.zalando.tip.zalenium.util.Environment;
+import de.zalando.tip.zalenium.util.FlightRecorderEvents;
 import de.zalando.tip.zalenium.util.GoogleAnalyticsApi;
+import de.zalando.tip.zalenium.util.LifecycleJournal;
+import de.zalando.tip.zalenium.util.SessionTrace;
+import de.zalando.tip.zalenium.util.SessionTracing;
+import de.zalando.tip.zalenium.util.StateStore;
+import de.zalando.tip.zalenium.util.ZaleniumPrioritizer;
 import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
 import org.openqa.grid.internal.TestSession;
 import org.openqa.grid.internal.listeners.RegistrationListener;
 import org.openqa.grid.selenium.proxy.DefaultRemoteProxy;
@@ -24,8 +31,8 @@ import org.openqa.selenium.remote.BrowserType;
 import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 
-import java.io.IOException;
-import java.net.ServerSocket;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -54,6 +61,8 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     @VisibleForTesting
     static final int DEFAULT_SCREEN_HEIGHT = 1880;
     @VisibleForTesting
+    static final ResourceProfile DEFAULT_RESOURCE_PROFILE = new ResourceProfile(0, 0, 0, 0, 1073741824L); // 1GB shm
+    @VisibleForTesting
     static final String ZALENIUM_CHROME_CONTAINERS = "ZALENIUM_CHROME_CONTAINERS";
     @VisibleForTesting
     static final String ZALENIUM_FIREFOX_CONTAINERS = "ZALENIUM_FIREFOX_CONTAINERS";
@@ -66,28 +75,40 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     @VisibleForTesting
     static final String ZALENIUM_SCREEN_HEIGHT = "ZALENIUM_SCREEN_HEIGHT";
     @VisibleForTesting
+    static final String ZALENIUM_RESOURCES = "ZALENIUM_RESOURCES";
+    @VisibleForTesting
+    static final String ZALENIUM_CHROME_RESOURCES = "ZALENIUM_CHROME_RESOURCES";
+    @VisibleForTesting
+    static final String ZALENIUM_FIREFOX_RESOURCES = "ZALENIUM_FIREFOX_RESOURCES";
+    private static final String CAPABILITIES_STATE_KEY = "docker-selenium/capabilities";
+    @VisibleForTesting
     static final String DOCKER_SELENIUM_CAPABILITIES_URL =
             "https://raw.githubusercontent.com/elgalu/docker-selenium/latest/capabilities.json";
     private static final Logger LOGGER = Logger.getLogger(DockerSeleniumStarterRemoteProxy.class.getName());
     private static final String DOCKER_SELENIUM_IMAGE = "elgalu/selenium";
     private static final int LOWER_PORT_BOUNDARY = 40000;
     private static final int UPPER_PORT_BOUNDARY = 49999;
-    private static final DockerClient defaultDockerClient = new DefaultDockerClient("unix:///var/run/docker.sock");
+    private static final ContainerHostPool defaultContainerHostPool = ContainerHostPool.getDefault();
     private static final Environment defaultEnvironment = new Environment();
     private static final CommonProxyUtilities defaultCommonProxyUtilities = new CommonProxyUtilities();
     private static final String LOGGING_PREFIX = "[DS] ";
     private static List<DesiredCapabilities> dockerSeleniumCapabilities = new ArrayList<>();
-    private static DockerClient dockerClient = defaultDockerClient;
+    private static ContainerHostPool containerHostPool = defaultContainerHostPool;
     private static Environment env = defaultEnvironment;
     private static CommonProxyUtilities commonProxyUtilities = defaultCommonProxyUtilities;
     private static GoogleAnalyticsApi ga = new GoogleAnalyticsApi();
     private static int chromeContainersOnStartup;
     private static int firefoxContainersOnStartup;
     private static int maxDockerSeleniumContainers;
+    private static AdaptiveContainerLimiter containerLimiter = new AdaptiveContainerLimiter(defaultEnvironment,
+            DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING);
+    private static final OrphanContainerCollector orphanContainerCollector =
+            new OrphanContainerCollector(defaultEnvironment);
+    private static final ContainerEventMonitor containerEventMonitor = new ContainerEventMonitor();
     private static String timeZone;
+    private static Map<String, ResourceProfile> resourceProfiles = new HashMap<>();
     private static int screenWidth;
     private static int screenHeight;
-    private List<Integer> allocatedPorts = new ArrayList<>();
     private boolean setupCompleted;
 
     @SuppressWarnings("WeakerAccess")
@@ -109,6 +130,7 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         int maxDSContainers = env.getIntEnvVariable(ZALENIUM_MAX_DOCKER_SELENIUM_CONTAINERS,
                 DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING);
         setMaxDockerSeleniumContainers(maxDSContainers);
+        containerLimiter = new AdaptiveContainerLimiter(env, getMaxDockerSeleniumContainers());
 
         int sWidth = env.getIntEnvVariable(ZALENIUM_SCREEN_WIDTH, DEFAULT_SCREEN_WIDTH);
         setScreenWidth(sWidth);
@@ -118,6 +140,15 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
 
         String tz = env.getStringEnvVariable(ZALENIUM_TZ, DEFAULT_TZ);
         setTimeZone(tz);
+
+        ResourceProfile resources = ResourceProfile.parse(env.getStringEnvVariable(ZALENIUM_RESOURCES, ""),
+                DEFAULT_RESOURCE_PROFILE);
+        Map<String, ResourceProfile> profiles = new HashMap<>();
+        profiles.put(BrowserType.CHROME, ResourceProfile.parse(env.getStringEnvVariable(ZALENIUM_CHROME_RESOURCES,
+                ""), resources));
+        profiles.put(BrowserType.FIREFOX, ResourceProfile.parse(env.getStringEnvVariable(ZALENIUM_FIREFOX_RESOURCES,
+                ""), resources));
+        setResourceProfiles(profiles);
     }
 
     /*
@@ -134,13 +165,31 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
     @VisibleForTesting
     static void clearCapabilities() {
         dockerSeleniumCapabilities.clear();
+        StateStore.getDefault().remove(CAPABILITIES_STATE_KEY);
     }
 
+    /*
+        The catalog fetched by a previous run is used straight away when the StateStore has it, and refreshed in the
+        background for the next start.
+     */
     private static List<DesiredCapabilities> getCapabilities(String url) {
         if (!dockerSeleniumCapabilities.isEmpty()) {
             return dockerSeleniumCapabilities;
         }
 
+        String storedCapabilities = StateStore.getDefault().get(CAPABILITIES_STATE_KEY);
+        if (storedCapabilities != null) {
+            dockerSeleniumCapabilities = parseDockerSeleniumCapabilities(new JsonParser().parse(storedCapabilities));
+            if (!dockerSeleniumCapabilities.isEmpty()) {
+                LOGGER.log(Level.INFO, LOGGING_PREFIX + "Capabilities loaded from the stored state");
+                Thread refresh = new Thread(() -> getDockerSeleniumCapabilitiesFromGitHub(url),
+                        "DockerSeleniumCapabilitiesRefresh");
+                refresh.setDaemon(true);
+                refresh.start();
+                return dockerSeleniumCapabilities;
+            }
+        }
+
         dockerSeleniumCapabilities = getDockerSeleniumCapabilitiesFromGitHub(url);
         if (dockerSeleniumCapabilities.isEmpty()) {
             dockerSeleniumCapabilities = getDockerSeleniumFallbackCapabilities();
@@ -153,12 +202,22 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
 
     @VisibleForTesting
     static void setDockerClient(final DockerClient client) {
-        dockerClient = client;
+        containerHostPool = ContainerHostPool.single(new DockerContainerClient(client));
     }
 
     @VisibleForTesting
     static void restoreDockerClient() {
-        dockerClient = defaultDockerClient;
+        containerHostPool = defaultContainerHostPool;
+    }
+
+    @VisibleForTesting
+    static void setContainerClient(final ContainerClient client) {
+        containerHostPool = ContainerHostPool.single(client);
+    }
+
+    @VisibleForTesting
+    static void setContainerHostPool(final ContainerHostPool pool) {
+        containerHostPool = pool;
     }
 
     @VisibleForTesting
@@ -193,11 +252,35 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         return maxDockerSeleniumContainers;
     }
 
+    /*
+        The max. amount adapted to the load of the hosts when ZALENIUM_ADAPTIVE_LIMIT_ENABLED is true.
+     */
+    static int getEffectiveMaxDockerSeleniumContainers() {
+        return containerLimiter.getMaxContainers(getMaxDockerSeleniumContainers());
+    }
+
     static void setMaxDockerSeleniumContainers(int maxDockerSeleniumContainers) {
         DockerSeleniumStarterRemoteProxy.maxDockerSeleniumContainers = maxDockerSeleniumContainers < 0 ?
                 DEFAULT_AMOUNT_DOCKER_SELENIUM_CONTAINERS_RUNNING : maxDockerSeleniumContainers;
     }
 
+    /*
+        The resources of the containers of a browser, ZALENIUM_RESOURCES applies to all browsers and
+        ZALENIUM_<BROWSER>_RESOURCES overrides it per browser.
+     */
+    static ResourceProfile getResourceProfile(String browser) {
+        ResourceProfile profile = browser == null ? null : resourceProfiles.get(browser.toLowerCase());
+        return profile == null ? DEFAULT_RESOURCE_PROFILE : profile;
+    }
+
+    static void setResourceProfiles(Map<String, ResourceProfile> profiles) {
+        resourceProfiles = new HashMap<>(profiles);
+        for (Map.Entry<String, ResourceProfile> profile : resourceProfiles.entrySet()) {
+            LOGGER.log(Level.INFO, String.format("%s %s containers: %s", LOGGING_PREFIX, profile.getKey(),
+                    profile.getValue()));
+        }
+    }
+
     static String getTimeZone() {
         return timeZone;
     }
@@ -238,6 +321,14 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
 
     private static List<DesiredCapabilities> getDockerSeleniumCapabilitiesFromGitHub(String url) {
         JsonElement dsCapabilities = commonProxyUtilities.readJSONFromUrl(url);
+        List<DesiredCapabilities> desiredCapabilities = parseDockerSeleniumCapabilities(dsCapabilities);
+        if (!desiredCapabilities.isEmpty()) {
+            StateStore.getDefault().put(CAPABILITIES_STATE_KEY, dsCapabilities.toString());
+        }
+        return desiredCapabilities;
+    }
+
+    private static List<DesiredCapabilities> parseDockerSeleniumCapabilities(JsonElement dsCapabilities) {
         List<DesiredCapabilities> desiredCapabilitiesArrayList = new ArrayList<>();
         try {
             if (dsCapabilities != null) {
@@ -294,57 +385,154 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
             return null;
         }
 
-        LOGGER.log(Level.INFO, LOGGING_PREFIX + "Starting new node for {0}.", requestedCapability);
+        /*
+            While the grid drains no containers are started, the request is taken only to be rejected right away.
+         */
+        if (DrainMode.isDraining()) {
+            LOGGER.log(Level.INFO, LOGGING_PREFIX + "Grid is draining, rejecting {0}.", requestedCapability);
+            return SessionRejection.draining().markSession(super.getNewSession(requestedCapability));
+        }
+
+        /*
+            No node could take the request. When no container can be started for it either, and no cloud provider
+            has room, it is rejected if the wait would go over the budget.
+         */
+        long now = System.currentTimeMillis();
+        SaturationGuard saturationGuard = SaturationGuard.get();
+        if (saturationGuard.isEnabled()) {
+            SessionRejection saturated = saturationGuard.judge(requestedCapability, isSaturated(requestedCapability),
+                    getRegistry().getNewSessionRequestCount(), now);
+            if (saturated != null) {
+                TestSession rejectedSession = super.getNewSession(requestedCapability);
+                if (rejectedSession == null) {
+                    // All the slots for this browser are handing over rejections, it is judged again on the next pass.
+                    return null;
+                }
+                LOGGER.log(Level.INFO, LOGGING_PREFIX + "Grid is saturated, rejecting {0}.", requestedCapability);
+                return saturated.markSession(rejectedSession);
+            }
+        }
+
+        /*
+            Containers are only started for tenants within their fair share, or borrowing capacity no other tenant
+            is waiting for.
+         */
+        String tenant = FairShareScheduler.getTenant(requestedCapability);
+        FairShareScheduler.get().setCapacity(getEffectiveMaxDockerSeleniumContainers());
+        FairShareScheduler.get().waiting(tenant, now);
+        if (!FairShareScheduler.get().mayStart(tenant, now)) {
+            LOGGER.log(Level.FINE, LOGGING_PREFIX + "{0} is over its share of containers, {1} waits.",
+                    new Object[]{tenant, requestedCapability});
+            return null;
+        }
+
+        LOGGER.log(Level.INFO, LOGGING_PREFIX + "Starting new node for {0} (priority {1}).",
+                new Object[]{requestedCapability, ZaleniumPrioritizer.getPriority(requestedCapability)});
 
         String browserName = requestedCapability.get(CapabilityType.BROWSER_NAME).toString();
+        LifecycleJournal.record(LifecycleJournal.Event.REQUEST_RECEIVED, browserName, 0);
 
         /*
             Here a docker-selenium container will be started and it will register to the hub
          */
-        startDockerSeleniumContainer(browserName);
+        // The queue wait of the request starts here. Whatever node serves it adds its container launch to the trace.
+        SessionTrace trace = SessionTracing.get().traceFor(requestedCapability);
+        startDockerSeleniumContainer(browserName, trace.getTraceId());
         return null;
     }
 
+    private boolean isSaturated(Map<String, Object> requestedCapability) {
+        int maxContainers = getEffectiveMaxDockerSeleniumContainers();
+        if (containerHostPool.hasRoom(maxContainers) && containerHostPool.getRunningContainers() < maxContainers) {
+            return false;
+        }
+        for (RemoteProxy proxy : getRegistry().getAllProxies()) {
+            if (proxy instanceof CloudTestingRemoteProxy && proxy.getResourceUsageInPercent() < 100 &&
+                    proxy.hasCapability(requestedCapability)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void beforeCommand(TestSession session, HttpServletRequest request, HttpServletResponse response) {
+        SessionRejection.rejectIfMarked(session, request, response);
+        super.beforeCommand(session, request, response);
+    }
+
     /*
         Starting a few containers (Firefox, Chrome), so they are ready when the tests come.
         Executed in a thread so we don't wait for the containers to be created and the node
-        registration is not delayed.
+        registration is not delayed. Containers left by a previous hub are collected in the background, and nodes
+        whose container dies are unregistered as soon as the container backend reports it. Unless the hub was
+        started with its own prioritizer, the queue is ordered by zal:priority, so containers are launched for the
+        most important requests first.
     */
     @Override
     public void beforeRegistration() {
         readConfigurationFromEnvVariables();
+        if (getRegistry().getPrioritizer() == null) {
+            getRegistry().setPrioritizer(new ZaleniumPrioritizer());
+        }
         setupCompleted = false;
+        containerHostPool.start(DOCKER_SELENIUM_IMAGE);
         createStartupContainers();
+        ContainerLoadSampler.get().start(containerHostPool, DOCKER_SELENIUM_IMAGE, getRegistry(),
+                hostLoads -> containerLimiter.update(hostLoads));
+        orphanContainerCollector.start(containerHostPool, DOCKER_SELENIUM_IMAGE, getRegistry());
+        containerEventMonitor.start(containerHostPool, DOCKER_SELENIUM_IMAGE, getRegistry());
     }
 
     /*
-        Making the node seem as heavily used, in order to get it listed after the 'docker-selenium' nodes.
-        98% used.
+        Making the node seem as heavily used, in order to get it listed after the 'docker-selenium' nodes (below 90%)
+        and before the cloud testing providers (99% and up). Between 90% and 98% used, depending on how much room
+        the container hosts have left for new nodes.
      */
     @Override
     public float getResourceUsageInPercent() {
-        return 98;
+        int maxContainers = getEffectiveMaxDockerSeleniumContainers();
+        if (maxContainers <= 0 || !containerHostPool.hasRoom(maxContainers)) {
+            return 98;
+        }
+        double used = Math.min(1, (double) containerHostPool.getRunningContainers() / maxContainers);
+        return (float) (90 + 8 * used);
     }
 
     @VisibleForTesting
     boolean startDockerSeleniumContainer(String browser) {
+        return startDockerSeleniumContainer(browser, null);
+    }
+
+    /*
+        The trace id of the request the container is launched for is passed to it, so the spans and logs of the
+        node can be joined with the hub trace. Containers started on startup have none.
+     */
+    @VisibleForTesting
+    boolean startDockerSeleniumContainer(String browser, String traceId) {
 
         if (validateAmountOfDockerSeleniumContainers()) {
 
-            String hostIpAddress = "localhost";
+            final ContainerHost host = containerHostPool.place(getEffectiveMaxDockerSeleniumContainers());
+            if (host == null) {
+                LOGGER.log(Level.FINE, LOGGING_PREFIX + "All container hosts are full or unavailable: {0}",
+                        containerHostPool.getHosts());
+                return false;
+            }
+            final ContainerClient containerClient = host.getContainerClient();
 
             /*
                 Building the docker command, depending if Chrome or Firefox is requested.
                 To launch only the requested node type.
              */
 
-            final int nodePort = findFreePortInRange(LOWER_PORT_BOUNDARY, UPPER_PORT_BOUNDARY);
+            final int nodePort = host.allocatePort(LOWER_PORT_BOUNDARY, UPPER_PORT_BOUNDARY);
             final int vncPort = nodePort + 10000;
 
             List<String> envVariables = new ArrayList<>();
-            envVariables.add("SELENIUM_HUB_HOST=" + hostIpAddress);
+            envVariables.add("SELENIUM_HUB_HOST=" + host.getHubHost());
             envVariables.add("SELENIUM_HUB_PORT=4445");
-            envVariables.add("SELENIUM_NODE_HOST=" + hostIpAddress);
+            envVariables.add("SELENIUM_NODE_HOST=" + host.getNodeHost());
             envVariables.add("GRID=false");
             envVariables.add("RC_CHROME=false");
             envVariables.add("RC_FIREFOX=false");
@@ -363,6 +551,9 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
             envVariables.add("TZ=" + getTimeZone());
             envVariables.add("SELENIUM_NODE_REGISTER_CYCLE=0");
             envVariables.add("SELENIUM_NODE_PROXY_PARAMS=de.zalando.tip.zalenium.proxy.DockerSeleniumRemoteProxy");
+            if (traceId != null) {
+                envVariables.add(SessionTracing.TRACE_ID_ENV_VARIABLE + "=" + traceId);
+            }
             if (BrowserType.CHROME.equalsIgnoreCase(browser)) {
                 envVariables.add("SELENIUM_NODE_CH_PORT=" + nodePort);
                 envVariables.add("CHROME=true");
@@ -376,25 +567,39 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
                 envVariables.add("FIREFOX=false");
             }
 
-            HostConfig hostConfig = HostConfig.builder()
-                    .shmSize(1073741824L) // 1GB
-                    .networkMode("container:zalenium")
-                    .autoRemove(true)
-                    .build();
-
+            FlightRecorderEvents.Timing launchTiming = FlightRecorderEvents.Timing.NONE;
             try {
-                final ContainerConfig containerConfig = ContainerConfig.builder()
-                        .image(getLatestDownloadedImage(DOCKER_SELENIUM_IMAGE))
+                String containerName = String.format("%s_%s", "zalenium", nodePort);
+                final ContainerSpec containerSpec = ContainerSpec.builder()
+                        .name(containerName)
+                        .image(getLatestDownloadedImage(host, DOCKER_SELENIUM_IMAGE))
                         .env(envVariables)
-                        .hostConfig(hostConfig)
+                        .resources(getResourceProfile(browser))
+                        .networkMode(host.getNetworkMode())
+                        .autoRemove(true)
                         .build();
 
-                String containerName = String.format("%s_%s", "zalenium", nodePort);
-                final ContainerCreation dockerSeleniumContainer = dockerClient.createContainer(containerConfig,
-                        containerName);
-                dockerClient.startContainer(dockerSeleniumContainer.id());
+                long launchStartedAt = System.currentTimeMillis();
+                launchTiming = FlightRecorderEvents.containerLaunch(browser, containerName);
+                final String containerId = DockerApiExecutor.get().execute(host, DockerApiExecutor.Operation.LAUNCH,
+                        "createContainer", null, () -> containerClient.createContainer(containerSpec));
+                LifecycleJournal.record(LifecycleJournal.Event.CONTAINER_CREATED, containerName, nodePort);
+                DockerApiExecutor.get().executeIdempotent(host, DockerApiExecutor.Operation.LAUNCH, "startContainer",
+                        containerId, () -> {
+                            containerClient.startContainer(containerId);
+                            return null;
+                        });
+                LifecycleJournal.record(LifecycleJournal.Event.CONTAINER_STARTED, containerName, nodePort);
+                ContainerRecords.launched(host, containerName, browser, nodePort, traceId, launchStartedAt,
+                        System.currentTimeMillis());
+                LOGGER.log(Level.FINE, String.format("%s %s started on %s", LOGGING_PREFIX, containerName, host));
+                launchTiming.setContainerId(containerId).end(true);
+                LOGGER.log(Level.FINE, DockerApiExecutor.get().getMetricsSummary());
+                LOGGER.log(Level.FINE, DockerClientFactory.getMetricsSummary());
                 return true;
             } catch (Exception e) {
+                launchTiming.end(false);
+                LifecycleJournal.record(LifecycleJournal.Event.CONTAINER_FAILED, browser, nodePort);
                 LOGGER.log(Level.SEVERE, LOGGING_PREFIX + e.toString(), e);
                 ga.trackException(e);
             }
@@ -402,19 +607,15 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         return false;
     }
 
-    private String getLatestDownloadedImage(String imageName) throws DockerException, InterruptedException {
-        List<Image> images = dockerClient.listImages(DockerClient.ListImagesParam.byName(imageName));
-        if (images.isEmpty()) {
+    private String getLatestDownloadedImage(ContainerHost host, String imageName)
+            throws DockerException, InterruptedException {
+        String image = DockerApiExecutor.get().executeIdempotent(host, DockerApiExecutor.Operation.LIST,
+                "listImages", null, () -> host.getContainerClient().getLatestImage(imageName));
+        if (image == null) {
             LOGGER.log(Level.SEVERE, "A downloaded docker-selenium image was not found!");
             return DOCKER_SELENIUM_IMAGE;
         }
-        for (int i = images.size() - 1; i >= 0; i--) {
-            if (images.get(i).repoTags() == null) {
-                images.remove(i);
-            }
-        }
-        images.sort((o1, o2) -> o2.created().compareTo(o1.created()));
-        return images.get(0).repoTags().get(0);
+        return image;
     }
 
     boolean isSetupCompleted() {
@@ -428,7 +629,8 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         new Thread(() -> {
             LOGGER.log(Level.INFO, String.format("%s Setting up %s nodes...", LOGGING_PREFIX, configuredContainers));
             int createdContainers = 0;
-            while (createdContainers < containersToCreate && getNumberOfRunningContainers() <= getMaxDockerSeleniumContainers()) {
+            while (createdContainers < containersToCreate &&
+                    refreshRunningContainers() <= getMaxDockerSeleniumContainers()) {
                 boolean wasContainerCreated;
                 if (createdContainers < getChromeContainersOnStartup()) {
                     wasContainerCreated = startDockerSeleniumContainer(BrowserType.CHROME);
@@ -442,16 +644,20 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         }).start();
     }
 
+    /*
+        The containers counted by the last background refresh of the hosts, plus the ones placed since then.
+     */
     private int getNumberOfRunningContainers() {
+        return containerHostPool.getRunningContainers();
+    }
+
+    /*
+        Refreshes the hosts right away, only done by the thread creating the startup containers, which does not hold
+        back the matching of requests.
+     */
+    private int refreshRunningContainers() {
         try {
-            List<Container> containerList = dockerClient.listContainers(DockerClient.ListContainersParam.allContainers());
-            int numberOfDockerSeleniumContainers = 0;
-            for (Container container : containerList) {
-                if (container.image().contains(DOCKER_SELENIUM_IMAGE) && !"exited".equalsIgnoreCase(container.state())) {
-                    numberOfDockerSeleniumContainers++;
-                }
-            }
-            return numberOfDockerSeleniumContainers;
+            return containerHostPool.refresh(DOCKER_SELENIUM_IMAGE);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, LOGGING_PREFIX + e.toString(), e);
             ga.trackException(e);
@@ -479,9 +685,10 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
 
             LOGGER.log(Level.FINE, String.format("%s %s docker-selenium containers running", LOGGING_PREFIX,
                     numberOfDockerSeleniumContainers));
-            if (numberOfDockerSeleniumContainers >= getMaxDockerSeleniumContainers()) {
+            int maxContainers = getEffectiveMaxDockerSeleniumContainers();
+            if (numberOfDockerSeleniumContainers >= maxContainers) {
                 LOGGER.log(Level.FINE, LOGGING_PREFIX + "Max. number of docker-selenium containers has been reached, " +
-                        "no more will be created until the number decreases below {0}.", getMaxDockerSeleniumContainers());
+                        "no more will be created until the number decreases below {0}.", maxContainers);
                 return false;
             }
             return true;
@@ -492,27 +699,4 @@ public class DockerSeleniumStarterRemoteProxy extends DefaultRemoteProxy impleme
         return false;
     }
 
-    /*
-        Method adapted from https://gist.github.com/vorburger/3429822
-     */
-    private int findFreePortInRange(int lowerBoundary, int upperBoundary) {
-        for (int portNumber = lowerBoundary; portNumber <= upperBoundary; portNumber++) {
-            if (!allocatedPorts.contains(portNumber)) {
-                int freePort = -1;
-
-                try (ServerSocket serverSocket = new ServerSocket(portNumber)) {
-                    freePort = serverSocket.getLocalPort();
-                } catch (IOException e) {
-                    LOGGER.log(Level.FINE, LOGGING_PREFIX + e.toString(), e);
-                }
-
-                if (freePort != -1) {
-                    allocatedPorts.add(freePort);
-                    return freePort;
-                }
-            }
-        }
-        return -1;
-    }
-
 }
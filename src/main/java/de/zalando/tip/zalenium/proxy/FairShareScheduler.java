@@ -0,0 +1,191 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import de.zalando.tip.zalenium.util.Environment;
+import org.openqa.grid.internal.TestSession;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Weighted fair share of the docker-selenium containers between tenants. The tenant of a request is its zal:tenant
+    capability (a team), or else its build capability, so one large build cannot take every container while other
+    teams wait. Weights come from ZALENIUM_TENANT_WEIGHTS (e.g. "team-a:3,team-b:1", 1 for the rest), and the share
+    of a tenant is its part of the max. amount of containers among the tenants that have sessions or are waiting.
+    A tenant over its share can still borrow idle capacity, as long as no tenant under its share is waiting for a
+    container. ZALENIUM_TENANT_MAX_SESSIONS (e.g. "nightly:10") caps a tenant even when the grid is idle.
+ */
+class FairShareScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(FairShareScheduler.class.getName());
+
+    static final String TENANT_CAPABILITY = "zal:tenant";
+    static final String BUILD_CAPABILITY = "build";
+    static final String DEFAULT_TENANT = "default";
+    static final String ZALENIUM_TENANT_WEIGHTS = "ZALENIUM_TENANT_WEIGHTS";
+    static final String ZALENIUM_TENANT_MAX_SESSIONS = "ZALENIUM_TENANT_MAX_SESSIONS";
+    private static final int DEFAULT_WEIGHT = 1;
+    // A tenant counts as waiting for a while after its request was last seen without a node, a few matcher passes.
+    private static final long WAITING_MILLIS = 15000;
+
+    private static final FairShareScheduler defaultScheduler = new FairShareScheduler(new Environment());
+    private static FairShareScheduler scheduler = defaultScheduler;
+
+    private final Map<String, Integer> weights;
+    private final Map<String, Integer> maxSessions;
+    private final Map<TestSession, String> sessions = new HashMap<>();
+    private final Map<String, Integer> runningSessions = new HashMap<>();
+    private final Map<String, Long> lastWaitingMillis = new HashMap<>();
+    private int capacity;
+
+    FairShareScheduler(Environment env) {
+        this.weights = parseTenantValues(env.getStringEnvVariable(ZALENIUM_TENANT_WEIGHTS, ""), 1);
+        this.maxSessions = parseTenantValues(env.getStringEnvVariable(ZALENIUM_TENANT_MAX_SESSIONS, ""), 0);
+    }
+
+    static FairShareScheduler get() {
+        return scheduler;
+    }
+
+    @VisibleForTesting
+    static void set(FairShareScheduler fairShareScheduler) {
+        scheduler = fairShareScheduler;
+    }
+
+    @VisibleForTesting
+    static void restore() {
+        scheduler = defaultScheduler;
+    }
+
+    static String getTenant(Map<String, Object> requestedCapability) {
+        Object tenant = requestedCapability.get(TENANT_CAPABILITY);
+        if (tenant == null || tenant.toString().trim().isEmpty()) {
+            tenant = requestedCapability.get(BUILD_CAPABILITY);
+        }
+        return tenant == null || tenant.toString().trim().isEmpty() ? DEFAULT_TENANT : tenant.toString().trim();
+    }
+
+    /*
+        The amount of containers shared between the tenants, 0 or less means no limit.
+     */
+    synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /*
+        The tenant has a request that no node could take.
+     */
+    synchronized void waiting(String tenant, long nowMillis) {
+        lastWaitingMillis.put(tenant, nowMillis);
+    }
+
+    /*
+        Whether the tenant can start one more session, when it cannot it is waiting from now on.
+     */
+    synchronized boolean mayStart(String tenant, long nowMillis) {
+        boolean allowed = isAllowed(tenant, nowMillis);
+        if (!allowed) {
+            LOGGER.log(Level.FINE, "{0} is using its share of the grid ({1} sessions), its request waits.",
+                    new Object[]{tenant, getRunningSessions(tenant)});
+            lastWaitingMillis.put(tenant, nowMillis);
+        }
+        return allowed;
+    }
+
+    /*
+        Once the tenant is back at its share it is not owed containers anymore, so it stops counting as waiting.
+        If it still has requests over its share, they mark it as waiting again when they reach the starter.
+     */
+    synchronized void started(TestSession session, String tenant) {
+        if (sessions.put(session, tenant) == null) {
+            runningSessions.merge(tenant, 1, Integer::sum);
+        }
+        if (lastWaitingMillis.containsKey(tenant) &&
+                (capacity <= 0 || getRunningSessions(tenant) >= getShare(tenant, getActiveWeight(tenant)))) {
+            lastWaitingMillis.remove(tenant);
+        }
+    }
+
+    synchronized void finished(TestSession session) {
+        String tenant = sessions.remove(session);
+        if (tenant != null) {
+            runningSessions.computeIfPresent(tenant, (key, running) -> running > 1 ? running - 1 : null);
+        }
+    }
+
+    synchronized int getRunningSessions(String tenant) {
+        return runningSessions.getOrDefault(tenant, 0);
+    }
+
+    private boolean isAllowed(String tenant, long nowMillis) {
+        if (isCapped(tenant)) {
+            return false;
+        }
+        if (capacity <= 0) {
+            return true;
+        }
+        lastWaitingMillis.values().removeIf(waitingMillis -> nowMillis - waitingMillis > WAITING_MILLIS);
+        int activeWeight = getActiveWeight(tenant);
+        if (getRunningSessions(tenant) < getShare(tenant, activeWeight)) {
+            return true;
+        }
+        // Borrowing idle capacity, unless it is owed to a tenant that is waiting.
+        for (String waitingTenant : lastWaitingMillis.keySet()) {
+            if (!waitingTenant.equals(tenant) && !isCapped(waitingTenant) &&
+                    getRunningSessions(waitingTenant) < getShare(waitingTenant, activeWeight)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+        The weight of the tenants that have sessions or are waiting, plus the given one.
+     */
+    private int getActiveWeight(String tenant) {
+        Set<String> activeTenants = new HashSet<>(runningSessions.keySet());
+        activeTenants.addAll(lastWaitingMillis.keySet());
+        activeTenants.add(tenant);
+        int activeWeight = 0;
+        for (String activeTenant : activeTenants) {
+            activeWeight += weights.getOrDefault(activeTenant, DEFAULT_WEIGHT);
+        }
+        return activeWeight;
+    }
+
+    private double getShare(String tenant, int activeWeight) {
+        return (double) capacity * weights.getOrDefault(tenant, DEFAULT_WEIGHT) / activeWeight;
+    }
+
+    private boolean isCapped(String tenant) {
+        Integer max = maxSessions.get(tenant);
+        return max != null && getRunningSessions(tenant) >= max;
+    }
+
+    /*
+        Parses "tenant:value,tenant:value", skipping the entries with a value below the minimum.
+     */
+    private static Map<String, Integer> parseTenantValues(String tenantValues, int minimum) {
+        Map<String, Integer> values = new HashMap<>();
+        for (String entry : tenantValues.split(",")) {
+            int separator = entry.lastIndexOf(':');
+            if (separator <= 0) {
+                continue;
+            }
+            try {
+                int value = Integer.parseInt(entry.substring(separator + 1).trim());
+                if (value >= minimum) {
+                    values.put(entry.substring(0, separator).trim(), value);
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, "Invalid tenant setting ignored: " + entry);
+            }
+        }
+        return values;
+    }
+
+}
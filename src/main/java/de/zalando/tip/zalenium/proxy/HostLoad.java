@@ -0,0 +1,72 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import de.zalando.tip.zalenium.container.ContainerStats;
+
+/*
+    The resources used by the docker-selenium containers of a host, added up from their stats. The memory share is
+    the memory used by the containers out of the host memory. When the host memory is unknown, it is the share of the
+    container closest to its own memory limit.
+ */
+final class HostLoad {
+
+    private final ContainerHost host;
+    private final long hostMemoryBytes;
+    private int runningContainers;
+    private double cpuShare;
+    private long memoryUsageBytes;
+    private double containerMemoryShare;
+
+    HostLoad(ContainerHost host, long hostMemoryBytes) {
+        this.host = host;
+        this.hostMemoryBytes = hostMemoryBytes;
+    }
+
+    @VisibleForTesting
+    HostLoad(int runningContainers, double cpuShare, long memoryUsageBytes, long hostMemoryBytes) {
+        this(null, hostMemoryBytes);
+        this.runningContainers = runningContainers;
+        this.cpuShare = cpuShare;
+        this.memoryUsageBytes = memoryUsageBytes;
+    }
+
+    ContainerHost getHost() {
+        return host;
+    }
+
+    int getRunningContainers() {
+        return runningContainers;
+    }
+
+    void addRunningContainer() {
+        runningContainers++;
+    }
+
+    void add(ContainerStats stats) {
+        cpuShare += stats.getCpuShare();
+        memoryUsageBytes += stats.getMemoryUsageBytes();
+        // Containers without a memory limit report the host memory as their limit.
+        if (stats.getMemoryLimitBytes() > 0) {
+            containerMemoryShare = Math.max(containerMemoryShare,
+                    (double) stats.getMemoryUsageBytes() / stats.getMemoryLimitBytes());
+        }
+    }
+
+    double getMemoryShare() {
+        return hostMemoryBytes > 0 ? (double) memoryUsageBytes / hostMemoryBytes : containerMemoryShare;
+    }
+
+    /*
+        How far the host is from the targets (fractions of the host), above 1 it is overloaded.
+     */
+    double getPressure(double targetCpu, double targetMemory) {
+        return Math.max(cpuShare / targetCpu, getMemoryShare() / targetMemory);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s containers, %.1f%% CPU, %s/%s MB", runningContainers, cpuShare * 100,
+                memoryUsageBytes / (1024 * 1024), hostMemoryBytes > 0 ? hostMemoryBytes / (1024 * 1024) : "?");
+    }
+
+}
@@ -0,0 +1,96 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.util.Environment;
+import org.openqa.grid.internal.RemoteProxy;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Decides when a docker-selenium node that sits idle is shut down, so its container stops and gives back its port
+    and memory. ZALENIUM_IDLE_TIMEOUT is the amount of seconds a node may stay idle (0, the default, keeps idle nodes
+    forever) and ZALENIUM_MIN_IDLE_NODES the amount of unused nodes that are kept per browser as a warm pool.
+    ZALENIUM_<BROWSER>_IDLE_TIMEOUT and ZALENIUM_<BROWSER>_MIN_IDLE_NODES override them per browser.
+    Nodes that already ran their test but never got a STOP_SESSION (e.g. the client went away) are not part of the
+    warm pool, they are always shut down after the timeout.
+ */
+class IdleNodeReaper {
+
+    private static final Logger LOGGER = Logger.getLogger(IdleNodeReaper.class.getName());
+
+    static final String ZALENIUM_IDLE_TIMEOUT = "ZALENIUM_IDLE_TIMEOUT";
+    static final String ZALENIUM_MIN_IDLE_NODES = "ZALENIUM_MIN_IDLE_NODES";
+    private static final String IDLE_TIMEOUT_SUFFIX = "_IDLE_TIMEOUT";
+    private static final String MIN_IDLE_NODES_SUFFIX = "_MIN_IDLE_NODES";
+    private static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 0;
+    private static final int DEFAULT_MIN_IDLE_NODES = 0;
+
+    private final Environment env;
+    private final int idleTimeoutSeconds;
+    private final int minIdleNodes;
+
+    IdleNodeReaper(Environment env) {
+        this.env = env;
+        this.idleTimeoutSeconds = Math.max(0, env.getIntEnvVariable(ZALENIUM_IDLE_TIMEOUT,
+                DEFAULT_IDLE_TIMEOUT_SECONDS));
+        this.minIdleNodes = Math.max(0, env.getIntEnvVariable(ZALENIUM_MIN_IDLE_NODES, DEFAULT_MIN_IDLE_NODES));
+    }
+
+    long getIdleTimeoutMillis(String browser) {
+        return getBrowserValue(browser, IDLE_TIMEOUT_SUFFIX, idleTimeoutSeconds) * 1000L;
+    }
+
+    int getMinIdleNodes(String browser) {
+        return getBrowserValue(browser, MIN_IDLE_NODES_SUFFIX, minIdleNodes);
+    }
+
+    /*
+        Retires the node when it was idle for longer than the timeout of its browser and it is not needed to keep the
+        warm pool. A retired node takes no more sessions and it is the caller's job to shut it down.
+        Synchronized so several nodes of the same browser timing out together do not go below the floor.
+     */
+    synchronized boolean tryRetire(DockerSeleniumRemoteProxy node, Iterable<RemoteProxy> nodes) {
+        String browser = node.getBrowser();
+        long idleTimeoutMillis = getIdleTimeoutMillis(browser);
+        long idleMillis = node.getIdleMillis();
+        if (idleTimeoutMillis <= 0 || idleMillis < idleTimeoutMillis || node.isBusy()) {
+            return false;
+        }
+        if (!node.isTestSessionLimitReached() && countWarmNodes(browser, nodes) <= getMinIdleNodes(browser)) {
+            return false;
+        }
+        boolean retired = node.retire(idleTimeoutMillis);
+        if (retired) {
+            LOGGER.log(Level.INFO, String.format("%s Idle for %s seconds, shutting the node down.",
+                    node.getNodeIpAndPort(), idleMillis / 1000));
+        }
+        return retired;
+    }
+
+    /*
+        Free nodes of the browser that can still take a session.
+     */
+    private static int countWarmNodes(String browser, Iterable<RemoteProxy> nodes) {
+        int warmNodes = 0;
+        for (RemoteProxy proxy : nodes) {
+            if (!(proxy instanceof DockerSeleniumRemoteProxy)) {
+                continue;
+            }
+            DockerSeleniumRemoteProxy node = (DockerSeleniumRemoteProxy) proxy;
+            if (!node.isBusy() && !node.isRetired() && !node.isTestSessionLimitReached() &&
+                    String.valueOf(browser).equalsIgnoreCase(String.valueOf(node.getBrowser()))) {
+                warmNodes++;
+            }
+        }
+        return warmNodes;
+    }
+
+    private int getBrowserValue(String browser, String suffix, int defaultValue) {
+        if (browser == null || browser.isEmpty()) {
+            return defaultValue;
+        }
+        String variable = "ZALENIUM_" + browser.toUpperCase().replaceAll("[^A-Z0-9]", "_") + suffix;
+        return Math.max(0, env.getIntEnvVariable(variable, defaultValue));
+    }
+
+}
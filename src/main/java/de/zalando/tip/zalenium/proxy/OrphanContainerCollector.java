@@ -0,0 +1,165 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.docker.client.exceptions.DockerException;
+import de.zalando.tip.zalenium.container.ContainerClient;
+import de.zalando.tip.zalenium.container.ContainerInfo;
+import de.zalando.tip.zalenium.util.Environment;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Stops the zalenium_<port> containers that have no registered node, e.g. the ones left running after the hub
+    crashed, so they stop counting towards the max. amount of containers. Runs when the hub starts and then every
+    ZALENIUM_ORPHAN_GC_INTERVAL seconds (0 disables it). A container gets ZALENIUM_ORPHAN_GRACE_PERIOD seconds to
+    register, counted from its launch when the StateStore has it or else from the first time it is seen without a
+    node. Containers that are still booting or that register with the new hub in that time are adopted and left
+    alone.
+ */
+class OrphanContainerCollector {
+
+    private static final Logger LOGGER = Logger.getLogger(OrphanContainerCollector.class.getName());
+
+    static final String ZALENIUM_ORPHAN_GC_INTERVAL = "ZALENIUM_ORPHAN_GC_INTERVAL";
+    static final String ZALENIUM_ORPHAN_GRACE_PERIOD = "ZALENIUM_ORPHAN_GRACE_PERIOD";
+    private static final int DEFAULT_INTERVAL_SECONDS = 60;
+    // Longer than the WAIT_TIMEOUT docker-selenium gets to start and register.
+    private static final int DEFAULT_GRACE_PERIOD_SECONDS = 180;
+    private static final String CONTAINER_NAME_PREFIX = "zalenium_";
+
+    private final int intervalSeconds;
+    private final long gracePeriodMillis;
+    // Container id -> first time it was seen without a node
+    private final Map<String, Long> unregisteredSince = new HashMap<>();
+    private ScheduledExecutorService collector;
+
+    OrphanContainerCollector(Environment env) {
+        this.intervalSeconds = Math.max(0, env.getIntEnvVariable(ZALENIUM_ORPHAN_GC_INTERVAL,
+                DEFAULT_INTERVAL_SECONDS));
+        this.gracePeriodMillis = Math.max(0, env.getIntEnvVariable(ZALENIUM_ORPHAN_GRACE_PERIOD,
+                DEFAULT_GRACE_PERIOD_SECONDS)) * 1000L;
+    }
+
+    synchronized void start(ContainerHostPool pool, String image, Registry registry) {
+        if (collector != null || intervalSeconds == 0) {
+            return;
+        }
+        collector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OrphanContainerCollector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        collector.scheduleWithFixedDelay(() -> {
+            try {
+                collect(pool, image, registry.getAllProxies(), System.currentTimeMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Orphan containers could not be collected: " + e.toString(), e);
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /*
+        Stops the containers that were without a node for longer than the grace period, returns how many.
+     */
+    @VisibleForTesting
+    synchronized int collect(ContainerHostPool pool, String image, Iterable<RemoteProxy> proxies, long nowMillis)
+            throws InterruptedException {
+        Set<String> unregistered = new HashSet<>();
+        int stoppedContainers = 0;
+        for (ContainerHost host : pool.getHosts()) {
+            Set<Integer> registeredPorts = getRegisteredPorts(pool, host, proxies);
+            ContainerClient containerClient = host.getContainerClient();
+            // Read before listing, so the record of a container launched meanwhile is not taken as gone.
+            Map<String, Long> launchTimes = ContainerRecords.getLaunchTimes(host);
+            List<ContainerInfo> containers;
+            try {
+                containers = DockerApiExecutor.get().executeIdempotent(host, DockerApiExecutor.Operation.LIST,
+                        "listContainers", null, containerClient::listContainers);
+            } catch (DockerException e) {
+                LOGGER.log(Level.FINE, "Containers on " + host.getName() + " could not be listed", e);
+                continue;
+            }
+            for (ContainerInfo container : containers) {
+                int port = getNodePort(container, image);
+                if (port <= 0) {
+                    continue;
+                }
+                Long launchedAt = launchTimes.remove(container.getName());
+                if (registeredPorts.contains(port)) {
+                    continue;
+                }
+                unregistered.add(container.getId());
+                long since = unregisteredSince.computeIfAbsent(container.getId(),
+                        id -> launchedAt == null ? nowMillis : Math.min(launchedAt, nowMillis));
+                if (nowMillis - since >= gracePeriodMillis && stop(host, container)) {
+                    ContainerRecords.removed(host, container.getName());
+                    stoppedContainers++;
+                }
+            }
+            // Containers that are gone, e.g. removed after they stopped.
+            for (String containerName : launchTimes.keySet()) {
+                ContainerRecords.removed(host, containerName);
+            }
+        }
+        unregisteredSince.keySet().retainAll(unregistered);
+        return stoppedContainers;
+    }
+
+    private boolean stop(ContainerHost host, ContainerInfo container) throws InterruptedException {
+        LOGGER.log(Level.INFO, String.format("%s has no registered node, stopping it.", container.getName()));
+        try {
+            DockerApiExecutor.get().executeIdempotent(host, DockerApiExecutor.Operation.LAUNCH, "stopContainer",
+                    container.getId(), () -> {
+                        host.getContainerClient().stopContainer(container.getId(), 5);
+                        return null;
+                    });
+            unregisteredSince.remove(container.getId());
+            return true;
+        } catch (DockerException e) {
+            LOGGER.log(Level.WARNING, container.getName() + " could not be stopped: " + e.toString(), e);
+            return false;
+        }
+    }
+
+    /*
+        The port of a running docker-selenium container started by the starter, 0 for any other container.
+     */
+    private static int getNodePort(ContainerInfo container, String image) {
+        String name = container.getName();
+        if (container.isExited() || !container.getImage().contains(image) || name == null ||
+                !name.startsWith(CONTAINER_NAME_PREFIX)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring(CONTAINER_NAME_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Set<Integer> getRegisteredPorts(ContainerHostPool pool, ContainerHost host,
+                                                   Iterable<RemoteProxy> proxies) {
+        Set<Integer> ports = new HashSet<>();
+        for (RemoteProxy proxy : proxies) {
+            if (proxy instanceof DockerSeleniumRemoteProxy && proxy.getRemoteHost() != null &&
+                    pool.forNodeHost(proxy.getRemoteHost().getHost()) == host) {
+                ports.add(proxy.getRemoteHost().getPort());
+            }
+        }
+        return ports;
+    }
+
+}
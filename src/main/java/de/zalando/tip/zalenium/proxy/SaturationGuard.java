@@ -0,0 +1,119 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+import de.zalando.tip.zalenium.util.Environment;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+/*
+    Rejects new session requests right away when the grid is saturated and the wait would be too long, instead of
+    leaving them queued until the client times out. A request that reaches the starter is judged on every pass until
+    it is accepted, so an accepted request is never rejected later on, and one whose rejection could not be handed
+    over yet (no free starter slot) is rejected on a later pass. Throughput is the rate of sessions (docker-selenium
+    and cloud) that finished in the last few minutes, and the estimated wait is the amount of requests ahead of the
+    new one divided by it. Budgets: ZALENIUM_MAX_QUEUE_WAIT seconds and ZALENIUM_MAX_QUEUE_DEPTH requests, 0 (the
+    default) disables them.
+ */
+class SaturationGuard {
+
+    static final String ZALENIUM_MAX_QUEUE_WAIT = "ZALENIUM_MAX_QUEUE_WAIT";
+    static final String ZALENIUM_MAX_QUEUE_DEPTH = "ZALENIUM_MAX_QUEUE_DEPTH";
+    private static final long THROUGHPUT_WINDOW_MILLIS = 5 * 60 * 1000;
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 60;
+    private static final int MAX_RETRY_AFTER_SECONDS = 3600;
+
+    private static final SaturationGuard defaultSaturationGuard = new SaturationGuard(new Environment(),
+            System.currentTimeMillis());
+    private static SaturationGuard saturationGuard = defaultSaturationGuard;
+
+    private final int maxQueueWaitSeconds;
+    private final int maxQueueDepth;
+    private final long startedAtMillis;
+    private final Deque<Long> finishedSessions = new ArrayDeque<>();
+    // Requests already accepted, compared by identity and dropped once the hub is done with them.
+    private final Map<Map<String, Object>, Boolean> acceptedRequests = new MapMaker().weakKeys().makeMap();
+
+    SaturationGuard(Environment env, long startedAtMillis) {
+        this.maxQueueWaitSeconds = Math.max(0, env.getIntEnvVariable(ZALENIUM_MAX_QUEUE_WAIT, 0));
+        this.maxQueueDepth = Math.max(0, env.getIntEnvVariable(ZALENIUM_MAX_QUEUE_DEPTH, 0));
+        this.startedAtMillis = startedAtMillis;
+    }
+
+    static SaturationGuard get() {
+        return saturationGuard;
+    }
+
+    @VisibleForTesting
+    static void set(SaturationGuard guard) {
+        saturationGuard = guard;
+    }
+
+    @VisibleForTesting
+    static void restore() {
+        saturationGuard = defaultSaturationGuard;
+    }
+
+    boolean isEnabled() {
+        return maxQueueWaitSeconds > 0 || maxQueueDepth > 0;
+    }
+
+    synchronized void sessionFinished(long nowMillis) {
+        finishedSessions.addLast(nowMillis);
+        pruneFinishedSessions(nowMillis);
+    }
+
+    /*
+        Finished sessions per second, 0 when none finished yet.
+     */
+    synchronized double getThroughput(long nowMillis) {
+        pruneFinishedSessions(nowMillis);
+        long window = Math.min(THROUGHPUT_WINDOW_MILLIS, nowMillis - startedAtMillis);
+        return finishedSessions.isEmpty() || window <= 0 ? 0 : finishedSessions.size() * 1000.0 / window;
+    }
+
+    /*
+        The rejection for a request when the grid is saturated, or null when it should wait. Once a request was
+        accepted (null returned) it is not judged again.
+     */
+    SessionRejection judge(Map<String, Object> requestedCapability, boolean saturated, int queuedRequests,
+                           long nowMillis) {
+        if (!isEnabled() || acceptedRequests.containsKey(requestedCapability)) {
+            return null;
+        }
+        SessionRejection rejection = saturated ? getRejection(queuedRequests, nowMillis) : null;
+        if (rejection == null) {
+            acceptedRequests.put(requestedCapability, Boolean.TRUE);
+        }
+        return rejection;
+    }
+
+    private SessionRejection getRejection(int queuedRequests, long nowMillis) {
+        int requestsAhead = Math.max(0, queuedRequests - 1);
+        double throughput = getThroughput(nowMillis);
+        long estimatedWaitSeconds = throughput > 0 ? (long) Math.ceil((requestsAhead + 1) / throughput) : -1;
+        int retryAfterSeconds = estimatedWaitSeconds > 0 ?
+                (int) Math.min(MAX_RETRY_AFTER_SECONDS, estimatedWaitSeconds) : DEFAULT_RETRY_AFTER_SECONDS;
+        if (maxQueueDepth > 0 && requestsAhead >= maxQueueDepth) {
+            return new SessionRejection(SessionRejection.Reason.SATURATED, String.format("The grid is saturated, " +
+                    "%s requests are already waiting (the limit is %s).", requestsAhead, maxQueueDepth),
+                    retryAfterSeconds);
+        }
+        // Without finished sessions there is no throughput to estimate from, only the queue depth is checked.
+        if (maxQueueWaitSeconds > 0 && estimatedWaitSeconds > maxQueueWaitSeconds) {
+            return new SessionRejection(SessionRejection.Reason.SATURATED, String.format("The grid is saturated, " +
+                    "the estimated wait is %ss (the limit is %ss).", estimatedWaitSeconds, maxQueueWaitSeconds),
+                    retryAfterSeconds);
+        }
+        return null;
+    }
+
+    private void pruneFinishedSessions(long nowMillis) {
+        while (!finishedSessions.isEmpty() && nowMillis - finishedSessions.peekFirst() > THROUGHPUT_WINDOW_MILLIS) {
+            finishedSessions.removeFirst();
+        }
+    }
+
+}
@@ -27,6 +27,11 @@ public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
     private static final String SAUCE_LABS_URL = "http://ondemand.saucelabs.com:80";
     private static final Logger LOGGER = Logger.getLogger(SauceLabsRemoteProxy.class.getName());
     private static final String SAUCE_LABS_DEFAULT_CAPABILITIES_BK_FILE = "saucelabs_capabilities.json";
+    private static final String SAUCE_LABS_CONCURRENCY_URL = "https://%s:%s@saucelabs.com/rest/v1.1/users/%s/concurrency";
+    @VisibleForTesting
+    static final String ZALENIUM_SAUCE_LABS_PARALLEL_SESSIONS = "ZALENIUM_SAUCE_LABS_PARALLEL_SESSIONS";
+    @VisibleForTesting
+    static final String ZALENIUM_SAUCE_LABS_COST_WEIGHT = "ZALENIUM_SAUCE_LABS_COST_WEIGHT";
 
     public SauceLabsRemoteProxy(RegistrationRequest request, Registry registry) {
         super(updateSLCapabilities(request, SAUCE_LABS_CAPABILITIES_URL), registry);
@@ -35,7 +40,8 @@ public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
     @VisibleForTesting
     static RegistrationRequest updateSLCapabilities(RegistrationRequest registrationRequest, String url) {
         JsonElement slCapabilities = getCommonProxyUtilities().readJSONFromUrl(url);
-
+        int maxParallelSessions = getMaxParallelSessions("[SL]", ZALENIUM_SAUCE_LABS_PARALLEL_SESSIONS,
+                getConcurrencyUrl(), SauceLabsRemoteProxy::getAllowedSessions);
         try {
             registrationRequest.getCapabilities().clear();
             String logMessage = String.format("[SL] Capabilities fetched from %s", url);
@@ -44,19 +50,19 @@ public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
                 slCapabilities = getCommonProxyUtilities().readJSONFromFile(SAUCE_LABS_DEFAULT_CAPABILITIES_BK_FILE);
             }
             LOGGER.log(Level.INFO, logMessage);
-            return addCapabilitiesToRegistrationRequest(registrationRequest, slCapabilities);
+            addCapabilitiesToRegistrationRequest(registrationRequest, slCapabilities);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, e.toString(), e);
             getGa().trackException(e);
         }
-        return registrationRequest;
+        return setMaxParallelSessions(registrationRequest, maxParallelSessions);
     }
 
-    private static RegistrationRequest addCapabilitiesToRegistrationRequest(RegistrationRequest registrationRequest, JsonElement slCapabilities) {
+    private static RegistrationRequest addCapabilitiesToRegistrationRequest(RegistrationRequest registrationRequest,
+                                                                            JsonElement slCapabilities) {
         for (JsonElement cap : slCapabilities.getAsJsonArray()) {
             JsonObject capAsJsonObject = cap.getAsJsonObject();
             DesiredCapabilities desiredCapabilities = new DesiredCapabilities();
-            desiredCapabilities.setCapability(RegistrationRequest.MAX_INSTANCES, 5);
             desiredCapabilities.setBrowserName(capAsJsonObject.get("api_name").getAsString());
             desiredCapabilities.setPlatform(getPlatform(capAsJsonObject.get("os").getAsString()));
             if (!registrationRequest.getCapabilities().contains(desiredCapabilities)) {
@@ -66,6 +72,25 @@ public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
         return registrationRequest;
     }
 
+    private static String getConcurrencyUrl() {
+        if (SAUCE_LABS_USER_NAME == null || SAUCE_LABS_USER_NAME.isEmpty()) {
+            return null;
+        }
+        return String.format(SAUCE_LABS_CONCURRENCY_URL, SAUCE_LABS_USER_NAME, SAUCE_LABS_ACCESS_KEY,
+                SAUCE_LABS_USER_NAME);
+    }
+
+    /*
+        {"timestamp": ..., "concurrency": {"<user>": {"remaining": {...}, "allowed": {"overall": 10, ...}}}}
+     */
+    @VisibleForTesting
+    static int getAllowedSessions(JsonElement concurrency) {
+        JsonObject users = concurrency.getAsJsonObject().getAsJsonObject("concurrency");
+        JsonElement user = SAUCE_LABS_USER_NAME != null && users.has(SAUCE_LABS_USER_NAME) ? users.get(SAUCE_LABS_USER_NAME) :
+                users.entrySet().iterator().next().getValue();
+        return user.getAsJsonObject().getAsJsonObject("allowed").get("overall").getAsInt();
+    }
+
     private static Platform getPlatform(String os) {
         if ("windows 2012".equalsIgnoreCase(os)) {
             return Platform.WIN8;
@@ -104,4 +129,9 @@ public class SauceLabsRemoteProxy extends CloudTestingRemoteProxy {
         return SAUCE_LABS_URL;
     }
 
+    @Override
+    int getCostWeight() {
+        return getEnv().getIntEnvVariable(ZALENIUM_SAUCE_LABS_COST_WEIGHT, DEFAULT_COST_WEIGHT);
+    }
+
 }
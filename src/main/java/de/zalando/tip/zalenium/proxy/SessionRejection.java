@@ -0,0 +1,112 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.google.gson.JsonObject;
+import de.zalando.tip.zalenium.util.DrainMode;
+import org.openqa.grid.common.exception.GridException;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.handler.RequestType;
+import org.openqa.grid.web.servlet.handler.WebDriverRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    A new session request the grid turns down right away, instead of leaving it in the hub queue until the client
+    times out. The proxy that gets the request takes a session for it and marks it. When the hub forwards the
+    request, beforeCommand answers the client with a 503, a Retry-After header and a "session not created" error,
+    then aborts the forwarding so the hub releases the session. The response is already committed by then, so the
+    hub keeps it instead of sending its own error.
+ */
+final class SessionRejection {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionRejection.class.getName());
+
+    private static final String REJECTION_SESSION_ATTRIBUTE = "zal:rejection";
+    // JSON wire protocol status for SessionNotCreatedException
+    private static final int SESSION_NOT_CREATED_STATUS = 33;
+
+    enum Reason {
+        DRAINING, SATURATED
+    }
+
+    private final Reason reason;
+    private final String message;
+    private final int retryAfterSeconds;
+
+    SessionRejection(Reason reason, String message, int retryAfterSeconds) {
+        this.reason = reason;
+        this.message = message;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    static SessionRejection draining() {
+        return new SessionRejection(Reason.DRAINING, "The grid is draining, retry the request after it restarts.",
+                DrainMode.getRetryAfterSeconds());
+    }
+
+    Reason getReason() {
+        return reason;
+    }
+
+    int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /*
+        Marks the session, so the request is rejected when it is forwarded. Returns the same session.
+     */
+    TestSession markSession(TestSession session) {
+        if (session != null) {
+            session.put(REJECTION_SESSION_ATTRIBUTE, this);
+        }
+        return session;
+    }
+
+    static boolean isRejected(TestSession session) {
+        return session != null && session.get(REJECTION_SESSION_ATTRIBUTE) instanceof SessionRejection;
+    }
+
+    /*
+        Sends the rejection of a marked session and throws to stop the forwarding, does nothing otherwise.
+     */
+    static void rejectIfMarked(TestSession session, HttpServletRequest request, HttpServletResponse response) {
+        if (!isRejected(session) || !(request instanceof WebDriverRequest) ||
+                !RequestType.START_SESSION.equals(((WebDriverRequest) request).getRequestType())) {
+            return;
+        }
+        SessionRejection rejection = (SessionRejection) session.get(REJECTION_SESSION_ATTRIBUTE);
+        rejection.send(response);
+        throw new GridException(String.format("New session request rejected (%s): %s", rejection.reason,
+                rejection.message));
+    }
+
+    void send(HttpServletResponse response) {
+        JsonObject rejection = new JsonObject();
+        rejection.addProperty("reason", reason.name());
+        rejection.addProperty("retryAfterSeconds", retryAfterSeconds);
+        JsonObject value = new JsonObject();
+        value.addProperty("error", "session not created");
+        value.addProperty("message", message);
+        value.add("zalenium", rejection);
+        JsonObject body = new JsonObject();
+        body.addProperty("status", SESSION_NOT_CREATED_STATUS);
+        body.add("value", value);
+        byte[] content = body.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.setContentLength(content.length);
+            response.getOutputStream().write(content);
+            response.flushBuffer();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "The rejection could not be sent: " + e.toString(), e);
+        }
+    }
+
+}
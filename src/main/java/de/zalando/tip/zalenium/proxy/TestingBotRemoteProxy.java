@@ -24,6 +24,11 @@ public class TestingBotRemoteProxy extends CloudTestingRemoteProxy {
     private static final String TESTINGBOT_CAPABILITIES_BK_FILE = "testingbot_capabilities.json";
     private static final String TESTINGBOT_KEY = getEnv().getStringEnvVariable("TESTINGBOT_KEY", "");
     private static final String TESTINGBOT_SECRET = getEnv().getStringEnvVariable("TESTINGBOT_SECRET", "");
+    private static final String TESTINGBOT_USER_URL = "https://%s:%s@api.testingbot.com/v1/user";
+    @VisibleForTesting
+    static final String ZALENIUM_TESTINGBOT_PARALLEL_SESSIONS = "ZALENIUM_TESTINGBOT_PARALLEL_SESSIONS";
+    @VisibleForTesting
+    static final String ZALENIUM_TESTINGBOT_COST_WEIGHT = "ZALENIUM_TESTINGBOT_COST_WEIGHT";
 
     public TestingBotRemoteProxy(RegistrationRequest request, Registry registry) {
         super(updateTBCapabilities(request, String.format(TESTINGBOT_CAPABILITIES_URL, TESTINGBOT_KEY,
@@ -33,6 +38,10 @@ public class TestingBotRemoteProxy extends CloudTestingRemoteProxy {
     @VisibleForTesting
     private static RegistrationRequest updateTBCapabilities(RegistrationRequest registrationRequest, String url) {
         JsonElement tbCapabilities = getCommonProxyUtilities().readJSONFromUrl(url);
+        String userUrl = TESTINGBOT_KEY.isEmpty() ? null :
+                String.format(TESTINGBOT_USER_URL, TESTINGBOT_KEY, TESTINGBOT_SECRET);
+        int maxParallelSessions = getMaxParallelSessions("[TB]", ZALENIUM_TESTINGBOT_PARALLEL_SESSIONS, userUrl,
+                user -> user.getAsJsonObject().get("max_concurrent").getAsInt());
         try {
             registrationRequest.getCapabilities().clear();
             String userPasswordSuppress = String.format("%s:%s@", TESTINGBOT_KEY, TESTINGBOT_SECRET);
@@ -43,19 +52,19 @@ public class TestingBotRemoteProxy extends CloudTestingRemoteProxy {
                 tbCapabilities = getCommonProxyUtilities().readJSONFromFile(TESTINGBOT_CAPABILITIES_BK_FILE);
             }
             logger.log(Level.INFO, logMessage);
-            return addCapabilitiesToRegistrationRequest(registrationRequest, tbCapabilities);
+            addCapabilitiesToRegistrationRequest(registrationRequest, tbCapabilities);
         } catch (Exception e) {
             logger.log(Level.SEVERE, e.toString(), e);
             getGa().trackException(e);
         }
-        return registrationRequest;
+        return setMaxParallelSessions(registrationRequest, maxParallelSessions);
     }
 
-    private static RegistrationRequest addCapabilitiesToRegistrationRequest(RegistrationRequest registrationRequest, JsonElement tbCapabilities) {
+    private static RegistrationRequest addCapabilitiesToRegistrationRequest(RegistrationRequest registrationRequest,
+                                                                            JsonElement tbCapabilities) {
         for (JsonElement cap : tbCapabilities.getAsJsonArray()) {
             JsonObject capAsJsonObject = cap.getAsJsonObject();
             DesiredCapabilities desiredCapabilities = new DesiredCapabilities();
-            desiredCapabilities.setCapability(RegistrationRequest.MAX_INSTANCES, 5);
             desiredCapabilities.setBrowserName(capAsJsonObject.get("name").getAsString());
             desiredCapabilities.setPlatform(getPlatform(capAsJsonObject.get("platform").getAsString()));
             if (!registrationRequest.getCapabilities().contains(desiredCapabilities)) {
@@ -103,4 +112,9 @@ public class TestingBotRemoteProxy extends CloudTestingRemoteProxy {
         return TESTINGBOT_URL;
     }
 
+    @Override
+    int getCostWeight() {
+        return getEnv().getIntEnvVariable(ZALENIUM_TESTINGBOT_COST_WEIGHT, DEFAULT_COST_WEIGHT);
+    }
+
 }
@@ -1,6 +1,7 @@
 package de.zalando.tip.zalenium.servlet;
 
 import com.google.gson.JsonObject;
+import de.zalando.tip.zalenium.proxy.DockerSeleniumRemoteProxy;
 import org.openqa.grid.common.exception.GridException;
 import org.openqa.grid.internal.RemoteProxy;
 import org.openqa.grid.internal.TestSession;
@@ -42,6 +43,12 @@ public class LiveNodeHtmlRenderer implements HtmlRenderer {
         builder.append(proxy.getId());
         builder.append(", OS : ").append(platform).append("</p>");
 
+        if (proxy instanceof DockerSeleniumRemoteProxy) {
+            builder.append("<p class='resources'>resources : ");
+            builder.append(((DockerSeleniumRemoteProxy) proxy).getResourceProfile());
+            builder.append("</p>");
+        }
+
         builder.append(nodeTabs());
 
         builder.append("<div class='content'>");
@@ -0,0 +1,89 @@
+package de.zalando.tip.zalenium.servlet;
+
+/*
+    Puts the grid in drain mode before a deploy. POST starts draining (POST ?enabled=false stops it), GET shows the
+    progress as JSON: the sessions still running on docker-selenium and cloud nodes, the requests left in the queue
+    and whether the hub can be restarted without breaking any test.
+ */
+
+import com.google.gson.JsonObject;
+import de.zalando.tip.zalenium.proxy.CloudTestingRemoteProxy;
+import de.zalando.tip.zalenium.proxy.DockerSeleniumRemoteProxy;
+import de.zalando.tip.zalenium.util.DrainMode;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.RegistryBasedServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Instant;
+
+// We use this class name to be able to go to the resource like this: http://localhost:4444/grid/admin/drain
+public class drain extends RegistryBasedServlet {
+
+    @SuppressWarnings("unused")
+    public drain() {
+        this(null);
+    }
+
+    public drain(Registry registry) {
+        super(registry);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        sendStatus(response);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if ("false".equalsIgnoreCase(request.getParameter("enabled"))) {
+            DrainMode.stop();
+        } else {
+            DrainMode.start();
+        }
+        sendStatus(response);
+    }
+
+    private void sendStatus(HttpServletResponse response) throws IOException {
+        int dockerSessions = 0;
+        int cloudSessions = 0;
+        int otherSessions = 0;
+        for (TestSession session : getRegistry().getActiveSessions()) {
+            RemoteProxy proxy = session.getSlot().getProxy();
+            if (proxy instanceof DockerSeleniumRemoteProxy) {
+                dockerSessions++;
+            } else if (proxy instanceof CloudTestingRemoteProxy) {
+                cloudSessions++;
+            } else {
+                otherSessions++;
+            }
+        }
+        int queuedRequests = getRegistry().getNewSessionRequestCount();
+
+        JsonObject activeSessions = new JsonObject();
+        activeSessions.addProperty("docker", dockerSessions);
+        activeSessions.addProperty("cloud", cloudSessions);
+        activeSessions.addProperty("other", otherSessions);
+        JsonObject status = new JsonObject();
+        boolean draining = DrainMode.isDraining();
+        status.addProperty("draining", draining);
+        if (draining) {
+            status.addProperty("since", Instant.ofEpochMilli(DrainMode.getStartedAtMillis()).toString());
+            status.addProperty("retryAfterSeconds", DrainMode.getRetryAfterSeconds());
+        }
+        status.add("activeSessions", activeSessions);
+        status.addProperty("queuedRequests", queuedRequests);
+        status.addProperty("drained", draining && dockerSessions + cloudSessions + otherSessions == 0 &&
+                queuedRequests == 0);
+
+        response.setStatus(200);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().println(status.toString());
+        response.getWriter().flush();
+    }
+
+}
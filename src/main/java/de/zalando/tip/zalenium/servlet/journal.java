@@ -0,0 +1,61 @@
+package de.zalando.tip.zalenium.servlet;
+
+/*
+    Shows the last entries of the lifecycle journal as plain text, one entry per line, oldest first.
+    Parameters: limit (default 200) and subject, to show only the entries of one node or provider.
+ */
+
+import de.zalando.tip.zalenium.util.LifecycleJournal;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// We use this class name to be able to go to the resource like this: http://localhost:4444/grid/admin/journal
+public class journal extends HttpServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(journal.class.getName());
+    private static final int DEFAULT_LIMIT = 200;
+
+    private final transient LifecycleJournal lifecycleJournal;
+
+    @SuppressWarnings("unused")
+    public journal() {
+        this(LifecycleJournal.getDefault());
+    }
+
+    public journal(LifecycleJournal lifecycleJournal) {
+        super();
+        this.lifecycleJournal = lifecycleJournal;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        int limit = DEFAULT_LIMIT;
+        try {
+            limit = Integer.parseInt(request.getParameter("limit"));
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.FINE, e.toString(), e);
+        }
+
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        if (lifecycleJournal == null) {
+            response.setStatus(404);
+            response.getWriter().println("The lifecycle journal is disabled.");
+            return;
+        }
+        response.setStatus(200);
+        PrintWriter writer = response.getWriter();
+        writer.println("# " + lifecycleJournal.getFile());
+        for (LifecycleJournal.Entry entry : lifecycleJournal.read(limit, request.getParameter("subject"))) {
+            writer.println(entry);
+        }
+        writer.flush();
+    }
+
+}
@@ -8,6 +8,7 @@ package de.zalando.tip.zalenium.servlet;
 
 import com.google.common.io.ByteStreams;
 import de.zalando.tip.zalenium.proxy.DockerSeleniumRemoteProxy;
+import de.zalando.tip.zalenium.util.FlightRecorderEvents;
 import org.openqa.grid.internal.Registry;
 import org.openqa.grid.internal.RemoteProxy;
 import org.openqa.grid.internal.utils.HtmlRenderer;
@@ -61,6 +62,7 @@ public class live extends RegistryBasedServlet {
     protected void process(HttpServletRequest request, HttpServletResponse response)
             throws IOException {
 
+        FlightRecorderEvents.Timing renderTiming = FlightRecorderEvents.livePageRender();
         int refresh = -1;
 
         try {
@@ -125,10 +127,14 @@ public class live extends RegistryBasedServlet {
         builder.append("</body>");
         builder.append("</html>");
 
-        try (InputStream in = new ByteArrayInputStream(builder.toString().getBytes("UTF-8"))) {
+        byte[] page = builder.toString().getBytes("UTF-8");
+        boolean rendered = false;
+        try (InputStream in = new ByteArrayInputStream(page)) {
             ByteStreams.copy(in, response.getOutputStream());
+            rendered = true;
         } finally {
             response.getOutputStream().close();
+            renderTiming.setCount(nodes.size()).setBytes(page.length).end(rendered);
         }
     }
 
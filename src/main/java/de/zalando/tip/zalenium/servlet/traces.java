@@ -0,0 +1,113 @@
+package de.zalando.tip.zalenium.servlet;
+
+/*
+    Lists the last session traces, and with the id parameter shows the spans of one trace as a waterfall.
+ */
+
+import de.zalando.tip.zalenium.util.SessionTrace;
+import de.zalando.tip.zalenium.util.SessionTracing;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// We use this class name to be able to go to the resource like this: http://localhost:4444/grid/admin/traces
+public class traces extends HttpServlet {
+
+    private final transient SessionTracing sessionTracing;
+
+    @SuppressWarnings("unused")
+    public traces() {
+        this(null);
+    }
+
+    public traces(SessionTracing sessionTracing) {
+        super();
+        this.sessionTracing = sessionTracing;
+    }
+
+    private SessionTracing getSessionTracing() {
+        return sessionTracing == null ? SessionTracing.get() : sessionTracing;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("text/html");
+        response.setCharacterEncoding("UTF-8");
+        String traceId = request.getParameter("id");
+        StringBuilder html = new StringBuilder("<html><head><title>Zalenium session traces</title></head><body>");
+        if (traceId == null || traceId.isEmpty()) {
+            renderTraceList(html);
+        } else {
+            SessionTrace trace = getSessionTracing().getTrace(traceId);
+            if (trace == null) {
+                response.setStatus(404);
+                response.getWriter().print("Trace " + escape(traceId) + " not found.");
+                return;
+            }
+            renderWaterfall(html, trace);
+        }
+        html.append("</body></html>");
+        response.setStatus(200);
+        PrintWriter writer = response.getWriter();
+        writer.print(html);
+        writer.flush();
+    }
+
+    private void renderTraceList(StringBuilder html) {
+        html.append("<h2>Session traces</h2><table><tr><th>Trace</th><th>Node</th><th>Duration (ms)</th>")
+                .append("<th>Spans</th></tr>");
+        for (SessionTrace trace : getSessionTracing().getRecentTraces()) {
+            SessionTrace.Span root = trace.getRootSpan();
+            String node = root.getAttributes().get("node");
+            html.append("<tr><td><a href=\"?id=").append(trace.getTraceId()).append("\">")
+                    .append(trace.getTraceId()).append("</a></td><td>").append(escape(node == null ? "-" : node))
+                    .append("</td><td>").append(toMillis(root.getEndEpochNanos() - root.getStartEpochNanos()))
+                    .append(trace.isFinished() ? "" : " (running)").append("</td><td>")
+                    .append(trace.getSpans().size()).append("</td></tr>");
+        }
+        html.append("</table>");
+    }
+
+    private void renderWaterfall(StringBuilder html, SessionTrace trace) {
+        SessionTrace.Span root = trace.getRootSpan();
+        long start = root.getStartEpochNanos();
+        long duration = Math.max(1, root.getEndEpochNanos() - start);
+        List<SessionTrace.Span> spans = new ArrayList<>();
+        spans.add(root);
+        spans.addAll(trace.getSpans());
+        html.append("<h2>Trace ").append(trace.getTraceId()).append("</h2>")
+                .append("<table style=\"width:100%\"><tr><th>Span</th><th>Start (ms)</th><th>Duration (ms)</th>")
+                .append("<th style=\"width:60%\"></th></tr>");
+        for (SessionTrace.Span span : spans) {
+            long offset = span.getStartEpochNanos() - start;
+            long spanDuration = span.getEndEpochNanos() - span.getStartEpochNanos();
+            double left = offset * 100.0 / duration;
+            double width = Math.max(0.2, spanDuration * 100.0 / duration);
+            html.append("<tr title=\"").append(escape(span.getAttributes().toString())).append("\"><td>")
+                    .append(escape(span.getName())).append("</td><td>").append(toMillis(offset))
+                    .append("</td><td>").append(toMillis(spanDuration)).append("</td><td>")
+                    .append(String.format("<div style=\"margin-left:%.2f%%;width:%.2f%%;height:12px;", left,
+                            Math.min(width, 100 - left)))
+                    .append("background:#4a90d9\"></div></td></tr>");
+        }
+        html.append("</table>");
+        if (trace.getDroppedSpans() > 0) {
+            html.append("<p>").append(trace.getDroppedSpans()).append(" command spans were not recorded.</p>");
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+}
@@ -0,0 +1,65 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+    Grid wide drain switch, set through the drain servlet before the hub is redeployed. While draining no new
+    containers are launched, the docker-selenium and cloud nodes only finish the sessions they already have, and new
+    session requests are rejected with a Retry-After of ZALENIUM_DRAIN_RETRY_AFTER seconds (60 by default).
+ */
+public final class DrainMode {
+
+    private static final Logger LOGGER = Logger.getLogger(DrainMode.class.getName());
+
+    public static final String ZALENIUM_DRAIN_RETRY_AFTER = "ZALENIUM_DRAIN_RETRY_AFTER";
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 60;
+
+    private static final Environment defaultEnvironment = new Environment();
+    private static Environment env = defaultEnvironment;
+    // 0 while the grid is not draining
+    private static volatile long startedAtMillis;
+
+    private DrainMode() {
+    }
+
+    public static synchronized void start() {
+        if (startedAtMillis == 0) {
+            startedAtMillis = System.currentTimeMillis();
+            LOGGER.log(Level.INFO, "Draining the grid, new session requests will be rejected.");
+        }
+    }
+
+    public static synchronized void stop() {
+        if (startedAtMillis != 0) {
+            startedAtMillis = 0;
+            LOGGER.log(Level.INFO, "The grid is not draining anymore.");
+        }
+    }
+
+    public static boolean isDraining() {
+        return startedAtMillis != 0;
+    }
+
+    public static long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    public static int getRetryAfterSeconds() {
+        return Math.max(1, env.getIntEnvVariable(ZALENIUM_DRAIN_RETRY_AFTER, DEFAULT_RETRY_AFTER_SECONDS));
+    }
+
+    @VisibleForTesting
+    public static void setEnv(Environment env) {
+        DrainMode.env = env;
+    }
+
+    @VisibleForTesting
+    public static void restoreEnvironment() {
+        env = defaultEnvironment;
+        stop();
+    }
+
+}
@@ -0,0 +1,224 @@
+package de.zalando.tip.zalenium.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.Map;
+
+/*
+    The JFR event types, only loaded through FlightRecorderEvents once it checked that the JVM has JFR.
+    Events that are not enabled in the running recording (or when nothing is recorded) are not populated.
+    Needs jdk.jfr to compile, so it is only built with the jfr-events profile.
+ */
+final class FlightRecorderEventTypes implements FlightRecorderEvents.EventFactory {
+
+    private static final String CATEGORY = "Zalenium";
+
+    FlightRecorderEventTypes() {
+    }
+
+    @Override
+    public FlightRecorderEvents.Timing containerLaunch(String browser, String containerName) {
+        ContainerLaunchEvent event = new ContainerLaunchEvent();
+        if (!event.isEnabled()) {
+            return FlightRecorderEvents.Timing.NONE;
+        }
+        event.browser = browser;
+        event.containerName = containerName;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public FlightRecorderEvents.Timing dockerApiCall(String operation, String containerId) {
+        DockerApiCallEvent event = new DockerApiCallEvent();
+        if (!event.isEnabled()) {
+            return FlightRecorderEvents.Timing.NONE;
+        }
+        event.operation = operation;
+        event.containerId = containerId;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public FlightRecorderEvents.Timing capabilityMatch(Map<String, Object> requestedCapability) {
+        CapabilityMatchEvent event = new CapabilityMatchEvent();
+        if (!event.isEnabled()) {
+            return FlightRecorderEvents.Timing.NONE;
+        }
+        event.requestedCapabilities = String.valueOf(requestedCapability);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public FlightRecorderEvents.Timing livePageRender() {
+        LivePageRenderEvent event = new LivePageRenderEvent();
+        if (!event.isEnabled()) {
+            return FlightRecorderEvents.Timing.NONE;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public FlightRecorderEvents.Timing videoCopy(String containerId) {
+        VideoCopyEvent event = new VideoCopyEvent();
+        if (!event.isEnabled()) {
+            return FlightRecorderEvents.Timing.NONE;
+        }
+        event.containerId = containerId;
+        event.begin();
+        return event;
+    }
+
+    @Name("de.zalando.tip.zalenium.ContainerLaunch")
+    @Label("Container Launch")
+    @Description("Creation and start of a docker-selenium container")
+    @Category(CATEGORY)
+    static class ContainerLaunchEvent extends Event implements FlightRecorderEvents.Timing {
+        @Label("Browser")
+        String browser;
+        @Label("Container Name")
+        String containerName;
+        @Label("Container Id")
+        String containerId;
+        @Label("Success")
+        boolean success;
+
+        @Override
+        public FlightRecorderEvents.Timing setContainerId(String containerId) {
+            this.containerId = containerId;
+            return this;
+        }
+
+        @Override
+        public void end(boolean success) {
+            this.success = success;
+            commit();
+        }
+    }
+
+    @Name("de.zalando.tip.zalenium.DockerApiCall")
+    @Label("Docker API Call")
+    @Category(CATEGORY)
+    static class DockerApiCallEvent extends Event implements FlightRecorderEvents.Timing {
+        @Label("Operation")
+        String operation;
+        @Label("Container Id")
+        String containerId;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Success")
+        boolean success;
+
+        @Override
+        public FlightRecorderEvents.Timing setContainerId(String containerId) {
+            this.containerId = containerId;
+            return this;
+        }
+
+        @Override
+        public FlightRecorderEvents.Timing setBytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        @Override
+        public void end(boolean success) {
+            this.success = success;
+            commit();
+        }
+    }
+
+    @Name("de.zalando.tip.zalenium.CapabilityMatch")
+    @Label("Capability Match")
+    @Description("Check done by ZaleniumCapabilityMatcher before a request is sent to a cloud testing provider")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class CapabilityMatchEvent extends Event implements FlightRecorderEvents.Timing {
+        @Label("Requested Capabilities")
+        String requestedCapabilities;
+        @Label("Matched")
+        boolean matched;
+
+        @Override
+        public void end(boolean matched) {
+            this.matched = matched;
+            commit();
+        }
+    }
+
+    @Name("de.zalando.tip.zalenium.LivePageRender")
+    @Label("Live Page Render")
+    @Category(CATEGORY)
+    static class LivePageRenderEvent extends Event implements FlightRecorderEvents.Timing {
+        @Label("Nodes")
+        int nodes;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Success")
+        boolean success;
+
+        @Override
+        public FlightRecorderEvents.Timing setCount(int count) {
+            this.nodes = count;
+            return this;
+        }
+
+        @Override
+        public FlightRecorderEvents.Timing setBytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        @Override
+        public void end(boolean success) {
+            this.success = success;
+            commit();
+        }
+    }
+
+    @Name("de.zalando.tip.zalenium.VideoCopy")
+    @Label("Video Copy")
+    @Description("Copy of the recorded videos from a docker-selenium container")
+    @Category(CATEGORY)
+    static class VideoCopyEvent extends Event implements FlightRecorderEvents.Timing {
+        @Label("Container Id")
+        String containerId;
+        @Label("Files")
+        int files;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Success")
+        boolean success;
+
+        @Override
+        public FlightRecorderEvents.Timing setCount(int count) {
+            this.files = count;
+            return this;
+        }
+
+        @Override
+        public FlightRecorderEvents.Timing setBytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        @Override
+        public void end(boolean success) {
+            this.success = success;
+            commit();
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Custom Java Flight Recorder events for the hot paths of the hub (container launch, Docker API calls, capability
+ * matching, live page rendering and video copy), so a recording shows what the grid was doing and not only the
+ * generic Jetty and Selenium frames. Events cost close to nothing when no recording is running.
+ *
+ * The JFR classes are only touched when they are present in the running JVM (Java 8u262+) and Zalenium was built
+ * with them (the jfr-events profile, active on JDK 11+). Otherwise, or when ZALENIUM_JFR_EVENTS_ENABLED is false,
+ * every method returns {@link Timing#NONE}.
+ */
+public final class FlightRecorderEvents {
+
+    private static final Logger logger = Logger.getLogger(FlightRecorderEvents.class.getName());
+
+    public static final String ZALENIUM_JFR_EVENTS_ENABLED = "ZALENIUM_JFR_EVENTS_ENABLED";
+
+    // The JFR event types are only compiled with the jfr-events Maven profile, see the pom.
+    private static final String EVENT_TYPES_CLASS = "de.zalando.tip.zalenium.util.FlightRecorderEventTypes";
+
+    private static final EventFactory eventFactory = loadEventFactory();
+    private static boolean enabled = eventFactory != null &&
+            new Environment().getBooleanEnvVariable(ZALENIUM_JFR_EVENTS_ENABLED, true);
+
+    private FlightRecorderEvents() {
+    }
+
+    private static EventFactory loadEventFactory() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            logger.log(Level.FINE, "Java Flight Recorder events are not available in this JVM.");
+            return null;
+        }
+        try {
+            return (EventFactory) Class.forName(EVENT_TYPES_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.log(Level.FINE, "Zalenium was built without its Java Flight Recorder events.");
+            return null;
+        }
+    }
+
+    @VisibleForTesting
+    static void setEnabled(boolean flightRecorderEventsEnabled) {
+        enabled = flightRecorderEventsEnabled && eventFactory != null;
+    }
+
+    public static Timing containerLaunch(String browser, String containerName) {
+        return enabled ? eventFactory.containerLaunch(browser, containerName) : Timing.NONE;
+    }
+
+    /*
+        Operation is the DockerClient method, e.g. listContainers, execCreate, archiveContainer, stopContainer.
+     */
+    public static Timing dockerApiCall(String operation, String containerId) {
+        return enabled ? eventFactory.dockerApiCall(operation, containerId) : Timing.NONE;
+    }
+
+    public static Timing capabilityMatch(Map<String, Object> requestedCapability) {
+        return enabled ? eventFactory.capabilityMatch(requestedCapability) : Timing.NONE;
+    }
+
+    public static Timing livePageRender() {
+        return enabled ? eventFactory.livePageRender() : Timing.NONE;
+    }
+
+    public static Timing videoCopy(String containerId) {
+        return enabled ? eventFactory.videoCopy(containerId) : Timing.NONE;
+    }
+
+    /*
+        Implemented by the JFR event types, which are loaded by name so this class compiles without jdk.jfr.
+     */
+    interface EventFactory {
+
+        Timing containerLaunch(String browser, String containerName);
+
+        Timing dockerApiCall(String operation, String containerId);
+
+        Timing capabilityMatch(Map<String, Object> requestedCapability);
+
+        Timing livePageRender();
+
+        Timing videoCopy(String containerId);
+    }
+
+    /**
+     * An event that has begun. Values that the event type does not have are ignored, and end commits the event
+     * (its duration is the time since it was created).
+     */
+    public interface Timing {
+
+        Timing NONE = new Timing() {
+        };
+
+        default Timing setContainerId(String containerId) {
+            return this;
+        }
+
+        default Timing setBytes(long bytes) {
+            return this;
+        }
+
+        default Timing setCount(int count) {
+            return this;
+        }
+
+        default void end(boolean success) {
+        }
+    }
+
+}
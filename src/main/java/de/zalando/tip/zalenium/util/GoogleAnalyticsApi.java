@@ -2,31 +2,32 @@ package de.zalando.tip.zalenium.util;
 
 
 import com.google.common.annotations.VisibleForTesting;
-import org.apache.http.HttpEntity;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 /**
  * Small class to create hits in Google Analytics
  * We want to track when a test starts and finishes, also information about errors (Exceptions)
+ * The same events are recorded in the local {@link TelemetrySink}, if one is configured.
  */
 public class GoogleAnalyticsApi {
 
-    private final Logger logger = Logger.getLogger(GoogleAnalyticsApi.class.getName());
-
     private HttpClient httpClient;
 
     private static final String GA_TRACKING_ID = "GA_TRACKING_ID";
     private static final String GA_API_VERSION = "GA_API_VERSION";
     private static final String GA_ANONYMOUS_CLIENT_ID = "GA_ANONYMOUS_CLIENT_ID";
 
+    private static final GoogleAnalyticsDispatcher defaultDispatcher =
+            new GoogleAnalyticsDispatcher(GoogleAnalyticsDispatcher.DEFAULT_QUEUE_CAPACITY, true);
+
     private final Environment defaultEnvironment = new Environment();
     private Environment env = defaultEnvironment;
+    private GoogleAnalyticsDispatcher dispatcher = defaultDispatcher;
+    private static final TelemetrySink defaultTelemetrySink = JsonLinesTelemetrySink.fromEnvironment(new Environment());
+    private TelemetrySink telemetrySink = defaultTelemetrySink;
+    // The env variables are read once, when the first hit is sent.
+    private volatile Configuration configuration;
 
     public GoogleAnalyticsApi() {
         this.httpClient = HttpClientBuilder.create().build();
@@ -40,42 +41,66 @@ public class GoogleAnalyticsApi {
     @VisibleForTesting
     public void setEnv(final Environment env) {
         this.env = env;
+        this.configuration = null;
+    }
+
+    @VisibleForTesting
+    void setDispatcher(GoogleAnalyticsDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
     }
 
-    public void testEvent(String nodeHandler, String capabilities, long seconds) {
+    @VisibleForTesting
+    public void setTelemetrySink(TelemetrySink telemetrySink) {
+        this.telemetrySink = telemetrySink;
+    }
+
+    public void testEvent(String nodeHandler, String capabilities, long seconds, String outcome) {
         String payload = String.format("v=%s&tid=%s&cid=%s&t=event&ec=%s&ea=%s&el=%s&ev=%s", GA_API_VERSION,
                 GA_TRACKING_ID, GA_ANONYMOUS_CLIENT_ID, "test", nodeHandler, capabilities, seconds);
+        telemetrySink.record(TelemetryEvent.session(nodeHandler, capabilities, seconds, outcome));
         doPost(payload);
     }
 
     public void trackException(Exception e) {
         String payload = String.format("v=%s&tid=%s&cid=%s&t=exception&exd=%s&exf=%s", GA_API_VERSION, GA_TRACKING_ID,
                 GA_ANONYMOUS_CLIENT_ID, e.getMessage(), "0");
+        telemetrySink.record(TelemetryEvent.exception(e));
         doPost(payload);
     }
 
     private void doPost(String payload) {
-        new Thread(() -> {
-            try {
-                if (!env.getBooleanEnvVariable("ZALENIUM_SEND_ANONYMOUS_USAGE_INFO", false)) {
-                    return;
-                }
-                String gaApiVersion = env.getStringEnvVariable("ZALENIUM_GA_API_VERSION", "");
-                String gaTrackingId = env.getStringEnvVariable("ZALENIUM_GA_TRACKING_ID", "");
-                String gaEndpoint = env.getStringEnvVariable("ZALENIUM_GA_ENDPOINT", "");
-                String gaAnonymousClientId = env.getStringEnvVariable("ZALENIUM_GA_ANONYMOUS_CLIENT_ID", "");
-                String finalPayload = payload.replace(GA_TRACKING_ID, gaTrackingId).replace(GA_API_VERSION, gaApiVersion)
-                        .replace(GA_ANONYMOUS_CLIENT_ID, gaAnonymousClientId);
-                HttpPost httpPost = new HttpPost(gaEndpoint);
-                HttpEntity httpEntity = new ByteArrayEntity(finalPayload.getBytes("UTF-8"));
-                httpPost.setEntity(httpEntity);
-                httpClient.execute(httpPost);
-            } catch (Exception e) {
-                logger.log(Level.FINE, e.getMessage(), e);
-            }
-        }).start();
+        Configuration config = getConfiguration();
+        if (!config.enabled) {
+            return;
+        }
+        String finalPayload = payload.replace(GA_TRACKING_ID, config.trackingId)
+                .replace(GA_API_VERSION, config.apiVersion).replace(GA_ANONYMOUS_CLIENT_ID, config.anonymousClientId);
+        dispatcher.dispatch(httpClient, config.endpoint, finalPayload);
     }
 
+    private Configuration getConfiguration() {
+        Configuration config = configuration;
+        if (config == null) {
+            config = new Configuration(env);
+            configuration = config;
+        }
+        return config;
+    }
 
+    private static final class Configuration {
+        private final boolean enabled;
+        private final String apiVersion;
+        private final String trackingId;
+        private final String endpoint;
+        private final String anonymousClientId;
+
+        private Configuration(Environment env) {
+            enabled = env.getBooleanEnvVariable("ZALENIUM_SEND_ANONYMOUS_USAGE_INFO", false);
+            apiVersion = env.getStringEnvVariable("ZALENIUM_GA_API_VERSION", "");
+            trackingId = env.getStringEnvVariable("ZALENIUM_GA_TRACKING_ID", "");
+            endpoint = env.getStringEnvVariable("ZALENIUM_GA_ENDPOINT", "");
+            anonymousClientId = env.getStringEnvVariable("ZALENIUM_GA_ANONYMOUS_CLIENT_ID", "");
+        }
+    }
 
 }
@@ -0,0 +1,164 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the Google Analytics hits from a bounded queue with a single background thread. The hits that are queued
+ * at the same time are sent together using the batch endpoint (up to 20 per request, the limit of the API). When
+ * the queue is full the hit is dropped and counted, so the cost of tracking stays the same no matter how many
+ * events (e.g. exceptions) are generated.
+ */
+class GoogleAnalyticsDispatcher {
+
+    private static final Logger logger = Logger.getLogger(GoogleAnalyticsDispatcher.class.getName());
+
+    static final int DEFAULT_QUEUE_CAPACITY = 500;
+    static final int MAX_HITS_PER_BATCH = 20;
+    private static final String COLLECT_PATH = "/collect";
+    private static final String BATCH_PATH = "/batch";
+
+    private final BlockingQueue<Hit> queue;
+    private final boolean background;
+    private final AtomicLong droppedHits = new AtomicLong();
+    private final AtomicLong sentRequests = new AtomicLong();
+    private Thread sender;
+
+    GoogleAnalyticsDispatcher(int queueCapacity, boolean background) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.background = background;
+    }
+
+    boolean dispatch(HttpClient httpClient, String endpoint, String payload) {
+        if (!queue.offer(new Hit(httpClient, endpoint, payload))) {
+            long dropped = droppedHits.incrementAndGet();
+            logger.log(Level.FINE, "Google Analytics queue is full, {0} hits dropped so far.", dropped);
+            return false;
+        }
+        if (background) {
+            startSender();
+        }
+        return true;
+    }
+
+    private synchronized void startSender() {
+        if (sender != null) {
+            return;
+        }
+        sender = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    List<Hit> hits = new ArrayList<>();
+                    hits.add(queue.take());
+                    queue.drainTo(hits, MAX_HITS_PER_BATCH - 1);
+                    send(hits);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "GoogleAnalyticsDispatcher");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /*
+        Sends what is queued right now, used when there is no background thread.
+     */
+    @VisibleForTesting
+    void sendQueuedHits() {
+        List<Hit> hits = new ArrayList<>();
+        while (queue.drainTo(hits, MAX_HITS_PER_BATCH) > 0) {
+            send(hits);
+            hits.clear();
+        }
+    }
+
+    private void send(List<Hit> hits) {
+        List<Hit> batch = new ArrayList<>();
+        for (Hit hit : hits) {
+            if (!batch.isEmpty() && !batch.get(0).canBeBatchedWith(hit)) {
+                post(batch);
+                batch.clear();
+            }
+            batch.add(hit);
+        }
+        if (!batch.isEmpty()) {
+            post(batch);
+        }
+    }
+
+    private void post(List<Hit> batch) {
+        Hit first = batch.get(0);
+        try {
+            String endpoint = first.endpoint;
+            String body = first.payload;
+            if (batch.size() > 1) {
+                endpoint = first.getBatchEndpoint();
+                StringBuilder payloads = new StringBuilder();
+                for (Hit hit : batch) {
+                    // Hits are separated by new lines in the batch endpoint.
+                    payloads.append(hit.payload.replace('\n', ' ').replace('\r', ' ')).append('\n');
+                }
+                body = payloads.toString();
+            }
+            HttpPost httpPost = new HttpPost(endpoint);
+            httpPost.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
+            HttpResponse response = first.httpClient.execute(httpPost);
+            sentRequests.incrementAndGet();
+            if (response != null) {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        } catch (Exception e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
+    long getDroppedHits() {
+        return droppedHits.get();
+    }
+
+    long getSentRequests() {
+        return sentRequests.get();
+    }
+
+    int getQueuedHits() {
+        return queue.size();
+    }
+
+    private static final class Hit {
+        private final HttpClient httpClient;
+        private final String endpoint;
+        private final String payload;
+
+        private Hit(HttpClient httpClient, String endpoint, String payload) {
+            this.httpClient = httpClient;
+            this.endpoint = endpoint;
+            this.payload = payload;
+        }
+
+        private boolean canBeBatchedWith(Hit hit) {
+            return httpClient == hit.httpClient && endpoint.equals(hit.endpoint) && getBatchEndpoint() != null;
+        }
+
+        private String getBatchEndpoint() {
+            if (endpoint.endsWith(COLLECT_PATH)) {
+                return endpoint.substring(0, endpoint.length() - COLLECT_PATH.length()) + BATCH_PATH;
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the telemetry events to a local file, one JSON object per line, so the grid usage can be analysed without
+ * sending anything outside. Events are kept in a ring buffer (when it is full the oldest event is overwritten) and
+ * a background thread appends them in batches, once per second. The file is rotated when it reaches the configured
+ * size, keeping file.1 ... file.N-1 as the older ones.
+ */
+public class JsonLinesTelemetrySink implements TelemetrySink {
+
+    private static final Logger logger = Logger.getLogger(JsonLinesTelemetrySink.class.getName());
+
+    public static final String ZALENIUM_TELEMETRY_FILE = "ZALENIUM_TELEMETRY_FILE";
+    public static final String ZALENIUM_TELEMETRY_BUFFER_SIZE = "ZALENIUM_TELEMETRY_BUFFER_SIZE";
+    public static final String ZALENIUM_TELEMETRY_MAX_FILE_SIZE_MB = "ZALENIUM_TELEMETRY_MAX_FILE_SIZE_MB";
+    public static final String ZALENIUM_TELEMETRY_MAX_FILES = "ZALENIUM_TELEMETRY_MAX_FILES";
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+    private static final int DEFAULT_MAX_FILE_SIZE_MB = 10;
+    private static final int DEFAULT_MAX_FILES = 5;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    private final Gson gson = new Gson();
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final Object lock = new Object();
+    private final TelemetryEvent[] ringBuffer;
+    private int head;
+    private int size;
+    private long overwrittenEvents;
+    private volatile boolean running;
+    private Thread writer;
+
+    @VisibleForTesting
+    JsonLinesTelemetrySink(Path file, int bufferSize, long maxFileBytes, int maxFiles, boolean background) {
+        this.file = file;
+        this.ringBuffer = new TelemetryEvent[bufferSize];
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        if (background) {
+            running = true;
+            writer = new Thread(this::writeLoop, "JsonLinesTelemetrySink");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /*
+        Local telemetry is only enabled when ZALENIUM_TELEMETRY_FILE is set.
+     */
+    public static TelemetrySink fromEnvironment(Environment env) {
+        String fileName = env.getStringEnvVariable(ZALENIUM_TELEMETRY_FILE, "");
+        if (fileName.trim().isEmpty()) {
+            return TelemetrySink.NO_OP;
+        }
+        int bufferSize = env.getIntEnvVariable(ZALENIUM_TELEMETRY_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+        int maxFileSizeMb = env.getIntEnvVariable(ZALENIUM_TELEMETRY_MAX_FILE_SIZE_MB, DEFAULT_MAX_FILE_SIZE_MB);
+        int maxFiles = env.getIntEnvVariable(ZALENIUM_TELEMETRY_MAX_FILES, DEFAULT_MAX_FILES);
+        JsonLinesTelemetrySink sink = new JsonLinesTelemetrySink(Paths.get(fileName),
+                bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE,
+                (maxFileSizeMb > 0 ? maxFileSizeMb : DEFAULT_MAX_FILE_SIZE_MB) * 1024L * 1024L, maxFiles, true);
+        Runtime.getRuntime().addShutdownHook(new Thread(sink::close));
+        logger.log(Level.INFO, "Telemetry events will be written to {0}", fileName);
+        return sink;
+    }
+
+    @Override
+    public void record(TelemetryEvent event) {
+        synchronized (lock) {
+            int tail = (head + size) % ringBuffer.length;
+            ringBuffer[tail] = event;
+            if (size == ringBuffer.length) {
+                head = (head + 1) % ringBuffer.length;
+                overwrittenEvents++;
+            } else {
+                size++;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (running) {
+            try {
+                // New events do not wake the writer up, they are appended with the next batch.
+                Thread.sleep(FLUSH_INTERVAL_MS);
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /*
+        Appends all the buffered events to the file.
+     */
+    @VisibleForTesting
+    synchronized void flush() {
+        List<TelemetryEvent> batch = new ArrayList<>();
+        synchronized (lock) {
+            while (size > 0) {
+                batch.add(ringBuffer[head]);
+                ringBuffer[head] = null;
+                head = (head + 1) % ringBuffer.length;
+                size--;
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (TelemetryEvent event : batch) {
+            lines.append(gson.toJson(event)).append('\n');
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            if (Files.exists(file) && Files.size(file) > 0 && Files.size(file) + bytes.length > maxFileBytes) {
+                rotate();
+            }
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (Writer fileWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                fileWriter.write(lines.toString());
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Telemetry events could not be written to " + file, e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        Files.deleteIfExists(rotatedFile(maxFiles - 1));
+        for (int i = maxFiles - 2; i >= 1; i--) {
+            if (Files.exists(rotatedFile(i))) {
+                Files.move(rotatedFile(i), rotatedFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 1) {
+            Files.move(file, rotatedFile(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+    }
+
+    private Path rotatedFile(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    long getOverwrittenEvents() {
+        synchronized (lock) {
+            return overwrittenEvents;
+        }
+    }
+
+    public void close() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+        }
+        flush();
+    }
+
+}
@@ -0,0 +1,274 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append only ring journal, backed by a memory mapped file, where the proxies record the lifecycle of the nodes and
+ * sessions (container created, node registered, session started, video stopped, torn down...). The file survives a
+ * crash of the hub, so it can be read afterwards to reconstruct what happened, see {@link #main(String[])}.
+ *
+ * Each record has a fixed size and it is written with absolute puts on the mapped buffer, so appending does not
+ * allocate and can be left enabled in production. Records are committed by writing their sequence number last.
+ */
+public class LifecycleJournal {
+
+    public enum Event {
+        REQUEST_RECEIVED, CONTAINER_CREATED, CONTAINER_STARTED, CONTAINER_FAILED, NODE_REGISTERED, SESSION_STARTED,
+        SESSION_STOPPED, VIDEO_STARTED, VIDEO_STOPPED, NODE_SHUTDOWN, NODE_TORN_DOWN
+    }
+
+    private static final Logger logger = Logger.getLogger(LifecycleJournal.class.getName());
+
+    public static final String ZALENIUM_JOURNAL_ENABLED = "ZALENIUM_JOURNAL_ENABLED";
+    public static final String ZALENIUM_JOURNAL_FILE = "ZALENIUM_JOURNAL_FILE";
+    public static final String ZALENIUM_JOURNAL_CAPACITY = "ZALENIUM_JOURNAL_CAPACITY";
+    private static final int DEFAULT_CAPACITY = 65536;
+
+    private static final int MAGIC = 0x5A4A4E4C; // ZJNL
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 64;
+    static final int SUBJECT_SIZE = 36;
+    // Record layout: sequence (0 means empty), epoch nanos, value, event, subject (ASCII, zero padded).
+    private static final int SEQUENCE_OFFSET = 0;
+    private static final int TIMESTAMP_OFFSET = 8;
+    private static final int VALUE_OFFSET = 16;
+    private static final int EVENT_OFFSET = 24;
+    private static final int SUBJECT_OFFSET = 28;
+    private static final Event[] EVENTS = Event.values();
+
+    private static volatile LifecycleJournal defaultJournal;
+    private static volatile boolean defaultJournalInitialized;
+
+    private final Path file;
+    private final int capacity;
+    private final ByteBuffer buffer;
+    private final AtomicLong nextSequence;
+    private final long epochNanosAtStart;
+    private final long nanoTimeAtStart;
+
+    public LifecycleJournal(Path file, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        MappedByteBuffer mappedBuffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        this.buffer = mappedBuffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_SIZE ||
+                buffer.getInt(12) != capacity) {
+            // New file, or written with another layout.
+            for (int i = 0; i < size; i += 8) {
+                buffer.putLong(i, 0);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(12, capacity);
+        }
+        this.nextSequence = new AtomicLong(findLastSequence() + 1);
+        this.epochNanosAtStart = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        this.nanoTimeAtStart = System.nanoTime();
+    }
+
+    /*
+        Journal shared by all the proxies, null when it is disabled or the file could not be mapped.
+     */
+    public static synchronized LifecycleJournal getDefault() {
+        if (!defaultJournalInitialized) {
+            // The journal is published before the flag, record() reads the flag without holding the lock.
+            defaultJournal = createDefault();
+            defaultJournalInitialized = true;
+        }
+        return defaultJournal;
+    }
+
+    private static LifecycleJournal createDefault() {
+        Environment env = new Environment();
+        if (!env.getBooleanEnvVariable(ZALENIUM_JOURNAL_ENABLED, true)) {
+            return null;
+        }
+        String fileName = env.getStringEnvVariable(ZALENIUM_JOURNAL_FILE,
+                Paths.get(System.getProperty("java.io.tmpdir"), "zalenium-journal.bin").toString());
+        int capacity = env.getIntEnvVariable(ZALENIUM_JOURNAL_CAPACITY, DEFAULT_CAPACITY);
+        try {
+            LifecycleJournal journal = new LifecycleJournal(Paths.get(fileName),
+                    capacity > 0 ? capacity : DEFAULT_CAPACITY);
+            logger.log(Level.INFO, "Lifecycle journal mapped to {0}", fileName);
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Lifecycle journal could not be mapped to " + fileName, e);
+            return null;
+        }
+    }
+
+    @VisibleForTesting
+    static synchronized void setDefault(LifecycleJournal journal) {
+        defaultJournal = journal;
+        defaultJournalInitialized = true;
+    }
+
+    /*
+        Convenience for the callers, does nothing when the journal is disabled.
+     */
+    public static void record(Event event, CharSequence subject, long value) {
+        LifecycleJournal journal = defaultJournalInitialized ? defaultJournal : getDefault();
+        if (journal != null) {
+            journal.append(event, subject, value);
+        }
+    }
+
+    public void append(Event event, CharSequence subject, long value) {
+        long sequence = nextSequence.getAndIncrement();
+        int offset = HEADER_SIZE + (int) ((sequence - 1) % capacity) * RECORD_SIZE;
+        // Marks the record as being written, readers skip it until the sequence is set.
+        buffer.putLong(offset + SEQUENCE_OFFSET, 0);
+        buffer.putLong(offset + TIMESTAMP_OFFSET, epochNanosAtStart + (System.nanoTime() - nanoTimeAtStart));
+        buffer.putLong(offset + VALUE_OFFSET, value);
+        buffer.putInt(offset + EVENT_OFFSET, event.ordinal());
+        int length = subject == null ? 0 : Math.min(subject.length(), SUBJECT_SIZE);
+        for (int i = 0; i < SUBJECT_SIZE; i++) {
+            char c = i < length ? subject.charAt(i) : 0;
+            buffer.put(offset + SUBJECT_OFFSET + i, (byte) (c < 128 ? c : '?'));
+        }
+        buffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+    }
+
+    private long findLastSequence() {
+        long lastSequence = 0;
+        for (int i = 0; i < capacity; i++) {
+            lastSequence = Math.max(lastSequence, buffer.getLong(HEADER_SIZE + i * RECORD_SIZE + SEQUENCE_OFFSET));
+        }
+        return lastSequence;
+    }
+
+    /*
+        The last entries of the journal, oldest first. Optionally only the ones whose subject contains the filter.
+     */
+    public List<Entry> read(int limit, String subjectFilter) {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) {
+            int offset = HEADER_SIZE + i * RECORD_SIZE;
+            long sequence = buffer.getLong(offset + SEQUENCE_OFFSET);
+            if (sequence == 0) {
+                continue;
+            }
+            int eventOrdinal = buffer.getInt(offset + EVENT_OFFSET);
+            byte[] subjectBytes = new byte[SUBJECT_SIZE];
+            int length = 0;
+            while (length < SUBJECT_SIZE && buffer.get(offset + SUBJECT_OFFSET + length) != 0) {
+                subjectBytes[length] = buffer.get(offset + SUBJECT_OFFSET + length);
+                length++;
+            }
+            Entry entry = new Entry(sequence, buffer.getLong(offset + TIMESTAMP_OFFSET),
+                    eventOrdinal >= 0 && eventOrdinal < EVENTS.length ? EVENTS[eventOrdinal] : null,
+                    new String(subjectBytes, 0, length, StandardCharsets.US_ASCII),
+                    buffer.getLong(offset + VALUE_OFFSET));
+            // The record could have been overwritten while it was read.
+            if (buffer.getLong(offset + SEQUENCE_OFFSET) != sequence || entry.getEvent() == null) {
+                continue;
+            }
+            if (subjectFilter == null || subjectFilter.isEmpty() || entry.getSubject().contains(subjectFilter)) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::getSequence));
+        return entries.size() > limit ? entries.subList(entries.size() - limit, entries.size()) : entries;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /*
+        Prints a journal file, e.g. after the hub crashed: java -cp zalenium.jar ...LifecycleJournal journal.bin 500
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: LifecycleJournal <journal file> [max entries] [subject filter]");
+            return;
+        }
+        Path path = Paths.get(args[0]);
+        int capacity;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC) {
+                System.out.println(path + " is not a lifecycle journal.");
+                return;
+            }
+            capacity = header.getInt(12);
+        }
+        int limit = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+        String filter = args.length > 2 ? args[2] : null;
+        for (Entry entry : new LifecycleJournal(path, capacity).read(limit, filter)) {
+            System.out.println(entry);
+        }
+    }
+
+    public static class Entry {
+        private final long sequence;
+        private final long epochNanos;
+        private final Event event;
+        private final String subject;
+        private final long value;
+
+        Entry(long sequence, long epochNanos, Event event, String subject, long value) {
+            this.sequence = sequence;
+            this.epochNanos = epochNanos;
+            this.event = event;
+            this.subject = subject;
+            this.value = value;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getEpochNanos() {
+            return epochNanos;
+        }
+
+        public Event getEvent() {
+            return event;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            Instant instant = Instant.ofEpochSecond(0, epochNanos);
+            return String.format("%s %s %s %s %s", sequence, instant, event, subject, value);
+        }
+    }
+
+}
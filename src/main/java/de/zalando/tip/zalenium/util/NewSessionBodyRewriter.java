@@ -0,0 +1,185 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rewrites the body of a new session request token by token, adding (or replacing) the given properties in
+ * "desiredCapabilities" and, for W3C requests, in "capabilities.alwaysMatch". No JSON tree is built, the tokens
+ * are copied from the reader to the writer as they come.
+ * If the body has none of those objects, a "desiredCapabilities" object with the properties is appended.
+ */
+public class NewSessionBodyRewriter {
+
+    private static final Logger LOGGER = Logger.getLogger(NewSessionBodyRewriter.class.getName());
+
+    static final String DESIRED_CAPABILITIES = "desiredCapabilities";
+    static final String CAPABILITIES = "capabilities";
+    static final String ALWAYS_MATCH = "alwaysMatch";
+
+    /**
+     * @param body       the JSON body of the START_SESSION request
+     * @param properties the properties to inject, a null value is written as a JSON null
+     * @return the rewritten body, or the original one if it is not a JSON object
+     */
+    public String rewrite(String body, Map<String, String> properties) {
+        if (body == null || body.trim().isEmpty()) {
+            return body;
+        }
+        StringWriter stringWriter = new StringWriter(body.length() + 64 * properties.size());
+        try (JsonReader reader = new JsonReader(new StringReader(body));
+             JsonWriter writer = new JsonWriter(stringWriter)) {
+            reader.setLenient(true);
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                LOGGER.log(Level.WARNING, "New session body is not a JSON object, it won't be modified: {0}", body);
+                return body;
+            }
+            copyRootObject(reader, writer, properties);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "New session body could not be parsed, it won't be modified: " + body, e);
+            return body;
+        }
+        return stringWriter.toString();
+    }
+
+    private void copyRootObject(JsonReader reader, JsonWriter writer, Map<String, String> properties)
+            throws IOException {
+        boolean injected = false;
+        reader.beginObject();
+        writer.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (DESIRED_CAPABILITIES.equals(name)) {
+                if (token == JsonToken.BEGIN_OBJECT) {
+                    writer.name(name);
+                    copyObjectInjecting(reader, writer, properties);
+                    injected = true;
+                } else {
+                    // A null or otherwise invalid value, replaced by a fresh object when the root is closed.
+                    reader.skipValue();
+                }
+            } else if (CAPABILITIES.equals(name) && token == JsonToken.BEGIN_OBJECT) {
+                writer.name(name);
+                copyW3CCapabilities(reader, writer, properties);
+                injected = true;
+            } else {
+                writer.name(name);
+                copyValue(reader, writer);
+            }
+        }
+        reader.endObject();
+        if (!injected) {
+            writer.name(DESIRED_CAPABILITIES);
+            writer.beginObject();
+            writeProperties(writer, properties);
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+
+    private void copyW3CCapabilities(JsonReader reader, JsonWriter writer, Map<String, String> properties)
+            throws IOException {
+        boolean injected = false;
+        reader.beginObject();
+        writer.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (ALWAYS_MATCH.equals(name)) {
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    writer.name(name);
+                    copyObjectInjecting(reader, writer, properties);
+                    injected = true;
+                } else {
+                    reader.skipValue();
+                }
+            } else {
+                writer.name(name);
+                copyValue(reader, writer);
+            }
+        }
+        reader.endObject();
+        if (!injected) {
+            writer.name(ALWAYS_MATCH);
+            writer.beginObject();
+            writeProperties(writer, properties);
+            writer.endObject();
+        }
+        writer.endObject();
+    }
+
+    private void copyObjectInjecting(JsonReader reader, JsonWriter writer, Map<String, String> properties)
+            throws IOException {
+        reader.beginObject();
+        writer.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (properties.containsKey(name)) {
+                // Overwritten below, same as JsonObject.addProperty() would do.
+                reader.skipValue();
+            } else {
+                writer.name(name);
+                copyValue(reader, writer);
+            }
+        }
+        reader.endObject();
+        writeProperties(writer, properties);
+        writer.endObject();
+    }
+
+    private void writeProperties(JsonWriter writer, Map<String, String> properties) throws IOException {
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            writer.name(property.getKey()).value(property.getValue());
+        }
+    }
+
+    private void copyValue(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copyValue(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copyValue(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                // Keeps the number exactly as it was sent, like the tree based JsonParser does.
+                writer.value(new JsonPrimitive(reader.nextString()).getAsNumber());
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected JSON token: " + reader.peek());
+        }
+    }
+
+}
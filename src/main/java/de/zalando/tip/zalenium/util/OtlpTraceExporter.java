@@ -0,0 +1,176 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Appends finished session traces to a file, one OTLP/JSON "ExportTraceServiceRequest" per line, the format the
+ * OpenTelemetry collector (otlpjsonfile receiver) and most tracing backends can import. The traces are queued and
+ * written by a single background thread, so the request and teardown threads that finish them do no file I/O.
+ * When the queue is full the trace is dropped and counted.
+ */
+public class OtlpTraceExporter {
+
+    private static final Logger logger = Logger.getLogger(OtlpTraceExporter.class.getName());
+    private static final String SERVICE_NAME = "zalenium";
+    private static final int SPAN_KIND_INTERNAL = 1;
+    static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private final Path file;
+    private final BlockingQueue<SessionTrace> queue;
+    private final boolean background;
+    private final AtomicLong droppedTraces = new AtomicLong();
+    private Thread writer;
+
+    public OtlpTraceExporter(Path file) {
+        this(file, DEFAULT_QUEUE_CAPACITY, true);
+    }
+
+    @VisibleForTesting
+    OtlpTraceExporter(Path file, int queueCapacity, boolean background) {
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.background = background;
+    }
+
+    public void export(SessionTrace trace) {
+        if (!queue.offer(trace)) {
+            long dropped = droppedTraces.incrementAndGet();
+            logger.log(Level.FINE, "Trace export queue is full, {0} traces dropped so far.", dropped);
+            return;
+        }
+        if (background) {
+            startWriter();
+        }
+    }
+
+    private synchronized void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    List<SessionTrace> traces = new ArrayList<>();
+                    traces.add(queue.take());
+                    queue.drainTo(traces);
+                    write(traces);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "OtlpTraceExporter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /*
+        Writes what is queued right now, used when there is no background thread and when the hub shuts down.
+     */
+    public void writeQueuedTraces() {
+        List<SessionTrace> traces = new ArrayList<>();
+        queue.drainTo(traces);
+        write(traces);
+    }
+
+    private synchronized void write(List<SessionTrace> traces) {
+        if (traces.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (SessionTrace trace : traces) {
+            lines.append(toOtlpJson(trace).toString()).append('\n');
+        }
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (Writer fileWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                fileWriter.write(lines.toString());
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, traces.size() + " traces could not be exported to " + file, e);
+        }
+    }
+
+    long getDroppedTraces() {
+        return droppedTraces.get();
+    }
+
+    static JsonObject toOtlpJson(SessionTrace trace) {
+        JsonArray spans = new JsonArray();
+        spans.add(toOtlpJson(trace.getRootSpan()));
+        List<SessionTrace.Span> childSpans = trace.getSpans();
+        for (SessionTrace.Span span : childSpans) {
+            spans.add(toOtlpJson(span));
+        }
+
+        JsonObject scope = new JsonObject();
+        scope.addProperty("name", SERVICE_NAME);
+        JsonObject scopeSpans = new JsonObject();
+        scopeSpans.add("scope", scope);
+        scopeSpans.add("spans", spans);
+        JsonArray scopeSpansArray = new JsonArray();
+        scopeSpansArray.add(scopeSpans);
+
+        JsonObject resource = new JsonObject();
+        resource.add("attributes", toOtlpAttributes(Collections.singletonMap("service.name", SERVICE_NAME)));
+        JsonObject resourceSpans = new JsonObject();
+        resourceSpans.add("resource", resource);
+        resourceSpans.add("scopeSpans", scopeSpansArray);
+        JsonArray resourceSpansArray = new JsonArray();
+        resourceSpansArray.add(resourceSpans);
+
+        JsonObject request = new JsonObject();
+        request.add("resourceSpans", resourceSpansArray);
+        return request;
+    }
+
+    private static JsonObject toOtlpJson(SessionTrace.Span span) {
+        JsonObject json = new JsonObject();
+        json.addProperty("traceId", span.getTraceId());
+        json.addProperty("spanId", span.getSpanId());
+        if (span.getParentSpanId() != null) {
+            json.addProperty("parentSpanId", span.getParentSpanId());
+        }
+        json.addProperty("name", span.getName());
+        json.addProperty("kind", SPAN_KIND_INTERNAL);
+        // 64 bit integers are strings in OTLP/JSON.
+        json.addProperty("startTimeUnixNano", String.valueOf(span.getStartEpochNanos()));
+        json.addProperty("endTimeUnixNano", String.valueOf(span.getEndEpochNanos()));
+        json.add("attributes", toOtlpAttributes(span.getAttributes()));
+        return json;
+    }
+
+    private static JsonArray toOtlpAttributes(Map<String, String> attributes) {
+        JsonArray array = new JsonArray();
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            JsonObject value = new JsonObject();
+            value.addProperty("stringValue", attribute.getValue());
+            JsonObject keyValue = new JsonObject();
+            keyValue.addProperty("key", attribute.getKey());
+            keyValue.add("value", value);
+            array.add(keyValue);
+        }
+        return array;
+    }
+
+}
@@ -0,0 +1,195 @@
+package de.zalando.tip.zalenium.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeline of a test session, from the moment the request is seen by the hub until the node is torn down. It is a
+ * trace in the OpenTelemetry sense: a root span for the whole session and one child span per phase (queue wait,
+ * container launch, registration, browser startup, commands, video stop, copy, teardown).
+ */
+public class SessionTrace {
+
+    // Commands are the only unbounded part of a session, the rest of the spans are always recorded.
+    static final int MAX_COMMAND_SPANS = 1000;
+    private static final long EPOCH_NANOS_AT_START = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private static final long NANO_TIME_AT_START = System.nanoTime();
+
+    private final String traceId;
+    private final Span rootSpan;
+    private final List<Span> spans = new ArrayList<>();
+    private int commandSpans;
+    private int droppedSpans;
+
+    SessionTrace(String name) {
+        this.traceId = randomHex(16);
+        this.rootSpan = new Span(this, randomHex(8), null, name, nowEpochNanos());
+    }
+
+    public static long nowEpochNanos() {
+        return EPOCH_NANOS_AT_START + (System.nanoTime() - NANO_TIME_AT_START);
+    }
+
+    private static String randomHex(int bytes) {
+        StringBuilder hex = new StringBuilder(bytes * 2);
+        for (int i = 0; i < bytes; i++) {
+            hex.append(String.format("%02x", ThreadLocalRandom.current().nextInt(256)));
+        }
+        return hex.toString();
+    }
+
+    public Span startSpan(String name) {
+        return addSpan(name, nowEpochNanos());
+    }
+
+    public Span addSpan(String name, long startEpochNanos) {
+        Span span = new Span(this, randomHex(8), rootSpan.getSpanId(), name, startEpochNanos);
+        synchronized (spans) {
+            spans.add(span);
+        }
+        return span;
+    }
+
+    /*
+        Returns null when the session already has too many command spans, callers must handle it.
+     */
+    public Span startCommandSpan(String name) {
+        synchronized (spans) {
+            if (commandSpans >= MAX_COMMAND_SPANS) {
+                droppedSpans++;
+                return null;
+            }
+            commandSpans++;
+        }
+        return startSpan(name);
+    }
+
+    /*
+        The first span with the given name that has not ended yet.
+     */
+    public Span findOpenSpan(String name) {
+        synchronized (spans) {
+            for (Span span : spans) {
+                if (span.getName().equals(name) && !span.isEnded()) {
+                    return span;
+                }
+            }
+        }
+        return null;
+    }
+
+    public void endSpan(String name) {
+        Span span = findOpenSpan(name);
+        if (span != null) {
+            span.end();
+        }
+    }
+
+    public void finish() {
+        rootSpan.end();
+    }
+
+    public boolean isFinished() {
+        return rootSpan.isEnded();
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public Span getRootSpan() {
+        return rootSpan;
+    }
+
+    public List<Span> getSpans() {
+        synchronized (spans) {
+            return new ArrayList<>(spans);
+        }
+    }
+
+    public int getDroppedSpans() {
+        synchronized (spans) {
+            return droppedSpans;
+        }
+    }
+
+    public static class Span {
+        private final SessionTrace trace;
+        private final String spanId;
+        private final String parentSpanId;
+        private final String name;
+        private final long startEpochNanos;
+        private final Map<String, String> attributes = Collections.synchronizedMap(new LinkedHashMap<>());
+        private volatile long endEpochNanos;
+
+        Span(SessionTrace trace, String spanId, String parentSpanId, String name, long startEpochNanos) {
+            this.trace = trace;
+            this.spanId = spanId;
+            this.parentSpanId = parentSpanId;
+            this.name = name;
+            this.startEpochNanos = startEpochNanos;
+        }
+
+        public Span setAttribute(String key, Object value) {
+            attributes.put(key, String.valueOf(value));
+            return this;
+        }
+
+        public void end() {
+            end(nowEpochNanos());
+        }
+
+        public void end(long epochNanos) {
+            if (endEpochNanos == 0) {
+                endEpochNanos = Math.max(startEpochNanos, epochNanos);
+            }
+        }
+
+        public boolean isEnded() {
+            return endEpochNanos != 0;
+        }
+
+        public String getTraceId() {
+            return trace.getTraceId();
+        }
+
+        public String getSpanId() {
+            return spanId;
+        }
+
+        public String getParentSpanId() {
+            return parentSpanId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getStartEpochNanos() {
+            return startEpochNanos;
+        }
+
+        /*
+            Spans that were not ended (e.g. the session timed out) end with the trace.
+         */
+        public long getEndEpochNanos() {
+            if (endEpochNanos != 0) {
+                return endEpochNanos;
+            }
+            long traceEnd = trace.rootSpan.endEpochNanos;
+            return traceEnd != 0 ? traceEnd : nowEpochNanos();
+        }
+
+        public Map<String, String> getAttributes() {
+            synchronized (attributes) {
+                return new LinkedHashMap<>(attributes);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.handler.RequestType;
+import org.openqa.grid.web.servlet.handler.WebDriverRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the traces of the sessions. A trace is created the first time one of the proxies sees a new session request
+ * (the requested capabilities map is the same object while the request waits in the hub queue), it is attached to
+ * the TestSession once a node takes the request, and it is finished when the node is torn down (docker-selenium) or
+ * the session is stopped (cloud testing providers).
+ * The last traces are kept in memory for the traces servlet, finished traces are exported to ZALENIUM_TRACE_FILE.
+ */
+public class SessionTracing {
+
+    private static final Logger logger = Logger.getLogger(SessionTracing.class.getName());
+
+    public static final String ZALENIUM_TRACE_FILE = "ZALENIUM_TRACE_FILE";
+    public static final String ZALENIUM_TRACES_KEPT = "ZALENIUM_TRACES_KEPT";
+    public static final String TRACE_ID_ENV_VARIABLE = "ZALENIUM_TRACE_ID";
+    private static final String TRACE_SESSION_ATTRIBUTE = "zal:trace";
+    private static final String COMMAND_SPAN_SESSION_ATTRIBUTE = "zal:commandSpan";
+    private static final int DEFAULT_TRACES_KEPT = 200;
+
+    public static final String QUEUE_WAIT = "queue.wait";
+    public static final String CONTAINER_LAUNCH = "container.launch";
+    public static final String NODE_REGISTRATION = "node.registration";
+    public static final String BROWSER_STARTUP = "browser.startup";
+    public static final String COMMAND = "command";
+    public static final String VIDEO_STOP = "video.stop";
+    public static final String VIDEO_COPY = "video.copy";
+    public static final String TEARDOWN = "teardown";
+
+    private static final SessionTracing defaultSessionTracing = fromEnvironment(new Environment());
+    private static SessionTracing sessionTracing = defaultSessionTracing;
+
+    // Weak keys are compared by identity, the key is the capabilities map of the queued request.
+    private final Map<Map<String, Object>, SessionTrace> pendingTraces = new MapMaker().weakKeys().makeMap();
+    private final Map<String, SessionTrace> recentTraces;
+    private final OtlpTraceExporter exporter;
+
+    @VisibleForTesting
+    public SessionTracing(int tracesKept, OtlpTraceExporter exporter) {
+        this.exporter = exporter;
+        this.recentTraces = new LinkedHashMap<String, SessionTrace>(tracesKept, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SessionTrace> eldest) {
+                return size() > tracesKept;
+            }
+        };
+    }
+
+    private static SessionTracing fromEnvironment(Environment env) {
+        int tracesKept = env.getIntEnvVariable(ZALENIUM_TRACES_KEPT, DEFAULT_TRACES_KEPT);
+        String traceFile = env.getStringEnvVariable(ZALENIUM_TRACE_FILE, "");
+        OtlpTraceExporter exporter = null;
+        if (!traceFile.trim().isEmpty()) {
+            exporter = new OtlpTraceExporter(Paths.get(traceFile));
+            Runtime.getRuntime().addShutdownHook(new Thread(exporter::writeQueuedTraces));
+        }
+        return new SessionTracing(tracesKept > 0 ? tracesKept : DEFAULT_TRACES_KEPT, exporter);
+    }
+
+    public static SessionTracing get() {
+        return sessionTracing;
+    }
+
+    @VisibleForTesting
+    public static void set(SessionTracing tracing) {
+        sessionTracing = tracing;
+    }
+
+    @VisibleForTesting
+    public static void restore() {
+        sessionTracing = defaultSessionTracing;
+    }
+
+    /*
+        The trace of a request that is still waiting for a node, created (and its queue wait started) the first time.
+     */
+    public SessionTrace traceFor(Map<String, Object> requestedCapability) {
+        return pendingTraces.computeIfAbsent(requestedCapability, capability -> {
+            SessionTrace trace = new SessionTrace("session");
+            trace.getRootSpan().setAttribute("capabilities", capability);
+            trace.startSpan(QUEUE_WAIT);
+            synchronized (recentTraces) {
+                recentTraces.put(trace.getTraceId(), trace);
+            }
+            return trace;
+        });
+    }
+
+    /*
+        A node took the request, the queue wait is over and the trace follows the TestSession from now on.
+     */
+    public SessionTrace sessionAssigned(Map<String, Object> requestedCapability, TestSession session, String node) {
+        SessionTrace trace = traceFor(requestedCapability);
+        pendingTraces.remove(requestedCapability);
+        trace.endSpan(QUEUE_WAIT);
+        trace.getRootSpan().setAttribute("node", node);
+        if (session != null) {
+            session.put(TRACE_SESSION_ATTRIBUTE, trace);
+        }
+        return trace;
+    }
+
+    public static SessionTrace getTrace(TestSession session) {
+        Object trace = session == null ? null : session.get(TRACE_SESSION_ATTRIBUTE);
+        return trace instanceof SessionTrace ? (SessionTrace) trace : null;
+    }
+
+    /*
+        Invoked from beforeCommand, the new session request is the browser startup, the rest are commands.
+     */
+    public static void commandStarted(TestSession session, HttpServletRequest request) {
+        SessionTrace trace = getTrace(session);
+        if (trace == null) {
+            return;
+        }
+        boolean startSession = request instanceof WebDriverRequest &&
+                RequestType.START_SESSION.equals(((WebDriverRequest) request).getRequestType());
+        SessionTrace.Span span = startSession ? trace.startSpan(BROWSER_STARTUP) : trace.startCommandSpan(COMMAND);
+        if (span != null) {
+            span.setAttribute("http.method", request.getMethod()).setAttribute("http.path", request.getPathInfo());
+        }
+        session.put(COMMAND_SPAN_SESSION_ATTRIBUTE, span);
+    }
+
+    /*
+        Invoked from afterCommand, not invoked when the command could not be forwarded, the span then ends with
+        the trace.
+     */
+    public static void commandFinished(TestSession session, HttpServletResponse response) {
+        Object span = session == null ? null : session.get(COMMAND_SPAN_SESSION_ATTRIBUTE);
+        if (span instanceof SessionTrace.Span) {
+            session.put(COMMAND_SPAN_SESSION_ATTRIBUTE, null);
+            ((SessionTrace.Span) span).setAttribute("http.status_code", response.getStatus()).end();
+        }
+    }
+
+    public void finish(SessionTrace trace) {
+        if (trace == null || trace.isFinished()) {
+            return;
+        }
+        trace.finish();
+        if (trace.getDroppedSpans() > 0) {
+            trace.getRootSpan().setAttribute("droppedCommandSpans", trace.getDroppedSpans());
+        }
+        logger.log(Level.FINE, "Trace {0} finished", trace.getTraceId());
+        if (exporter != null) {
+            exporter.export(trace);
+        }
+    }
+
+    public SessionTrace getTrace(String traceId) {
+        synchronized (recentTraces) {
+            return recentTraces.get(traceId);
+        }
+    }
+
+    /*
+        Newest first.
+     */
+    public List<SessionTrace> getRecentTraces() {
+        List<SessionTrace> traces;
+        synchronized (recentTraces) {
+            traces = new ArrayList<>(recentTraces.values());
+        }
+        Collections.reverse(traces);
+        return traces;
+    }
+
+}
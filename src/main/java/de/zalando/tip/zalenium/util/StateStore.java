@@ -0,0 +1,210 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small durable key/value store for the state the hub wants back after a restart (capability catalog, launched
+ * containers...). Every change is appended to a write ahead log and synced before the call returns; the whole
+ * state is written to a snapshot file, replaced atomically, when the hub starts and every
+ * {@link #COMPACT_AFTER_ENTRIES} changes, after which the log starts again. On startup the snapshot is read and the
+ * log replayed on top of it, an entry torn by a crash ends the replay.
+ *
+ * The directory is taken from ZALENIUM_STATE_DIR, it should be a volume that outlives the hub container. Without
+ * it the state is only kept in memory.
+ */
+public class StateStore {
+
+    private static final Logger logger = Logger.getLogger(StateStore.class.getName());
+
+    public static final String ZALENIUM_STATE_DIR = "ZALENIUM_STATE_DIR";
+    static final String SNAPSHOT_FILE = "state.json";
+    static final String LOG_FILE = "state.wal";
+    static final int COMPACT_AFTER_ENTRIES = 1000;
+
+    private static StateStore defaultStore;
+
+    private final Gson gson = new Gson();
+    private final Path directory;
+    private final Map<String, String> state = new TreeMap<>();
+    private FileChannel log;
+    private int logEntries;
+
+    /*
+        Loads the state of the directory, null keeps it only in memory.
+     */
+    public StateStore(Path directory) throws IOException {
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+            load();
+            compact();
+        }
+    }
+
+    public static synchronized StateStore getDefault() {
+        if (defaultStore == null) {
+            String directory = new Environment().getStringEnvVariable(ZALENIUM_STATE_DIR, "");
+            try {
+                defaultStore = new StateStore(directory.isEmpty() ? null : Paths.get(directory));
+                if (!directory.isEmpty()) {
+                    logger.log(Level.INFO, "State loaded from {0}", directory);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "State could not be loaded from " + directory + ", keeping it in memory", e);
+                defaultStore = inMemory();
+            }
+        }
+        return defaultStore;
+    }
+
+    @VisibleForTesting
+    public static synchronized void setDefault(StateStore store) {
+        defaultStore = store;
+    }
+
+    public static StateStore inMemory() {
+        try {
+            return new StateStore(null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized String get(String key) {
+        return state.get(key);
+    }
+
+    /*
+        The entries whose key starts with the prefix, sorted by key.
+     */
+    public synchronized Map<String, String> getAll(String prefix) {
+        Map<String, String> entries = new TreeMap<>();
+        for (Map.Entry<String, String> entry : state.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return entries;
+    }
+
+    public synchronized void put(String key, String value) {
+        if (value.equals(state.put(key, value))) {
+            return;
+        }
+        JsonObject entry = new JsonObject();
+        entry.addProperty("key", key);
+        entry.addProperty("value", value);
+        append(entry);
+    }
+
+    public synchronized void remove(String key) {
+        if (state.remove(key) == null) {
+            return;
+        }
+        JsonObject entry = new JsonObject();
+        entry.addProperty("key", key);
+        append(entry);
+    }
+
+    /*
+        A failed write only costs the state of the next restart, so it is logged and the hub goes on.
+     */
+    private void append(JsonObject entry) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            ByteBuffer line = ByteBuffer.wrap((gson.toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                log.write(line);
+            }
+            log.force(false);
+            if (++logEntries >= COMPACT_AFTER_ENTRIES) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "State could not be written to " + directory, e);
+        }
+    }
+
+    private void load() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            String content = new String(Files.readAllBytes(snapshot), StandardCharsets.UTF_8);
+            for (Map.Entry<String, JsonElement> entry : new JsonParser().parse(content).getAsJsonObject().entrySet()) {
+                state.put(entry.getKey(), entry.getValue().getAsString());
+            }
+        }
+        Path logFile = directory.resolve(LOG_FILE);
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JsonObject entry = new JsonParser().parse(line).getAsJsonObject();
+                    String key = entry.get("key").getAsString();
+                    if (entry.has("value")) {
+                        state.put(key, entry.get("value").getAsString());
+                    } else {
+                        state.remove(key);
+                    }
+                } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+                    logger.log(Level.WARNING, "Incomplete entry in the state log, ignoring it and what follows: {0}",
+                            line);
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+        Writes the snapshot next to the current one and moves it over it, then starts a new log. A crash in between
+        replays the old log on the new snapshot, which gives the same state.
+     */
+    private void compact() throws IOException {
+        JsonObject snapshot = new JsonObject();
+        for (Map.Entry<String, String> entry : state.entrySet()) {
+            snapshot.addProperty(entry.getKey(), entry.getValue());
+        }
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        Path temporaryFile = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer content = ByteBuffer.wrap(gson.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (log != null) {
+            log.close();
+        }
+        log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        logEntries = 0;
+    }
+
+}
@@ -0,0 +1,84 @@
+package de.zalando.tip.zalenium.util;
+
+/**
+ * A session or exception event, as recorded by a {@link TelemetrySink}.
+ */
+public class TelemetryEvent {
+
+    public enum Type {
+        SESSION, EXCEPTION
+    }
+
+    public static final String OUTCOME_COMPLETED = "COMPLETED";
+    public static final String OUTCOME_FAILED = "FAILED";
+
+    private final long timestamp;
+    private final Type type;
+    private final String proxy;
+    private final String capabilities;
+    private final long durationSeconds;
+    private final String outcome;
+    private final String exceptionClass;
+    private final String message;
+
+    private TelemetryEvent(Type type, String proxy, String capabilities, long durationSeconds, String outcome,
+                           String exceptionClass, String message) {
+        this.timestamp = System.currentTimeMillis();
+        this.type = type;
+        this.proxy = proxy;
+        this.capabilities = capabilities;
+        this.durationSeconds = durationSeconds;
+        this.outcome = outcome;
+        this.exceptionClass = exceptionClass;
+        this.message = message;
+    }
+
+    public static TelemetryEvent session(String proxy, String capabilities, long durationSeconds, String outcome) {
+        return new TelemetryEvent(Type.SESSION, proxy, capabilities, durationSeconds, outcome, null, null);
+    }
+
+    /*
+        A session completed when its delete command succeeded, a client or server error means it failed.
+     */
+    public static String getSessionOutcome(int stopSessionStatus) {
+        return stopSessionStatus < 400 ? OUTCOME_COMPLETED : OUTCOME_FAILED;
+    }
+
+    public static TelemetryEvent exception(Exception e) {
+        return new TelemetryEvent(Type.EXCEPTION, null, null, 0, OUTCOME_FAILED, e.getClass().getName(),
+                e.getMessage());
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getProxy() {
+        return proxy;
+    }
+
+    public String getCapabilities() {
+        return capabilities;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public String getExceptionClass() {
+        return exceptionClass;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+}
@@ -0,0 +1,14 @@
+package de.zalando.tip.zalenium.util;
+
+/**
+ * Destination of the session and exception events, besides Google Analytics. Implementations must not block the
+ * caller, events are recorded from the hub threads that forward the commands.
+ */
+public interface TelemetrySink {
+
+    TelemetrySink NO_OP = event -> {
+    };
+
+    void record(TelemetryEvent event);
+
+}
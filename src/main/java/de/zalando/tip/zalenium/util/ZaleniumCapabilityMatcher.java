@@ -28,6 +28,13 @@ public class ZaleniumCapabilityMatcher extends DefaultCapabilityMatcher {
 
     @Override
     public boolean matches(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability) {
+        FlightRecorderEvents.Timing matchTiming = FlightRecorderEvents.capabilityMatch(requestedCapability);
+        boolean matches = matchesCapability(nodeCapability, requestedCapability);
+        matchTiming.end(matches);
+        return matches;
+    }
+
+    private boolean matchesCapability(Map<String, Object> nodeCapability, Map<String, Object> requestedCapability) {
         logger.log(Level.FINE, String.format("Validating %s in node with capabilities %s", requestedCapability,
                 nodeCapability));
 
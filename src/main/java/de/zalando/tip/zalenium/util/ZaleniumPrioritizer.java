@@ -0,0 +1,38 @@
+package de.zalando.tip.zalenium.util;
+
+import org.openqa.grid.internal.listeners.Prioritizer;
+
+import java.util.Map;
+
+/**
+ * Orders the new session requests in the hub queue by the zal:priority capability, highest first, so e.g. the builds
+ * developers wait on get a node before the tests of a nightly regression run. Requests without the capability have
+ * priority 0 and requests with the same priority keep their arrival order.
+ */
+public class ZaleniumPrioritizer implements Prioritizer {
+
+    public static final String PRIORITY_CAPABILITY = "zal:priority";
+    public static final int DEFAULT_PRIORITY = 0;
+
+    @Override
+    public int compareTo(Map<String, Object> a, Map<String, Object> b) {
+        // The queue is sorted ascending, so the request with the highest priority has to be the "smallest".
+        return Integer.compare(getPriority(b), getPriority(a));
+    }
+
+    public static int getPriority(Map<String, Object> requestedCapability) {
+        Object priority = requestedCapability == null ? null : requestedCapability.get(PRIORITY_CAPABILITY);
+        if (priority instanceof Number) {
+            return ((Number) priority).intValue();
+        }
+        if (priority != null) {
+            try {
+                return Integer.parseInt(priority.toString().trim());
+            } catch (NumberFormatException e) {
+                return DEFAULT_PRIORITY;
+            }
+        }
+        return DEFAULT_PRIORITY;
+    }
+
+}
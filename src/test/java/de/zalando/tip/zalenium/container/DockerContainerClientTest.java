@@ -0,0 +1,73 @@
+package de.zalando.tip.zalenium.container;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.lang.reflect.Constructor;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerContainerClientTest {
+
+    @Before
+    public void setUp() {
+        DockerContainerClient.setEventStreamRetryMillis(10, 50);
+    }
+
+    @After
+    public void tearDown() {
+        DockerContainerClient.restoreEventStreamRetryMillis();
+    }
+
+    @Test
+    public void eventsAreReadAgainAfterTheStreamEnds() throws Exception {
+        DockerClient dockerClient = mock(DockerClient.class);
+        EventStream endedStream = eventStream("");
+        EventStream reopenedStream = eventStream("{\"status\":\"die\",\"id\":\"containerId\"," +
+                "\"from\":\"elgalu/selenium\",\"time\":1}");
+        when(dockerClient.events(any()))
+                .thenReturn(endedStream)
+                .thenThrow(new DockerException("daemon restarting"))
+                .thenReturn(reopenedStream);
+
+        List<ContainerEvent> receivedEvents = new CopyOnWriteArrayList<>();
+        Closeable subscription = new DockerContainerClient(dockerClient).subscribeToEvents(receivedEvents::add);
+
+        await().atMost(5, SECONDS).until(() -> !receivedEvents.isEmpty());
+        subscription.close();
+        Assert.assertEquals("containerId", receivedEvents.get(0).getContainerId());
+        Assert.assertEquals(ContainerEvent.DIE, receivedEvents.get(0).getAction());
+        verify(dockerClient, atLeast(3)).events(any());
+    }
+
+    /*
+        EventStream only has a package-private constructor and final iterator methods, so the tests build a real one
+        that reads the given JSON events.
+     */
+    private static EventStream eventStream(String events) throws Exception {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getEntity()).thenReturn(new StringEntity(events));
+        Constructor<EventStream> constructor =
+                EventStream.class.getDeclaredConstructor(CloseableHttpResponse.class, ObjectMapper.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(response, new ObjectMapper());
+    }
+
+}
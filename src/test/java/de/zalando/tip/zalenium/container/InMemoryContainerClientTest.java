@@ -0,0 +1,102 @@
+package de.zalando.tip.zalenium.container;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InMemoryContainerClientTest {
+
+    private AtomicLong clock;
+    private InMemoryContainerClient containerClient;
+    private List<String> registeredContainers;
+    private List<String> receivedActions;
+
+    @Before
+    public void setUp() {
+        clock = new AtomicLong(1000);
+        containerClient = new InMemoryContainerClient(clock::get, 2000, 500);
+        registeredContainers = new ArrayList<>();
+        receivedActions = new ArrayList<>();
+        containerClient.setRegistrationHandler(container -> registeredContainers.add(container.getName()));
+        containerClient.subscribeToEvents(event -> receivedActions.add(event.getAction()));
+    }
+
+    @Test
+    public void containersRegisterAfterBootingFollowingTheClock() throws Exception {
+        String containerId = containerClient.createContainer(spec("zalenium_40000", false));
+        containerClient.startContainer(containerId);
+
+        clock.addAndGet(2499);
+        containerClient.advance();
+        Assert.assertFalse(containerClient.isRegistered(containerId));
+        Assert.assertTrue(registeredContainers.isEmpty());
+
+        clock.addAndGet(1);
+        Assert.assertEquals(InMemoryContainerClient.RUNNING, containerClient.listContainers().get(0).getState());
+        Assert.assertTrue(containerClient.isRegistered(containerId));
+        Assert.assertEquals(Arrays.asList("zalenium_40000"), registeredContainers);
+
+        containerClient.execute(containerId, new String[]{"bash", "-c", "start-video"});
+        Assert.assertEquals(Arrays.asList("bash -c start-video"), containerClient.getExecutedCommands(containerId));
+
+        containerClient.stopContainer(containerId, 5);
+        Assert.assertTrue(containerClient.listContainers().get(0).isExited());
+        Assert.assertEquals(Arrays.asList(ContainerEvent.START, ContainerEvent.DIE), receivedActions);
+    }
+
+    @Test
+    public void autoRemovedContainersAreDestroyedWhenTheyExit() throws Exception {
+        containerClient.setVideoSizeBytes(10);
+        String containerId = containerClient.createContainer(spec("zalenium_40001", true));
+        containerClient.startContainer(containerId);
+
+        try (TarArchiveInputStream tarStream = new TarArchiveInputStream(
+                containerClient.archiveContainer(containerId, "/videos/"))) {
+            TarArchiveEntry entry = tarStream.getNextTarEntry();
+            Assert.assertEquals("vid_zalenium_40001.mp4", entry.getName());
+            Assert.assertEquals(10, entry.getSize());
+        }
+
+        containerClient.killOutOfMemory(containerId);
+
+        Assert.assertTrue(containerClient.listContainers().isEmpty());
+        Assert.assertEquals(Arrays.asList(ContainerEvent.START, ContainerEvent.OOM, ContainerEvent.DIE,
+                ContainerEvent.DESTROY), receivedActions);
+    }
+
+    @Test
+    public void simulatedFailuresAndNameConflictsAreReported() throws Exception {
+        containerClient.failNextCreations(1);
+        try {
+            containerClient.createContainer(spec("zalenium_40002", true));
+            Assert.fail("The creation should have failed");
+        } catch (ContainerException e) {
+            Assert.assertTrue(e.getMessage().contains("Simulated failure"));
+        }
+
+        containerClient.createContainer(spec("zalenium_40002", true));
+        try {
+            containerClient.createContainer(spec("zalenium_40002", true));
+            Assert.fail("The name should be in use");
+        } catch (ContainerException e) {
+            Assert.assertTrue(e.getMessage().contains("Conflict"));
+        }
+        Assert.assertEquals(1, containerClient.getCreatedContainers());
+    }
+
+    private static ContainerSpec spec(String name, boolean autoRemove) {
+        return ContainerSpec.builder()
+                .name(name)
+                .image("elgalu/selenium:latest")
+                .autoRemove(autoRemove)
+                .build();
+    }
+
+}
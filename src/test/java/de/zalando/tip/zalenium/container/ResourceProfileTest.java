@@ -0,0 +1,36 @@
+package de.zalando.tip.zalenium.container;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResourceProfileTest {
+
+    private static final long MB = 1024L * 1024;
+
+    @Test
+    public void profileOverridesOnlyTheGivenResources() {
+        ResourceProfile base = ResourceProfile.parse("memory=1024,shm=512", ResourceProfile.NONE);
+
+        ResourceProfile profile = ResourceProfile.parse(" cpus=1.5, shares=512 ,pids=128", base);
+
+        Assert.assertEquals(150000, profile.getCpuQuotaMicroseconds());
+        Assert.assertEquals(512, profile.getCpuShares());
+        Assert.assertEquals(1024 * MB, profile.getMemoryBytes());
+        Assert.assertEquals(128, profile.getPidsLimit());
+        Assert.assertEquals(512 * MB, profile.getShmSizeBytes());
+        Assert.assertEquals("1.5 CPUs, 512 CPU shares, 1024 MB memory, 128 pids, 512 MB shm", profile.toString());
+    }
+
+    @Test
+    public void invalidEntriesAreIgnored() {
+        ResourceProfile base = new ResourceProfile(1, 0, 0, 0, 64 * MB);
+
+        ResourceProfile profile = ResourceProfile.parse("cpus=many,gpus=1,memory=-5", base);
+
+        Assert.assertEquals(1, profile.getCpus(), 0);
+        Assert.assertEquals(0, profile.getMemoryBytes());
+        Assert.assertEquals(64 * MB, profile.getShmSizeBytes());
+        Assert.assertSame(base, ResourceProfile.parse("", base));
+    }
+
+}
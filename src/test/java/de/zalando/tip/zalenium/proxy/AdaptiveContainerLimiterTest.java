@@ -0,0 +1,90 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.container.ContainerSpec;
+import de.zalando.tip.zalenium.container.ContainerStats;
+import de.zalando.tip.zalenium.container.InMemoryContainerClient;
+import de.zalando.tip.zalenium.util.Environment;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class AdaptiveContainerLimiterTest {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private AdaptiveContainerLimiter limiter;
+
+    @Before
+    public void setUp() {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(AdaptiveContainerLimiter.ZALENIUM_ADAPTIVE_LIMIT_ENABLED)).thenReturn("true");
+        when(environment.getEnvVariable(AdaptiveContainerLimiter.ZALENIUM_ADAPTIVE_MIN_CONTAINERS)).thenReturn("2");
+        when(environment.getEnvVariable(AdaptiveContainerLimiter.ZALENIUM_ADAPTIVE_MAX_CONTAINERS)).thenReturn("12");
+        when(environment.getIntEnvVariable(anyString(), anyInt())).thenCallRealMethod();
+        when(environment.getBooleanEnvVariable(anyString(), anyBoolean())).thenCallRealMethod();
+        limiter = new AdaptiveContainerLimiter(environment, 10);
+    }
+
+    @Test
+    public void limitIsLoweredWhenTheHostIsOverloaded() {
+        // 8 containers using 90% of the CPU, the target is 75%
+        int max = limiter.adjust(Collections.singletonList(
+                new HostLoad(8, 0.9, 4 * GB, 16 * GB)));
+
+        Assert.assertEquals(6, max);
+        Assert.assertEquals(6, limiter.getMaxContainers(10));
+
+        // Memory pressure cannot push it below the lower bound
+        max = limiter.adjust(Collections.singletonList(
+                new HostLoad(6, 0.3, 15 * GB, 16 * GB)));
+        Assert.assertEquals(5, max);
+        for (int i = 0; i < 5; i++) {
+            max = limiter.adjust(Collections.singletonList(
+                    new HostLoad(1, 0.3, 15 * GB, 16 * GB)));
+        }
+        Assert.assertEquals(2, max);
+    }
+
+    @Test
+    public void limitIsRaisedUpToTheBoundWhenThereIsRoomAndDemand() {
+        HostLoad idleHost = new HostLoad(3, 0.1, GB, 16 * GB);
+        Assert.assertEquals(10, limiter.adjust(Collections.singletonList(idleHost)));
+
+        for (int i = 0; i < 5; i++) {
+            limiter.adjust(Collections.singletonList(new HostLoad(
+                    limiter.getMaxContainers(10), 0.3, 4 * GB, 16 * GB)));
+        }
+
+        Assert.assertEquals(12, limiter.getMaxContainers(10));
+    }
+
+    @Test
+    public void overloadedHostsGetNoNewNodes() throws Exception {
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        containerClient.setContainerStats(new ContainerStats(0.45, GB, 16 * GB));
+        for (int i = 0; i < 2; i++) {
+            String id = containerClient.createContainer(ContainerSpec.builder().name("zalenium_" + (40000 + i))
+                    .image("elgalu/selenium:latest").build());
+            containerClient.startContainer(id);
+        }
+        ContainerHost host = ContainerHost.local("local", containerClient, 0);
+        ContainerHostPool pool = new ContainerHostPool(Collections.singletonList(host),
+                ContainerHostPool.Placement.LEAST_LOADED);
+
+        limiter.update(new ContainerLoadSampler(new Environment()).sample(pool, "elgalu/selenium"));
+
+        Assert.assertTrue(host.isOverloaded());
+        Assert.assertNull(pool.place(10));
+        Assert.assertEquals(2, limiter.getMaxContainers(10));
+    }
+
+}
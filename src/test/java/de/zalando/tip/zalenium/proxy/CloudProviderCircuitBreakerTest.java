@@ -0,0 +1,106 @@
+package de.zalando.tip.zalenium.proxy;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CloudProviderCircuitBreakerTest {
+
+    private AtomicLong now;
+    private CloudProviderCircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        now = new AtomicLong(1000);
+        circuitBreaker = new CloudProviderCircuitBreaker("test", 3, 60000, now::get);
+    }
+
+    @Test
+    public void circuitOpensAfterConsecutiveFailures() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        Assert.assertTrue(circuitBreaker.isAvailable());
+
+        circuitBreaker.recordFailure();
+
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertFalse(circuitBreaker.isAvailable());
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void onlyOneTrialIsAllowedWhenHalfOpen() {
+        openCircuit();
+        now.addAndGet(60000);
+
+        Assert.assertTrue(circuitBreaker.isAvailable());
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.sessionCreated();
+        Assert.assertFalse(circuitBreaker.isAvailable());
+
+        // A trial that never reports back does not block the provider forever.
+        now.addAndGet(60000);
+        Assert.assertTrue(circuitBreaker.isAvailable());
+    }
+
+    @Test
+    public void successfulTrialClosesTheCircuit() {
+        openCircuit();
+        now.addAndGet(60000);
+        circuitBreaker.isAvailable();
+        circuitBreaker.sessionCreated();
+
+        circuitBreaker.recordSuccess();
+
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.isAvailable());
+    }
+
+    @Test
+    public void failedTrialOpensTheCircuitAgain() {
+        openCircuit();
+        now.addAndGet(60000);
+        circuitBreaker.isAvailable();
+        circuitBreaker.sessionCreated();
+
+        circuitBreaker.recordFailure();
+
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        now.addAndGet(59999);
+        Assert.assertFalse(circuitBreaker.isAvailable());
+    }
+
+    @Test
+    public void refusedTrialLetsTheNextSessionBeATrial() {
+        openCircuit();
+        now.addAndGet(60000);
+        circuitBreaker.isAvailable();
+        circuitBreaker.sessionCreated();
+        Assert.assertFalse(circuitBreaker.isAvailable());
+        Assert.assertFalse(circuitBreaker.isOpen());
+
+        circuitBreaker.recordRefused();
+
+        Assert.assertEquals(CloudProviderCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.isAvailable());
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package de.zalando.tip.zalenium.proxy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CloudProviderRoutingStatsTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void providerWithoutObservationsOnlyScoresLoadAndCost() {
+        CloudProviderRoutingStats stats = new CloudProviderRoutingStats();
+
+        Assert.assertEquals(0, stats.getScore(0, 5, 0), DELTA);
+        Assert.assertEquals(0.35, stats.getScore(5, 5, 100), DELTA);
+    }
+
+    @Test
+    public void fasterProviderGetsABetterScore() {
+        CloudProviderRoutingStats fast = new CloudProviderRoutingStats();
+        CloudProviderRoutingStats slow = new CloudProviderRoutingStats();
+        for (int i = 0; i < 5; i++) {
+            fast.recordSessionStart(4000, true);
+            slow.recordSessionStart(30000, true);
+        }
+
+        Assert.assertEquals(4000, fast.getAverageStartLatencyMs(), DELTA);
+        Assert.assertTrue(fast.getScore(1, 5, 50) < slow.getScore(1, 5, 50));
+    }
+
+    @Test
+    public void recentFailuresWeighMoreThanOldOnes() {
+        CloudProviderRoutingStats stats = new CloudProviderRoutingStats();
+        stats.recordSessionStart(5000, false);
+        double afterFailure = stats.getFailureRate();
+        stats.recordSessionStart(5000, true);
+        stats.recordSessionStart(5000, true);
+
+        Assert.assertEquals(1, afterFailure, DELTA);
+        Assert.assertEquals(0.49, stats.getFailureRate(), DELTA);
+        Assert.assertEquals(5000, stats.getAverageStartLatencyMs(), DELTA);
+    }
+
+    @Test
+    public void costWeightIsBoundedAndBreaksTies() {
+        CloudProviderRoutingStats stats = new CloudProviderRoutingStats();
+
+        Assert.assertTrue(stats.getScore(0, 5, 10) < stats.getScore(0, 5, 90));
+        Assert.assertEquals(stats.getScore(0, 5, 100), stats.getScore(0, 5, 500), DELTA);
+        Assert.assertEquals(stats.getScore(0, 5, 0), stats.getScore(0, 5, -10), DELTA);
+    }
+
+}
@@ -0,0 +1,89 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.sun.net.httpserver.HttpServer;
+import de.zalando.tip.zalenium.util.TestUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.Registry;
+import org.openqa.selenium.remote.internal.HttpClientFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+public class CloudTestingHttpClientFactoryTest {
+
+    private HttpServer server;
+    private CloudTestingHttpClientFactory factory;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/wd/hub/status", exchange -> {
+            byte[] response = "{\"status\":0}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(response);
+            }
+        });
+        server.start();
+        factory = new CloudTestingHttpClientFactory("test", 5, 60000);
+    }
+
+    @After
+    public void tearDown() {
+        factory.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void connectionsAreReusedBetweenCommands() throws IOException {
+        String url = String.format("http://localhost:%s/wd/hub/status", server.getAddress().getPort());
+        for (int i = 0; i < 5; i++) {
+            HttpClient client = factory.getGridHttpClient(10000, 10000);
+            HttpResponse response = client.execute(new HttpGet(url));
+            EntityUtils.consume(response.getEntity());
+            Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        }
+
+        Assert.assertEquals(5, factory.getSentRequests());
+        Assert.assertEquals(1, factory.getOpenedConnections());
+        Assert.assertEquals(4, factory.getReusedConnections());
+        Assert.assertEquals(5, factory.getPoolStats().getMax());
+        Assert.assertEquals(1, factory.getPoolStats().getAvailable());
+    }
+
+    @Test
+    public void clientIsBuiltOncePerTimeoutCombination() {
+        HttpClient client = factory.getGridHttpClient(1000, 2000);
+
+        Assert.assertSame(client, factory.getGridHttpClient(1000, 2000));
+        Assert.assertNotSame(client, factory.getGridHttpClient(1000, 3000));
+    }
+
+    @Test
+    public void proxyUsesItsOwnFactoryAndCachesTheRemoteHost() {
+        Registry registry = Registry.newInstance();
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30004,
+                TestingBotRemoteProxy.class.getCanonicalName());
+        TestingBotRemoteProxy proxy = TestingBotRemoteProxy.getNewInstance(request, registry);
+        HttpClientFactory proxyFactory = proxy.getHttpClientFactory();
+        try {
+            Assert.assertTrue(proxyFactory instanceof CloudTestingHttpClientFactory);
+            Assert.assertSame(proxyFactory, proxy.getHttpClientFactory());
+            Assert.assertSame(proxy.getRemoteHost(), proxy.getRemoteHost());
+            Assert.assertEquals("hub.testingbot.com", proxy.getRemoteHost().getHost());
+        } finally {
+            proxyFactory.close();
+        }
+    }
+
+}
@@ -1,19 +1,40 @@
 package de.zalando.tip.zalenium.proxy;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import de.zalando.tip.zalenium.util.CommonProxyUtilities;
+import de.zalando.tip.zalenium.util.Environment;
 import de.zalando.tip.zalenium.util.TestUtils;
+import org.junit.After;
 import org.junit.Test;
 import org.openqa.grid.common.RegistrationRequest;
 import org.openqa.grid.internal.Registry;
-import org.openqa.grid.internal.TestSession;
-import org.openqa.grid.internal.utils.CapabilityMatcher;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
 import org.testng.Assert;
 
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class CloudTestingRemoteProxyTest {
 
+    private static final String PARALLEL_SESSIONS_ENV_VAR = "ZALENIUM_ANY_PROVIDER_PARALLEL_SESSIONS";
+    private static final String CONCURRENCY_URL = "http://localhost/concurrency";
+
+    @After
+    public void tearDown() {
+        CloudTestingRemoteProxy.restoreCommonProxyUtilities();
+        CloudTestingRemoteProxy.restoreEnvironment();
+    }
+
     @Test
     public void defaultValuesAreAlwaysNull() {
         Registry registry = Registry.newInstance();
@@ -29,4 +50,180 @@ public class CloudTestingRemoteProxyTest {
         Assert.assertNull(proxy.getRemoteHost());
     }
 
+    @Test
+    public void configuredParallelSessionsWinOverTheProviderOnes() {
+        Environment environment = mock(Environment.class);
+        when(environment.getIntEnvVariable(PARALLEL_SESSIONS_ENV_VAR, 0)).thenReturn(3);
+        CloudTestingRemoteProxy.setEnv(environment);
+        CommonProxyUtilities commonProxyUtilities = mock(CommonProxyUtilities.class);
+        CloudTestingRemoteProxy.setCommonProxyUtilities(commonProxyUtilities);
+
+        int maxParallelSessions = CloudTestingRemoteProxy.getMaxParallelSessions("[TEST]",
+                PARALLEL_SESSIONS_ENV_VAR, CONCURRENCY_URL, json -> 40);
+
+        Assert.assertEquals(maxParallelSessions, 3);
+        verify(commonProxyUtilities, never()).readJSONFromUrl(anyString());
+    }
+
+    @Test
+    public void parallelSessionsAreDiscoveredFromTheProvider() {
+        CommonProxyUtilities commonProxyUtilities = mock(CommonProxyUtilities.class);
+        JsonElement concurrency = new JsonParser().parse("{\"timestamp\":1485187560.99,\"concurrency\":" +
+                "{\"zalenium\":{\"remaining\":{\"overall\":8,\"mac\":8},\"allowed\":{\"overall\":12,\"mac\":12}}}}");
+        when(commonProxyUtilities.readJSONFromUrl(CONCURRENCY_URL)).thenReturn(concurrency);
+        CloudTestingRemoteProxy.setCommonProxyUtilities(commonProxyUtilities);
+
+        int maxParallelSessions = CloudTestingRemoteProxy.getMaxParallelSessions("[TEST]",
+                PARALLEL_SESSIONS_ENV_VAR, CONCURRENCY_URL, SauceLabsRemoteProxy::getAllowedSessions);
+
+        Assert.assertEquals(maxParallelSessions, 12);
+    }
+
+    @Test
+    public void defaultParallelSessionsWhenProviderCannotBeReached() {
+        CommonProxyUtilities commonProxyUtilities = mock(CommonProxyUtilities.class);
+        when(commonProxyUtilities.readJSONFromUrl(anyString())).thenReturn(null);
+        CloudTestingRemoteProxy.setCommonProxyUtilities(commonProxyUtilities);
+
+        Assert.assertEquals(CloudTestingRemoteProxy.getMaxParallelSessions("[TEST]", PARALLEL_SESSIONS_ENV_VAR,
+                CONCURRENCY_URL, json -> 40), CloudTestingRemoteProxy.DEFAULT_MAX_PARALLEL_SESSIONS);
+        Assert.assertEquals(CloudTestingRemoteProxy.getMaxParallelSessions("[TEST]", PARALLEL_SESSIONS_ENV_VAR,
+                null, json -> 40), CloudTestingRemoteProxy.DEFAULT_MAX_PARALLEL_SESSIONS);
+    }
+
+    @Test
+    public void defaultParallelSessionsWhenProviderResponseIsUnexpected() {
+        CommonProxyUtilities commonProxyUtilities = mock(CommonProxyUtilities.class);
+        when(commonProxyUtilities.readJSONFromUrl(CONCURRENCY_URL)).thenReturn(new JsonParser().parse("{}"));
+        CloudTestingRemoteProxy.setCommonProxyUtilities(commonProxyUtilities);
+
+        int maxParallelSessions = CloudTestingRemoteProxy.getMaxParallelSessions("[TEST]",
+                PARALLEL_SESSIONS_ENV_VAR, CONCURRENCY_URL,
+                json -> json.getAsJsonObject().get("parallel_sessions_max_allowed").getAsInt());
+
+        Assert.assertEquals(maxParallelSessions, CloudTestingRemoteProxy.DEFAULT_MAX_PARALLEL_SESSIONS);
+    }
+
+    @Test
+    public void parallelSessionsLimitTheWholeNode() {
+        Registry registry = Registry.newInstance();
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30003,
+                CloudTestingRemoteProxy.class.getCanonicalName());
+        request.getCapabilities().clear();
+        request.addDesiredCapability(DesiredCapabilities.safari());
+        request.addDesiredCapability(DesiredCapabilities.internetExplorer());
+
+        CloudTestingRemoteProxy.setMaxParallelSessions(request, 2);
+        CloudTestingRemoteProxy proxy = CloudTestingRemoteProxy.getNewInstance(request, registry);
+
+        Assert.assertEquals(proxy.getMaxNumberOfConcurrentTestSessions(), 2);
+        Assert.assertEquals(proxy.getTestSlots().size(), 4);
+    }
+
+    @Test
+    public void providerWithBetterRoutingScoreIsListedFirst() {
+        Registry registry = Registry.newInstance();
+        CloudTestingRemoteProxy healthy = CloudTestingRemoteProxy.getNewInstance(TestUtils
+                .getRegistrationRequestForTesting(30003, CloudTestingRemoteProxy.class.getCanonicalName()), registry);
+        CloudTestingRemoteProxy failing = CloudTestingRemoteProxy.getNewInstance(TestUtils
+                .getRegistrationRequestForTesting(30004, CloudTestingRemoteProxy.class.getCanonicalName()), registry);
+        healthy.getRoutingStats().recordSessionStart(5000, true);
+        failing.getRoutingStats().recordSessionStart(40000, false);
+        healthy.refreshResourceUsage(0);
+        failing.refreshResourceUsage(0);
+
+        Assert.assertTrue(healthy.getResourceUsageInPercent() >= 99);
+        Assert.assertTrue(failing.getResourceUsageInPercent() < 100);
+        Assert.assertTrue(healthy.getResourceUsageInPercent() < failing.getResourceUsageInPercent());
+    }
+
+    @Test
+    public void resourceUsageDoesNotChangeUntilItIsRefreshed() {
+        Registry registry = Registry.newInstance();
+        CloudTestingRemoteProxy proxy = CloudTestingRemoteProxy.getNewInstance(TestUtils
+                .getRegistrationRequestForTesting(30003, CloudTestingRemoteProxy.class.getCanonicalName()), registry);
+        float resourceUsage = proxy.getResourceUsageInPercent();
+        proxy.getRoutingStats().recordSessionStart(40000, false);
+
+        Assert.assertEquals(proxy.getResourceUsageInPercent(), resourceUsage);
+        proxy.refreshResourceUsage(0);
+        Assert.assertTrue(proxy.getResourceUsageInPercent() > resourceUsage);
+    }
+
+    @Test
+    public void providerRunningAllItsSessionsIsFullyUsed() {
+        Registry registry = Registry.newInstance();
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30005,
+                CloudTestingRemoteProxy.class.getCanonicalName());
+        request.getCapabilities().clear();
+        request.addDesiredCapability(DesiredCapabilities.safari());
+        CloudTestingRemoteProxy.setMaxParallelSessions(request, 1);
+        CloudTestingRemoteProxy proxy = CloudTestingRemoteProxy.getNewInstance(request, registry);
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.SAFARI);
+
+        Assert.assertTrue(proxy.getResourceUsageInPercent() < 100);
+        Assert.assertNotNull(proxy.getNewSession(requestedCapability));
+        Assert.assertEquals(proxy.getResourceUsageInPercent(), 100f);
+    }
+
+    @Test
+    public void capabilitiesAreNotMatchedWhileTheCircuitIsOpen() {
+        Registry registry = Registry.newInstance();
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30003,
+                CloudTestingRemoteProxy.class.getCanonicalName());
+        request.getCapabilities().clear();
+        request.addDesiredCapability(DesiredCapabilities.safari());
+        CloudTestingRemoteProxy proxy = CloudTestingRemoteProxy.getNewInstance(request, registry);
+        proxy.setCircuitBreaker(new CloudProviderCircuitBreaker("test", 1, 60000));
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.SAFARI);
+        Assert.assertTrue(proxy.hasCapability(requestedCapability));
+
+        proxy.getCircuitBreaker().recordFailure();
+
+        Assert.assertFalse(proxy.hasCapability(requestedCapability));
+        Assert.assertNull(proxy.getNewSession(requestedCapability));
+    }
+
+    @Test
+    public void capabilitiesAreMatchedWhileATrialSessionRuns() {
+        Registry registry = Registry.newInstance();
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(30003,
+                CloudTestingRemoteProxy.class.getCanonicalName());
+        request.getCapabilities().clear();
+        request.addDesiredCapability(DesiredCapabilities.safari());
+        CloudTestingRemoteProxy proxy = CloudTestingRemoteProxy.getNewInstance(request, registry);
+        AtomicLong now = new AtomicLong();
+        proxy.setCircuitBreaker(new CloudProviderCircuitBreaker("test", 1, 60000, now::get));
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.SAFARI);
+
+        proxy.getCircuitBreaker().recordFailure();
+        now.addAndGet(60000);
+        Assert.assertNotNull(proxy.getNewSession(requestedCapability));
+
+        Assert.assertEquals(proxy.getCircuitBreaker().getState(), CloudProviderCircuitBreaker.State.HALF_OPEN);
+        Assert.assertTrue(proxy.hasCapability(requestedCapability));
+        Assert.assertNull(proxy.getNewSession(requestedCapability));
+    }
+
+    @Test
+    public void onlyServerErrorsAndTimeoutsCountAsFailedSessionStarts() {
+        Assert.assertEquals(CloudTestingRemoteProxy.getSessionStart(200, true),
+                CloudTestingRemoteProxy.SessionStart.STARTED);
+        Assert.assertEquals(CloudTestingRemoteProxy.getSessionStart(200, false),
+                CloudTestingRemoteProxy.SessionStart.FAILED);
+        Assert.assertEquals(CloudTestingRemoteProxy.getSessionStart(400, false),
+                CloudTestingRemoteProxy.SessionStart.REFUSED);
+        Assert.assertEquals(CloudTestingRemoteProxy.getSessionStart(401, false),
+                CloudTestingRemoteProxy.SessionStart.REFUSED);
+        Assert.assertEquals(CloudTestingRemoteProxy.getSessionStart(408, false),
+                CloudTestingRemoteProxy.SessionStart.FAILED);
+        Assert.assertEquals(CloudTestingRemoteProxy.getSessionStart(500, false),
+                CloudTestingRemoteProxy.SessionStart.FAILED);
+        Assert.assertEquals(CloudTestingRemoteProxy.getSessionStart(503, false),
+                CloudTestingRemoteProxy.SessionStart.FAILED);
+    }
+
 }
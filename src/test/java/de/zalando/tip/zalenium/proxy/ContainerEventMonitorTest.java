@@ -0,0 +1,87 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.container.ContainerSpec;
+import de.zalando.tip.zalenium.container.InMemoryContainerClient;
+import de.zalando.tip.zalenium.util.TestUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class ContainerEventMonitorTest {
+
+    @After
+    public void tearDown() {
+        DockerSeleniumRemoteProxy.restoreDockerClient();
+    }
+
+    @Test
+    public void nodeIsEvictedAndItsSessionEndedWhenItsContainerRunsOutOfMemory() throws Exception {
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        String containerId = containerClient.createContainer(ContainerSpec.builder().name("zalenium_40000")
+                .image("elgalu/selenium:latest").build());
+        containerClient.startContainer(containerId);
+        ContainerHostPool pool = ContainerHostPool.single(containerClient);
+        DockerSeleniumRemoteProxy.setContainerHostPool(pool);
+
+        Registry registry = Registry.newInstance();
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(40000,
+                DockerSeleniumRemoteProxy.class.getCanonicalName());
+        request.getCapabilities().clear();
+        request.addDesiredCapability(DesiredCapabilities.chrome());
+        DockerSeleniumRemoteProxy node = DockerSeleniumRemoteProxy.getNewInstance(request, registry);
+        registry.add(node);
+        new ContainerEventMonitor().start(pool, "elgalu/selenium", registry);
+
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        TestSession session = node.getNewSession(requestedCapability);
+        Assert.assertNotNull(session);
+        Assert.assertEquals(containerId, node.getContainerId());
+
+        containerClient.killOutOfMemory(containerId);
+
+        Assert.assertTrue(node.isContainerDead());
+        Assert.assertNull(session.getSlot().getSession());
+        Assert.assertFalse(registry.getAllProxies().contains(node));
+    }
+
+    @Test
+    public void containerStoppedByItsNodeIsNotReportedAsDead() throws Exception {
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        String containerId = containerClient.createContainer(ContainerSpec.builder().name("zalenium_40001")
+                .image("elgalu/selenium:latest").build());
+        containerClient.startContainer(containerId);
+        ContainerHostPool pool = ContainerHostPool.single(containerClient);
+        DockerSeleniumRemoteProxy.setContainerHostPool(pool);
+
+        Registry registry = Registry.newInstance();
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(40001,
+                DockerSeleniumRemoteProxy.class.getCanonicalName());
+        DockerSeleniumRemoteProxy node = DockerSeleniumRemoteProxy.getNewInstance(request, registry);
+        registry.add(node);
+        ContainerEventMonitor monitor = spy(new ContainerEventMonitor());
+        monitor.start(pool, "elgalu/selenium", registry);
+        Assert.assertEquals(containerId, node.getContainerId());
+
+        node.getDockerSeleniumNodePollerThread().shutdownNode("it was idle for too long");
+
+        verify(monitor).onEvent(any(), any(), any(), any());
+        Assert.assertTrue(node.isStopping());
+        Assert.assertFalse(node.isContainerDead());
+        Assert.assertFalse(registry.getAllProxies().contains(node));
+    }
+
+}
@@ -0,0 +1,129 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.container.ContainerClient;
+import de.zalando.tip.zalenium.container.ContainerException;
+import de.zalando.tip.zalenium.container.ContainerSpec;
+import de.zalando.tip.zalenium.container.InMemoryContainerClient;
+import de.zalando.tip.zalenium.util.Environment;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class ContainerHostPoolTest {
+
+    @Test
+    public void leastLoadedPlacementSpreadsTheNodes() {
+        ContainerHost small = remoteHost("10.0.0.2", 2);
+        ContainerHost big = remoteHost("10.0.0.3", 4);
+        ContainerHostPool pool = new ContainerHostPool(Arrays.asList(small, big),
+                ContainerHostPool.Placement.LEAST_LOADED);
+
+        for (int i = 0; i < 6; i++) {
+            Assert.assertNotNull(pool.place(10));
+        }
+
+        Assert.assertEquals(2, small.getRunningContainers());
+        Assert.assertEquals(4, big.getRunningContainers());
+        Assert.assertNull(pool.place(10));
+    }
+
+    @Test
+    public void binPackingPlacementFillsAHostFirst() {
+        ContainerHost first = remoteHost("10.0.0.2", 3);
+        ContainerHost second = remoteHost("10.0.0.3", 0);
+        ContainerHostPool pool = new ContainerHostPool(Arrays.asList(first, second),
+                ContainerHostPool.Placement.BIN_PACKING);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertSame(first, pool.place(5));
+        }
+
+        Assert.assertSame(second, pool.place(5));
+        Assert.assertSame(second, pool.place(5));
+    }
+
+    @Test
+    public void unreachableHostsGetNoNodes() throws Exception {
+        ContainerClient unreachable = mock(ContainerClient.class);
+        when(unreachable.listContainers()).thenThrow(new ContainerException("connection refused"));
+        ContainerHost down = new ContainerHost("tcp://10.0.0.2:2375", unreachable, "10.0.0.2", "10.0.0.1", 0, false);
+        ContainerHost up = remoteHost("10.0.0.3", 0);
+        ContainerHostPool pool = new ContainerHostPool(Arrays.asList(down, up),
+                ContainerHostPool.Placement.LEAST_LOADED);
+
+        Assert.assertEquals(0, pool.refresh("elgalu/selenium"));
+
+        Assert.assertFalse(down.isAvailable());
+        Assert.assertSame(up, pool.place(5));
+        Assert.assertSame(up, pool.forNodeHost("10.0.0.3"));
+    }
+
+    @Test
+    public void unavailableHostsAreNotPolledUntilTheirHealthCheckIsDue() throws Exception {
+        ContainerClient unreachable = mock(ContainerClient.class);
+        when(unreachable.listContainers()).thenThrow(new ContainerException("connection refused"));
+        ContainerHost down = new ContainerHost("tcp://10.0.0.2:2375", unreachable, "10.0.0.2", "10.0.0.1", 0, false);
+
+        down.refresh("elgalu/selenium");
+        int calls = mockingDetails(unreachable).getInvocations().size();
+        down.refresh("elgalu/selenium");
+
+        Assert.assertFalse(down.isAvailable());
+        Assert.assertEquals(calls, mockingDetails(unreachable).getInvocations().size());
+    }
+
+    @Test
+    public void backgroundRefreshCountsTheContainersOfEachHost() throws Exception {
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        String id = containerClient.createContainer(ContainerSpec.builder().name("zalenium_40000")
+                .image("elgalu/selenium:latest").build());
+        containerClient.startContainer(id);
+        ContainerHostPool pool = new ContainerHostPool(Collections.singletonList(new ContainerHost(
+                "tcp://10.0.0.2:2375", containerClient, "10.0.0.2", "10.0.0.1", 0, false)),
+                ContainerHostPool.Placement.LEAST_LOADED);
+
+        pool.start("elgalu/selenium");
+
+        await().atMost(2, SECONDS).until(() -> pool.getRunningContainers() == 1);
+    }
+
+    @Test
+    public void hostsAreReadFromTheEnvironment() {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(ContainerHostPool.ZALENIUM_DOCKER_HOSTS))
+                .thenReturn("unix:///var/run/docker.sock#4, tcp://10.0.0.2:2375#20");
+        when(environment.getEnvVariable(ContainerHostPool.ZALENIUM_DOCKER_PLACEMENT)).thenReturn("bin-packing");
+        when(environment.getEnvVariable(ContainerHostPool.ZALENIUM_HUB_HOST)).thenReturn("10.0.0.1");
+        when(environment.getStringEnvVariable(anyString(), anyString())).thenCallRealMethod();
+
+        ContainerHostPool pool = ContainerHostPool.fromEnvironment(environment);
+
+        Assert.assertEquals(ContainerHostPool.Placement.BIN_PACKING, pool.getPlacement());
+        Assert.assertEquals(2, pool.getHosts().size());
+        ContainerHost local = pool.getHosts().get(0);
+        Assert.assertEquals(4, local.getCapacity());
+        Assert.assertEquals("localhost", local.getNodeHost());
+        Assert.assertEquals(ContainerHost.LOCAL_NETWORK_MODE, local.getNetworkMode());
+        ContainerHost remote = pool.getHosts().get(1);
+        Assert.assertEquals(20, remote.getCapacity());
+        Assert.assertEquals("10.0.0.2", remote.getNodeHost());
+        Assert.assertEquals("10.0.0.1", remote.getHubHost());
+        Assert.assertEquals(ContainerHost.REMOTE_NETWORK_MODE, remote.getNetworkMode());
+    }
+
+    private static ContainerHost remoteHost(String address, int capacity) {
+        return new ContainerHost("tcp://" + address + ":2375", new InMemoryContainerClient(0, 0), address,
+                "10.0.0.1", capacity, false);
+    }
+
+}
@@ -0,0 +1,121 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.container.ContainerSpec;
+import de.zalando.tip.zalenium.container.ContainerStats;
+import de.zalando.tip.zalenium.container.InMemoryContainerClient;
+import de.zalando.tip.zalenium.container.ResourceProfile;
+import de.zalando.tip.zalenium.util.Environment;
+import de.zalando.tip.zalenium.util.TestUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ContainerLoadSamplerTest {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    @After
+    public void tearDown() {
+        ContainerLoadSampler.restore();
+    }
+
+    @Test
+    public void hostLoadAndContainerStatsAreSampled() throws Exception {
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        containerClient.setContainerStats(new ContainerStats(0.1, GB / 2, 2 * GB));
+        String id = containerClient.createContainer(ContainerSpec.builder().name("zalenium_40000")
+                .image("elgalu/selenium:latest").build());
+        containerClient.startContainer(id);
+        ContainerHostPool pool = ContainerHostPool.single(containerClient);
+        ContainerLoadSampler sampler = new ContainerLoadSampler(new Environment());
+
+        Assert.assertNull(sampler.getStats("localhost", "zalenium_40000"));
+        List<HostLoad> hostLoads = sampler.sample(pool, "elgalu/selenium");
+
+        Assert.assertEquals(1, hostLoads.size());
+        Assert.assertEquals(1, hostLoads.get(0).getRunningContainers());
+        Assert.assertEquals(0.25, hostLoads.get(0).getPressure(1, 1), 0.001);
+        Assert.assertEquals(GB / 2, sampler.getStats("LOCALHOST", "zalenium_40000").getMemoryUsageBytes());
+    }
+
+    @Test
+    public void memoryOfLimitedContainersIsComparedWithTheHostMemory() throws Exception {
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        containerClient.setContainerStats(new ContainerStats(0, GB, 2 * GB));
+        for (int port = 40000; port < 40004; port++) {
+            String id = containerClient.createContainer(ContainerSpec.builder().name("zalenium_" + port)
+                    .image("elgalu/selenium:latest").resources(new ResourceProfile(0, 0, 2 * GB, 0, 0)).build());
+            containerClient.startContainer(id);
+        }
+        ContainerHostPool pool = ContainerHostPool.single(containerClient);
+        ContainerLoadSampler sampler = new ContainerLoadSampler(new Environment());
+
+        // Without the host memory, the container closest to its own limit counts.
+        Assert.assertEquals(0.5, sampler.sample(pool, "elgalu/selenium").get(0).getPressure(1, 1), 0.001);
+
+        containerClient.setHostMemoryBytes(16 * GB);
+        HostLoad hostLoad = sampler.sample(pool, "elgalu/selenium").get(0);
+        Assert.assertEquals(4, hostLoad.getRunningContainers());
+        Assert.assertEquals(0.25, hostLoad.getPressure(1, 1), 0.001);
+    }
+
+    @Test
+    public void freeNodesReportTheLoadOfTheirContainer() throws Exception {
+        Registry registry = Registry.newInstance();
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(40000,
+                DockerSeleniumRemoteProxy.class.getCanonicalName());
+        DockerSeleniumRemoteProxy proxy = DockerSeleniumRemoteProxy.getNewInstance(request, registry);
+        registry.add(proxy);
+        Assert.assertEquals(0, proxy.getResourceUsageInPercent(), 0);
+
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        containerClient.setContainerStats(new ContainerStats(0.2, GB, 2 * GB));
+        String id = containerClient.createContainer(ContainerSpec.builder().name("zalenium_40000")
+                .image("elgalu/selenium:latest").build());
+        containerClient.startContainer(id);
+        ContainerLoadSampler sampler = new ContainerLoadSampler(new Environment());
+        sampler.sample(new ContainerHostPool(Collections.singletonList(
+                ContainerHost.local("local", containerClient, 0)), ContainerHostPool.Placement.LEAST_LOADED),
+                "elgalu/selenium");
+        ContainerLoadSampler.set(sampler);
+        ContainerLoadSampler.refreshNodes(registry.getAllProxies());
+
+        // Half of the container memory is in use, it is listed before the starter (90% and up)
+        Assert.assertEquals(44.5, proxy.getResourceUsageInPercent(), 0.01);
+    }
+
+    @Test
+    public void freeNodesAreSortedByTheSampledLoad() throws Exception {
+        Registry registry = Registry.newInstance();
+        DockerSeleniumRemoteProxy busyProxy = DockerSeleniumRemoteProxy.getNewInstance(TestUtils
+                .getRegistrationRequestForTesting(40000, DockerSeleniumRemoteProxy.class.getCanonicalName()), registry);
+        DockerSeleniumRemoteProxy idleProxy = DockerSeleniumRemoteProxy.getNewInstance(TestUtils
+                .getRegistrationRequestForTesting(40001, DockerSeleniumRemoteProxy.class.getCanonicalName()), registry);
+        registry.add(busyProxy);
+        registry.add(idleProxy);
+
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        containerClient.setContainerStats("zalenium_40000", new ContainerStats(0.6, GB, 2 * GB));
+        containerClient.setContainerStats("zalenium_40001", new ContainerStats(0.1, GB / 4, 2 * GB));
+        for (String name : new String[]{"zalenium_40000", "zalenium_40001"}) {
+            String id = containerClient.createContainer(ContainerSpec.builder().name(name)
+                    .image("elgalu/selenium:latest").build());
+            containerClient.startContainer(id);
+        }
+        ContainerLoadSampler sampler = new ContainerLoadSampler(new Environment());
+        ContainerLoadSampler.set(sampler);
+        sampler.sample(ContainerHostPool.single(containerClient), "elgalu/selenium");
+        ContainerLoadSampler.refreshNodes(registry.getAllProxies());
+
+        Assert.assertTrue(idleProxy.getResourceUsageInPercent() < busyProxy.getResourceUsageInPercent());
+        List<RemoteProxy> sorted = registry.getAllProxies().getSorted();
+        Assert.assertTrue(sorted.indexOf(idleProxy) < sorted.indexOf(busyProxy));
+    }
+
+}
@@ -0,0 +1,173 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import de.zalando.tip.zalenium.container.InMemoryContainerClient;
+import de.zalando.tip.zalenium.util.Environment;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class DockerApiExecutorTest {
+
+    private Environment environment;
+    private DockerApiExecutor executor;
+
+    @Before
+    public void setUp() {
+        environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(DockerApiExecutor.ZALENIUM_DOCKER_RETRIES)).thenReturn("2");
+        when(environment.getEnvVariable("ZALENIUM_DOCKER_LIST_TIMEOUT")).thenReturn("1");
+        when(environment.getEnvVariable("ZALENIUM_DOCKER_ARCHIVE_TIMEOUT")).thenReturn("1");
+        when(environment.getEnvVariable("ZALENIUM_DOCKER_ARCHIVE_CONCURRENCY")).thenReturn("1");
+        when(environment.getIntEnvVariable(anyString(), anyInt())).thenCallRealMethod();
+        executor = new DockerApiExecutor(environment);
+    }
+
+    @Test
+    public void idempotentCallsAreRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = executor.executeIdempotent(DockerApiExecutor.Operation.LIST, "listContainers", null, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new DockerException("daemon busy");
+            }
+            return "containers";
+        });
+
+        Assert.assertEquals("containers", result);
+        Assert.assertEquals(2, executor.getRetries(DockerApiExecutor.Operation.LIST));
+        Assert.assertEquals(2, executor.getFailures(DockerApiExecutor.Operation.LIST));
+    }
+
+    @Test
+    public void nonIdempotentCallsAreNotRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            executor.execute(DockerApiExecutor.Operation.LAUNCH, "createContainer", null, () -> {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("conflict");
+            });
+            Assert.fail("The failure should have been rethrown");
+        } catch (DockerException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        Assert.assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void wedgedCallTimesOutAndKeepsItsSlot() throws Exception {
+        CountDownLatch daemonAnswers = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        try {
+            executor.execute(DockerApiExecutor.Operation.ARCHIVE, "archiveContainer", "container", () -> {
+                while (daemonAnswers.getCount() > 0) {
+                    try {
+                        daemonAnswers.await();
+                    } catch (InterruptedException e) {
+                        // Like a blocked socket read, the call ignores the interruption.
+                    }
+                }
+                return null;
+            });
+            Assert.fail("The call should have timed out");
+        } catch (DockerException e) {
+            Assert.assertTrue(e.getMessage().contains("timed out"));
+        }
+
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        Assert.assertEquals(1, executor.getTimeouts(DockerApiExecutor.Operation.ARCHIVE));
+        Assert.assertEquals(1, executor.getInFlight(DockerApiExecutor.Operation.ARCHIVE));
+        // The bulkhead is full while the wedged call is still running, other operations are not affected.
+        try {
+            executor.execute(DockerApiExecutor.Operation.ARCHIVE, "archiveContainer", "container", () -> null);
+            Assert.fail("The call should have been rejected");
+        } catch (DockerException e) {
+            Assert.assertEquals(1, executor.getRejected(DockerApiExecutor.Operation.ARCHIVE));
+        }
+        Assert.assertEquals("ok", executor.execute(DockerApiExecutor.Operation.LIST, "listContainers", null,
+                () -> "ok"));
+
+        daemonAnswers.countDown();
+    }
+
+    @Test
+    public void callThatNeverStartedGivesItsSlotBack() throws Exception {
+        // A single worker that is busy, so the call stays queued until it times out.
+        ExecutorService workers = Executors.newSingleThreadExecutor();
+        CountDownLatch workerFree = new CountDownLatch(1);
+        workers.submit(() -> {
+            workerFree.await();
+            return null;
+        });
+        DockerApiExecutor queuedExecutor = new DockerApiExecutor(environment, workers);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        try {
+            queuedExecutor.execute(DockerApiExecutor.Operation.LIST, "listContainers", null, () -> {
+                ran.set(true);
+                return null;
+            });
+            Assert.fail("The call should have timed out");
+        } catch (DockerException e) {
+            Assert.assertTrue(e.getMessage().contains("timed out"));
+        }
+
+        Assert.assertEquals(0, queuedExecutor.getInFlight(DockerApiExecutor.Operation.LIST));
+        Assert.assertEquals(0, queuedExecutor.getCallsInFlight());
+        workerFree.countDown();
+        workers.shutdown();
+        Assert.assertTrue(workers.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertFalse(ran.get());
+        Assert.assertEquals(0, queuedExecutor.getInFlight(DockerApiExecutor.Operation.LIST));
+    }
+
+    @Test
+    public void eachHostHasItsOwnBulkheads() throws Exception {
+        ContainerHost wedgedHost = new ContainerHost("tcp://10.0.0.2:2375", new InMemoryContainerClient(0, 0),
+                "10.0.0.2", "10.0.0.1", 0, false);
+        ContainerHost otherHost = new ContainerHost("tcp://10.0.0.3:2375", new InMemoryContainerClient(0, 0),
+                "10.0.0.3", "10.0.0.1", 0, false);
+        CountDownLatch daemonAnswers = new CountDownLatch(1);
+
+        try {
+            executor.execute(wedgedHost, DockerApiExecutor.Operation.ARCHIVE, "archiveContainer", "container", () -> {
+                while (daemonAnswers.getCount() > 0) {
+                    try {
+                        daemonAnswers.await();
+                    } catch (InterruptedException e) {
+                        // Like a blocked socket read, the call ignores the interruption.
+                    }
+                }
+                return null;
+            });
+            Assert.fail("The call should have timed out");
+        } catch (DockerException e) {
+            Assert.assertTrue(e.getMessage().contains("timed out"));
+        }
+
+        // The bulkhead of the wedged host is full, the one of the other host is not.
+        Assert.assertEquals(1, executor.getInFlight(wedgedHost, DockerApiExecutor.Operation.ARCHIVE));
+        Assert.assertEquals("ok", executor.execute(otherHost, DockerApiExecutor.Operation.ARCHIVE,
+                "archiveContainer", "container", () -> "ok"));
+        Assert.assertEquals(0, executor.getRejected(DockerApiExecutor.Operation.ARCHIVE));
+
+        daemonAnswers.countDown();
+    }
+
+}
@@ -0,0 +1,58 @@
+package de.zalando.tip.zalenium.proxy;
+
+import com.spotify.docker.client.DefaultDockerClient;
+import de.zalando.tip.zalenium.util.Environment;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class DockerClientFactoryTest {
+
+    @Test
+    public void poolIsSizedToTheCallsAllowedInFlightByDefault() {
+        Environment environment = mockEnvironment();
+
+        DefaultDockerClient.Builder builder = DockerClientFactory.createBuilder(environment, 18);
+
+        Assert.assertEquals(18, builder.connectionPoolSize());
+        Assert.assertEquals(DockerClientFactory.DEFAULT_DOCKER_HOST, builder.uri().toString());
+        Assert.assertEquals(5000, builder.connectTimeoutMillis());
+        Assert.assertEquals(30000, builder.readTimeoutMillis());
+        Assert.assertNull(builder.dockerCertificates());
+    }
+
+    @Test
+    public void endpointPoolAndTimeoutsCanBeConfigured() {
+        Environment environment = mockEnvironment();
+        when(environment.getEnvVariable(DockerClientFactory.ZALENIUM_DOCKER_HOST)).thenReturn("tcp://docker:2375");
+        when(environment.getEnvVariable(DockerClientFactory.ZALENIUM_DOCKER_POOL_SIZE)).thenReturn("40");
+        when(environment.getEnvVariable(DockerClientFactory.ZALENIUM_DOCKER_READ_TIMEOUT)).thenReturn("0");
+
+        DefaultDockerClient.Builder builder = DockerClientFactory.createBuilder(environment, 18);
+
+        Assert.assertEquals(40, builder.connectionPoolSize());
+        Assert.assertEquals("tcp://docker:2375", builder.uri().toString());
+        Assert.assertEquals(0, builder.readTimeoutMillis());
+    }
+
+    @Test
+    public void defaultPoolCoversAllTheBulkheads() {
+        DockerApiExecutor executor = new DockerApiExecutor(mockEnvironment());
+
+        // 4 launch + 8 exec + 2 archive + 4 list + 2 stats calls
+        Assert.assertEquals(20, executor.getMaxCallsInFlight());
+    }
+
+    private static Environment mockEnvironment() {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getIntEnvVariable(anyString(), anyInt())).thenCallRealMethod();
+        when(environment.getStringEnvVariable(anyString(), anyString())).thenCallRealMethod();
+        return environment;
+    }
+
+}
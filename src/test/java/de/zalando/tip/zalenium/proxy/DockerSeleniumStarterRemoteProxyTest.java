@@ -4,8 +4,14 @@ import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
+import de.zalando.tip.zalenium.container.ContainerInfo;
+import de.zalando.tip.zalenium.container.ContainerSpec;
+import de.zalando.tip.zalenium.container.InMemoryContainerClient;
+import de.zalando.tip.zalenium.container.ResourceProfile;
 import de.zalando.tip.zalenium.util.CommonProxyUtilities;
+import de.zalando.tip.zalenium.util.DrainMode;
 import de.zalando.tip.zalenium.util.Environment;
+import de.zalando.tip.zalenium.util.StateStore;
 import de.zalando.tip.zalenium.util.TestUtils;
 import org.hamcrest.CoreMatchers;
 import org.junit.After;
@@ -14,20 +20,33 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.common.exception.GridException;
 import org.openqa.grid.internal.Registry;
 import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.web.servlet.handler.RequestType;
+import org.openqa.grid.web.servlet.handler.WebDriverRequest;
 import org.openqa.selenium.Platform;
 import org.openqa.selenium.remote.BrowserType;
 import org.openqa.selenium.remote.CapabilityType;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.times;
@@ -88,7 +107,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(nonSupportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, never()).startDockerSeleniumContainer(anyString());
+        verify(spyProxy, never()).startDockerSeleniumContainer(anyString(), any());
     }
 
     @Test
@@ -100,7 +119,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(nonSupportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, never()).startDockerSeleniumContainer(anyString());
+        verify(spyProxy, never()).startDockerSeleniumContainer(anyString(), any());
     }
 
     @Test
@@ -113,7 +132,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.CHROME);
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(eq(BrowserType.CHROME), anyString());
     }
 
     @Test
@@ -126,7 +145,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(supportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, times(1)).startDockerSeleniumContainer(BrowserType.FIREFOX);
+        verify(spyProxy, times(1)).startDockerSeleniumContainer(eq(BrowserType.FIREFOX), anyString());
     }
 
     @Test
@@ -137,7 +156,7 @@ public class DockerSeleniumStarterRemoteProxyTest {
         TestSession testSession = spyProxy.getNewSession(nonSupportedCapability);
 
         Assert.assertNull(testSession);
-        verify(spyProxy, never()).startDockerSeleniumContainer(anyString());
+        verify(spyProxy, never()).startDockerSeleniumContainer(anyString(), any());
     }
 
     /*
@@ -328,6 +347,79 @@ public class DockerSeleniumStarterRemoteProxyTest {
                 DockerSeleniumStarterRemoteProxy.getScreenWidth());
     }
 
+    @Test
+    public void containersAreNotCreatedBeyondTheMaximumWithTheInMemoryBackend() throws Exception {
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        DockerSeleniumStarterRemoteProxy.setContainerClient(containerClient);
+        DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(3);
+        try {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertTrue(spyProxy.startDockerSeleniumContainer(BrowserType.CHROME));
+            }
+            Assert.assertFalse(spyProxy.startDockerSeleniumContainer(BrowserType.FIREFOX));
+
+            List<ContainerInfo> containers = containerClient.listContainers();
+            Assert.assertEquals(3, containers.size());
+            for (ContainerInfo container : containers) {
+                Assert.assertTrue(container.getName().startsWith("zalenium_"));
+                Assert.assertTrue(containerClient.getSpec(container.getId()).isAutoRemove());
+                Assert.assertEquals(InMemoryContainerClient.RUNNING, container.getState());
+            }
+        } finally {
+            DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(-1);
+        }
+    }
+
+    @Test
+    public void nodesArePlacedOnSeveralHostsWiredToTheHub() throws Exception {
+        InMemoryContainerClient firstClient = new InMemoryContainerClient(0, 0);
+        InMemoryContainerClient secondClient = new InMemoryContainerClient(0, 0);
+        DockerSeleniumStarterRemoteProxy.setContainerHostPool(new ContainerHostPool(Arrays.asList(
+                new ContainerHost("tcp://10.0.0.2:2375", firstClient, "10.0.0.2", "10.0.0.1", 0, false),
+                new ContainerHost("tcp://10.0.0.3:2375", secondClient, "10.0.0.3", "10.0.0.1", 0, false)),
+                ContainerHostPool.Placement.LEAST_LOADED));
+        DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(10);
+        try {
+            for (int i = 0; i < 4; i++) {
+                Assert.assertTrue(spyProxy.startDockerSeleniumContainer(BrowserType.CHROME));
+            }
+
+            Assert.assertEquals(2, firstClient.listContainers().size());
+            Assert.assertEquals(2, secondClient.listContainers().size());
+            ContainerSpec spec = secondClient.getSpec(secondClient.listContainers().get(0).getId());
+            Assert.assertEquals(ContainerHost.REMOTE_NETWORK_MODE, spec.getNetworkMode());
+            Assert.assertTrue(spec.getEnv().contains("SELENIUM_NODE_HOST=10.0.0.3"));
+            Assert.assertTrue(spec.getEnv().contains("SELENIUM_HUB_HOST=10.0.0.1"));
+        } finally {
+            DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(-1);
+        }
+    }
+
+    @Test
+    public void containersAreCreatedWithTheResourceProfileOfTheirBrowser() throws Exception {
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        DockerSeleniumStarterRemoteProxy.setContainerClient(containerClient);
+        Map<String, ResourceProfile> profiles = new HashMap<>();
+        profiles.put(BrowserType.FIREFOX, ResourceProfile.parse("cpus=2,memory=2048,pids=256",
+                DockerSeleniumStarterRemoteProxy.DEFAULT_RESOURCE_PROFILE));
+        DockerSeleniumStarterRemoteProxy.setResourceProfiles(profiles);
+        try {
+            Assert.assertTrue(spyProxy.startDockerSeleniumContainer(BrowserType.FIREFOX));
+            Assert.assertTrue(spyProxy.startDockerSeleniumContainer(BrowserType.CHROME));
+
+            List<ContainerInfo> containers = containerClient.listContainers();
+            ResourceProfile firefox = containerClient.getSpec(containers.get(0).getId()).getResources();
+            Assert.assertEquals(200000, firefox.getCpuQuotaMicroseconds());
+            Assert.assertEquals(2048L * 1024 * 1024, firefox.getMemoryBytes());
+            Assert.assertEquals(256, firefox.getPidsLimit());
+            Assert.assertEquals(1073741824L, firefox.getShmSizeBytes());
+            Assert.assertSame(DockerSeleniumStarterRemoteProxy.DEFAULT_RESOURCE_PROFILE,
+                    containerClient.getSpec(containers.get(1).getId()).getResources());
+        } finally {
+            DockerSeleniumStarterRemoteProxy.setResourceProfiles(new HashMap<>());
+        }
+    }
+
     @Test
     public void useDockerSeleniumFallbackCapabilitiesWhenTheOnesFromGitHubAreNotAvailable() {
         // Mocking the utility class that fetches the json from a given url
@@ -357,4 +449,114 @@ public class DockerSeleniumStarterRemoteProxyTest {
         Assert.assertThat(request.getCapabilities().toString(), CoreMatchers.containsString(Platform.LINUX.name()));
     }
 
+    @Test
+    public void capabilitiesFetchedByThePreviousRunAreUsedOnStartup() {
+        DockerSeleniumStarterRemoteProxy.clearCapabilities();
+        StateStore.getDefault().put("docker-selenium/capabilities", "{\"caps\":[{\"BROWSER_NAME\":\"chrome\"," +
+                "\"PLATFORM\":\"LINUX\",\"VERSION\":\"56.0\"}]}");
+        CommonProxyUtilities commonProxyUtilities = mock(CommonProxyUtilities.class);
+        DockerSeleniumStarterRemoteProxy.setCommonProxyUtilities(commonProxyUtilities);
+
+        try {
+            RegistrationRequest request = DockerSeleniumStarterRemoteProxy.updateDSCapabilities(
+                    new RegistrationRequest(), DockerSeleniumStarterRemoteProxy.DOCKER_SELENIUM_CAPABILITIES_URL);
+
+            Assert.assertEquals(1, request.getCapabilities().size());
+            Assert.assertEquals("56.0", request.getCapabilities().get(0).getVersion());
+        } finally {
+            DockerSeleniumStarterRemoteProxy.clearCapabilities();
+            DockerSeleniumStarterRemoteProxy.restoreCommonProxyUtilities();
+        }
+    }
+
+    @Test
+    public void requestsAreRejectedWithARetryHintWhileTheGridDrains() throws IOException {
+        Map<String, Object> supportedCapability = new HashMap<>();
+        supportedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        supportedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        WebDriverRequest request = mock(WebDriverRequest.class);
+        when(request.getRequestType()).thenReturn(RequestType.START_SESSION);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                content.write(b);
+            }
+        });
+
+        DrainMode.start();
+        try {
+            TestSession testSession = spyProxy.getNewSession(supportedCapability);
+
+            Assert.assertNotNull(testSession);
+            verify(spyProxy, never()).startDockerSeleniumContainer(anyString(), any());
+            try {
+                spyProxy.beforeCommand(testSession, request, response);
+                Assert.fail("The new session request should have been rejected");
+            } catch (GridException e) {
+                verify(response).setStatus(503);
+                verify(response).setHeader("Retry-After", "60");
+                Assert.assertThat(content.toString("UTF-8"), CoreMatchers.containsString("\"DRAINING\""));
+            }
+        } finally {
+            DrainMode.restoreEnvironment();
+        }
+    }
+
+    @Test
+    public void saturatedRequestsWithoutAFreeSlotAreRejectedOnALaterPass() {
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        DockerSeleniumStarterRemoteProxy.setContainerClient(containerClient);
+        DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(1);
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(SaturationGuard.ZALENIUM_MAX_QUEUE_WAIT)).thenReturn("60");
+        when(environment.getIntEnvVariable(anyString(), anyInt())).thenCallRealMethod();
+        long now = System.currentTimeMillis();
+        // One session finished in the last 5 minutes, so the estimated wait is way over 60 seconds.
+        SaturationGuard saturationGuard = new SaturationGuard(environment, now - 5 * 60 * 1000);
+        saturationGuard.sessionFinished(now);
+        SaturationGuard.set(saturationGuard);
+        try {
+            Assert.assertTrue(spyProxy.startDockerSeleniumContainer(BrowserType.CHROME));
+
+            // The requests of one pass take the chrome slots of the starter until none is free.
+            List<TestSession> rejectedSessions = new ArrayList<>();
+            Map<String, Object> waitingRequest = newChromeRequest();
+            TestSession testSession = spyProxy.getNewSession(waitingRequest);
+            while (testSession != null && rejectedSessions.size() < 10) {
+                Assert.assertTrue(SessionRejection.isRejected(testSession));
+                rejectedSessions.add(testSession);
+                waitingRequest = newChromeRequest();
+                testSession = spyProxy.getNewSession(waitingRequest);
+            }
+            Assert.assertNull(testSession);
+            Assert.assertFalse(rejectedSessions.isEmpty());
+
+            rejectedSessions.get(0).getSlot().doFinishRelease();
+
+            Assert.assertTrue(SessionRejection.isRejected(spyProxy.getNewSession(waitingRequest)));
+            verify(spyProxy, times(1)).startDockerSeleniumContainer(anyString());
+        } finally {
+            SaturationGuard.restore();
+            DockerSeleniumStarterRemoteProxy.setMaxDockerSeleniumContainers(-1);
+        }
+    }
+
+    private static Map<String, Object> newChromeRequest() {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+        requestedCapability.put(CapabilityType.PLATFORM, Platform.LINUX);
+        return requestedCapability;
+    }
+
 }
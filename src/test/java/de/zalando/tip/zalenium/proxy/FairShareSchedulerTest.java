@@ -0,0 +1,88 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.util.Environment;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.grid.internal.TestSession;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class FairShareSchedulerTest {
+
+    @Test
+    public void idleCapacityIsBorrowedUntilAnotherTenantWaits() {
+        FairShareScheduler scheduler = createScheduler("team-a:3,team-b:1", "");
+        scheduler.setCapacity(4);
+
+        // Nobody else is waiting, so team-b borrows the whole grid
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(scheduler.mayStart("team-b", 0));
+            scheduler.started(mock(TestSession.class), "team-b");
+        }
+
+        // team-a is owed 3 of the 4 containers, team-b cannot start more until it is back within its share
+        scheduler.waiting("team-a", 1000);
+        Assert.assertTrue(scheduler.mayStart("team-a", 1000));
+        Assert.assertFalse(scheduler.mayStart("team-b", 1000));
+    }
+
+    @Test
+    public void tenantStopsWaitingOnceItIsBackAtItsShare() {
+        FairShareScheduler scheduler = createScheduler("", "");
+        scheduler.setCapacity(4);
+        for (int i = 0; i < 2; i++) {
+            scheduler.started(mock(TestSession.class), "team-b");
+        }
+
+        // team-a is owed 2 of the 4 containers
+        scheduler.waiting("team-a", 1000);
+        Assert.assertFalse(scheduler.mayStart("team-b", 1000));
+        scheduler.started(mock(TestSession.class), "team-a");
+        Assert.assertFalse(scheduler.mayStart("team-b", 1000));
+        scheduler.started(mock(TestSession.class), "team-a");
+
+        // team-a got its share, team-b can borrow idle capacity again right away
+        Assert.assertTrue(scheduler.mayStart("team-b", 1000));
+    }
+
+    @Test
+    public void tenantIsCappedEvenWhenTheGridIsIdle() {
+        FairShareScheduler scheduler = createScheduler("", "nightly:1");
+        scheduler.setCapacity(10);
+        TestSession session = mock(TestSession.class);
+
+        Assert.assertTrue(scheduler.mayStart("nightly", 0));
+        scheduler.started(session, "nightly");
+        Assert.assertFalse(scheduler.mayStart("nightly", 0));
+
+        scheduler.finished(session);
+        scheduler.finished(session);
+        Assert.assertEquals(0, scheduler.getRunningSessions("nightly"));
+        Assert.assertTrue(scheduler.mayStart("nightly", 0));
+    }
+
+    @Test
+    public void tenantIsTakenFromTheTeamOrTheBuild() {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        Assert.assertEquals(FairShareScheduler.DEFAULT_TENANT, FairShareScheduler.getTenant(requestedCapability));
+        requestedCapability.put(FairShareScheduler.BUILD_CAPABILITY, "checkout-1234");
+        Assert.assertEquals("checkout-1234", FairShareScheduler.getTenant(requestedCapability));
+        requestedCapability.put(FairShareScheduler.TENANT_CAPABILITY, "checkout");
+        Assert.assertEquals("checkout", FairShareScheduler.getTenant(requestedCapability));
+    }
+
+    private static FairShareScheduler createScheduler(String weights, String maxSessions) {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(FairShareScheduler.ZALENIUM_TENANT_WEIGHTS)).thenReturn(weights);
+        when(environment.getEnvVariable(FairShareScheduler.ZALENIUM_TENANT_MAX_SESSIONS)).thenReturn(maxSessions);
+        when(environment.getStringEnvVariable(anyString(), anyString())).thenCallRealMethod();
+        return new FairShareScheduler(environment);
+    }
+
+}
@@ -0,0 +1,99 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.util.Environment;
+import de.zalando.tip.zalenium.util.TestUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.grid.common.RegistrationRequest;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class IdleNodeReaperTest {
+
+    private IdleNodeReaper reaper;
+    private Registry registry;
+
+    @Before
+    public void setUp() {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(IdleNodeReaper.ZALENIUM_IDLE_TIMEOUT)).thenReturn("60");
+        when(environment.getEnvVariable("ZALENIUM_CHROME_MIN_IDLE_NODES")).thenReturn("1");
+        when(environment.getIntEnvVariable(anyString(), anyInt())).thenCallRealMethod();
+        reaper = new IdleNodeReaper(environment);
+        registry = Registry.newInstance();
+    }
+
+    @Test
+    public void idleNodesAreRetiredDownToTheFloorOfTheirBrowser() {
+        DockerSeleniumRemoteProxy firstChrome = createNode(40000, DesiredCapabilities.chrome());
+        DockerSeleniumRemoteProxy secondChrome = createNode(40001, DesiredCapabilities.chrome());
+        DockerSeleniumRemoteProxy firefox = createNode(40002, DesiredCapabilities.firefox());
+        List<RemoteProxy> nodes = Arrays.asList(firstChrome, secondChrome, firefox);
+
+        idleFor(firstChrome, 30000);
+        Assert.assertFalse(reaper.tryRetire(firstChrome, nodes));
+        idleFor(firstChrome, 61000);
+        idleFor(secondChrome, 61000);
+        idleFor(firefox, 61000);
+        Assert.assertTrue(reaper.tryRetire(firstChrome, nodes));
+        // One Chrome node is kept warm, Firefox has no floor
+        Assert.assertFalse(reaper.tryRetire(secondChrome, nodes));
+        Assert.assertTrue(reaper.tryRetire(firefox, nodes));
+    }
+
+    @Test
+    public void nodeThatJustGotASessionIsNotRetired() {
+        DockerSeleniumRemoteProxy chrome = createNode(40000, DesiredCapabilities.chrome());
+        idleFor(chrome, 61000);
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+
+        TestSession session = chrome.getNewSession(requestedCapability);
+        // The reaper may still look at the node as idle while the session is handed over.
+        session.getSlot().doFinishRelease();
+
+        Assert.assertFalse(chrome.retire(reaper.getIdleTimeoutMillis(BrowserType.CHROME)));
+        Assert.assertFalse(chrome.isRetired());
+    }
+
+    @Test
+    public void retiredNodesTakeNoSessions() {
+        DockerSeleniumRemoteProxy chrome = createNode(40000, DesiredCapabilities.chrome());
+        Assert.assertTrue(chrome.retire(0));
+
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put(CapabilityType.BROWSER_NAME, BrowserType.CHROME);
+
+        Assert.assertNull(chrome.getNewSession(requestedCapability));
+        Assert.assertEquals(0, chrome.getAmountOfExecutedTests());
+    }
+
+    private static void idleFor(DockerSeleniumRemoteProxy node, long idleMillis) {
+        node.setLastActivityMillis(System.currentTimeMillis() - idleMillis);
+    }
+
+    private DockerSeleniumRemoteProxy createNode(int port, DesiredCapabilities capabilities) {
+        RegistrationRequest request = TestUtils.getRegistrationRequestForTesting(port,
+                DockerSeleniumRemoteProxy.class.getCanonicalName());
+        request.getCapabilities().clear();
+        request.addDesiredCapability(capabilities);
+        return DockerSeleniumRemoteProxy.getNewInstance(request, registry);
+    }
+
+}
@@ -0,0 +1,94 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.container.ContainerException;
+import de.zalando.tip.zalenium.container.ContainerInfo;
+import de.zalando.tip.zalenium.container.ContainerSpec;
+import de.zalando.tip.zalenium.container.InMemoryContainerClient;
+import de.zalando.tip.zalenium.util.Environment;
+import de.zalando.tip.zalenium.util.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openqa.grid.internal.Registry;
+import org.openqa.grid.internal.RemoteProxy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class OrphanContainerCollectorTest {
+
+    private static final String IMAGE = "elgalu/selenium";
+
+    @Test
+    public void containersWithoutANodeAreStoppedAfterTheGracePeriod() throws Exception {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(OrphanContainerCollector.ZALENIUM_ORPHAN_GRACE_PERIOD)).thenReturn("60");
+        when(environment.getIntEnvVariable(anyString(), anyInt())).thenCallRealMethod();
+        OrphanContainerCollector collector = new OrphanContainerCollector(environment);
+
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        String registered = startContainer(containerClient, "zalenium_40000", IMAGE + ":latest");
+        String orphan = startContainer(containerClient, "zalenium_40001", IMAGE + ":latest");
+        String adopted = startContainer(containerClient, "zalenium_40002", IMAGE + ":latest");
+        String unrelated = startContainer(containerClient, "zalenium_40003", "nginx:latest");
+        ContainerHostPool pool = ContainerHostPool.single(containerClient);
+
+        Registry registry = Registry.newInstance();
+        List<RemoteProxy> proxies = new ArrayList<>();
+        proxies.add(createNode(40000, registry));
+
+        Assert.assertEquals(0, collector.collect(pool, IMAGE, proxies, 0));
+        // The node of the third container registers with the new hub within the grace period
+        proxies.add(createNode(40002, registry));
+        Assert.assertEquals(1, collector.collect(pool, IMAGE, proxies, 61000));
+
+        Assert.assertFalse(isExited(containerClient, registered));
+        Assert.assertTrue(isExited(containerClient, orphan));
+        Assert.assertFalse(isExited(containerClient, adopted));
+        Assert.assertFalse(isExited(containerClient, unrelated));
+    }
+
+    @Test
+    public void containersLaunchedByThePreviousHubAreCollectedRightAway() throws Exception {
+        OrphanContainerCollector collector = new OrphanContainerCollector(new Environment());
+        InMemoryContainerClient containerClient = new InMemoryContainerClient(0, 0);
+        String orphan = startContainer(containerClient, "zalenium_40001", IMAGE + ":latest");
+        ContainerHostPool pool = ContainerHostPool.single(containerClient);
+        ContainerHost host = pool.getHosts().get(0);
+        long now = System.currentTimeMillis();
+        ContainerRecords.launched(host, "zalenium_40001", "chrome", 40001, null, now - 610000, now - 600000);
+        ContainerRecords.launched(host, "zalenium_40002", "chrome", 40002, null, now - 610000, now - 600000);
+
+        Assert.assertEquals(1, collector.collect(pool, IMAGE, new ArrayList<>(), now));
+
+        Assert.assertTrue(isExited(containerClient, orphan));
+        Assert.assertTrue(ContainerRecords.getLaunchTimes(host).isEmpty());
+    }
+
+    private static String startContainer(InMemoryContainerClient containerClient, String name, String image)
+            throws ContainerException {
+        String id = containerClient.createContainer(ContainerSpec.builder().name(name).image(image).build());
+        containerClient.startContainer(id);
+        return id;
+    }
+
+    private static DockerSeleniumRemoteProxy createNode(int port, Registry registry) {
+        return DockerSeleniumRemoteProxy.getNewInstance(TestUtils.getRegistrationRequestForTesting(port,
+                DockerSeleniumRemoteProxy.class.getCanonicalName()), registry);
+    }
+
+    private static boolean isExited(InMemoryContainerClient containerClient, String containerId) {
+        for (ContainerInfo container : containerClient.listContainers()) {
+            if (container.getId().equals(containerId)) {
+                return container.isExited();
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,68 @@
+package de.zalando.tip.zalenium.proxy;
+
+import de.zalando.tip.zalenium.util.Environment;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class SaturationGuardTest {
+
+    @Test
+    public void requestIsRejectedWhenTheEstimatedWaitIsOverTheBudget() {
+        SaturationGuard guard = createGuard("60", null);
+        // 10 sessions in 5 minutes, one every 30 seconds
+        for (int i = 1; i <= 10; i++) {
+            guard.sessionFinished(i * 30000);
+        }
+        long now = 300000;
+
+        Assert.assertNull(guard.judge(newRequest(), true, 2, now));
+        SessionRejection rejection = guard.judge(newRequest(), true, 3, now);
+        Assert.assertNotNull(rejection);
+        Assert.assertEquals(SessionRejection.Reason.SATURATED, rejection.getReason());
+        Assert.assertEquals(90, rejection.getRetryAfterSeconds());
+    }
+
+    @Test
+    public void requestIsJudgedUntilItIsAccepted() {
+        SaturationGuard guard = createGuard(null, "2");
+        Map<String, Object> accepted = newRequest();
+        Map<String, Object> rejected = newRequest();
+
+        Assert.assertNull(guard.judge(accepted, false, 5, 0));
+        Assert.assertNull(guard.judge(accepted, true, 5, 0));
+        Assert.assertNotNull(guard.judge(rejected, true, 5, 0));
+        Assert.assertNotNull(guard.judge(rejected, true, 5, 0));
+    }
+
+    @Test
+    public void nothingIsRejectedWithoutABudget() {
+        SaturationGuard guard = createGuard(null, null);
+
+        Assert.assertFalse(guard.isEnabled());
+        Assert.assertNull(guard.judge(newRequest(), true, 1000, 0));
+    }
+
+    private static Map<String, Object> newRequest() {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put("browserName", "chrome");
+        return requestedCapability;
+    }
+
+    private static SaturationGuard createGuard(String maxQueueWait, String maxQueueDepth) {
+        Environment environment = mock(Environment.class, withSettings().useConstructor());
+        when(environment.getEnvVariable(SaturationGuard.ZALENIUM_MAX_QUEUE_WAIT)).thenReturn(maxQueueWait);
+        when(environment.getEnvVariable(SaturationGuard.ZALENIUM_MAX_QUEUE_DEPTH)).thenReturn(maxQueueDepth);
+        when(environment.getIntEnvVariable(anyString(), anyInt())).thenCallRealMethod();
+        return new SaturationGuard(environment, 0);
+    }
+
+}
@@ -20,6 +20,7 @@ import org.openqa.grid.web.servlet.handler.WebDriverRequest;
 import org.openqa.selenium.Platform;
 import org.openqa.selenium.remote.BrowserType;
 import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -172,6 +173,12 @@ public class SauceLabsRemoteProxyTest {
 
             // Now the capabilities should be filled even if the url was not fetched
             Assert.assertFalse(request.getCapabilities().isEmpty());
+            // And each of them is limited to the parallel sessions of the whole node
+            Object maxSession = request.getConfiguration().get(RegistrationRequest.MAX_SESSION);
+            Assert.assertNotNull(maxSession);
+            for (DesiredCapabilities desiredCapabilities : request.getCapabilities()) {
+                Assert.assertEquals(desiredCapabilities.getCapability(RegistrationRequest.MAX_INSTANCES), maxSession);
+            }
         } finally {
             SauceLabsRemoteProxy.restoreCommonProxyUtilities();
         }
@@ -219,7 +226,7 @@ public class SauceLabsRemoteProxyTest {
             testSession.getSlot().doFinishRelease();
             sauceLabsProxy.afterCommand(testSession, webDriverRequest, response);
 
-            verify(gaSpy, times(1)).testEvent(anyString(), anyString(), anyLong());
+            verify(gaSpy, times(1)).testEvent(anyString(), anyString(), anyLong(), anyString());
         } finally {
             SauceLabsRemoteProxy.restoreGa();
         }
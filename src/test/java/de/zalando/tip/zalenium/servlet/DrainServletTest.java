@@ -0,0 +1,65 @@
+package de.zalando.tip.zalenium.servlet;
+
+import de.zalando.tip.zalenium.util.DrainMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.grid.internal.Registry;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DrainServletTest {
+
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private StringWriter responseContent;
+
+    @Before
+    public void setUp() throws IOException {
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        responseContent = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseContent));
+    }
+
+    @After
+    public void tearDown() {
+        DrainMode.restoreEnvironment();
+    }
+
+    @Test
+    public void drainIsStartedAndStoppedThroughPost() throws IOException {
+        drain servlet = new drain(Registry.newInstance());
+
+        servlet.doPost(request, response);
+
+        assertTrue(DrainMode.isDraining());
+        assertThat(responseContent.toString(), containsString("\"draining\":true"));
+        assertThat(responseContent.toString(), containsString("\"drained\":true"));
+
+        when(request.getParameter("enabled")).thenReturn("false");
+        servlet.doPost(request, response);
+
+        assertFalse(DrainMode.isDraining());
+    }
+
+    @Test
+    public void statusIsShownWithoutChangingTheMode() throws IOException {
+        new drain(Registry.newInstance()).doGet(request, response);
+
+        assertFalse(DrainMode.isDraining());
+        assertThat(responseContent.toString(), containsString("\"queuedRequests\":0"));
+    }
+
+}
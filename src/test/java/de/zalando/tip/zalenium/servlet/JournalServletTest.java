@@ -0,0 +1,62 @@
+package de.zalando.tip.zalenium.servlet;
+
+import de.zalando.tip.zalenium.util.LifecycleJournal;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JournalServletTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private StringWriter responseContent;
+
+    @Before
+    public void setUp() throws IOException {
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        responseContent = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseContent));
+    }
+
+    @Test
+    public void journalEntriesAreListed() throws IOException {
+        LifecycleJournal lifecycleJournal = new LifecycleJournal(temporaryFolder.getRoot().toPath()
+                .resolve("journal.bin"), 16);
+        lifecycleJournal.append(LifecycleJournal.Event.CONTAINER_STARTED, "zalenium_40000", 40000);
+        lifecycleJournal.append(LifecycleJournal.Event.NODE_REGISTERED, "http://localhost:40001", 40001);
+        when(request.getParameter("subject")).thenReturn("40001");
+
+        new journal(lifecycleJournal).doGet(request, response);
+
+        verify(response).setStatus(200);
+        assertThat(responseContent.toString(), containsString("NODE_REGISTERED http://localhost:40001 40001"));
+        assertThat(responseContent.toString(), not(containsString("CONTAINER_STARTED")));
+    }
+
+    @Test
+    public void disabledJournalIsReported() throws IOException {
+        new journal(null).doGet(request, response);
+
+        verify(response).setStatus(404);
+        assertThat(responseContent.toString(), containsString("disabled"));
+    }
+
+}
@@ -102,6 +102,7 @@ public class LiveNodeServletTest {
         assertThat(responseContent, containsString("http://localhost:5555/proxy/50000/?nginx=50000&view_only=false'"));
         assertThat(responseContent, containsString("http://localhost:5555/proxy/50001/?nginx=50001&view_only=true'"));
         assertThat(responseContent, containsString("http://localhost:5555/proxy/50001/?nginx=50001&view_only=false'"));
+        assertThat(responseContent, containsString("resources : unlimited CPUs, unlimited memory, 1024 MB shm"));
     }
 
     @Test
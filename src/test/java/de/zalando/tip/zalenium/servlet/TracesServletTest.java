@@ -0,0 +1,68 @@
+package de.zalando.tip.zalenium.servlet;
+
+import de.zalando.tip.zalenium.util.SessionTrace;
+import de.zalando.tip.zalenium.util.SessionTracing;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TracesServletTest {
+
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private StringWriter responseContent;
+    private SessionTracing sessionTracing;
+    private SessionTrace trace;
+
+    @Before
+    public void setUp() throws IOException {
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        responseContent = new StringWriter();
+        when(response.getWriter()).thenReturn(new PrintWriter(responseContent));
+        sessionTracing = new SessionTracing(10, null);
+        trace = sessionTracing.traceFor(new HashMap<>());
+        trace.startSpan(SessionTracing.CONTAINER_LAUNCH).end();
+    }
+
+    @Test
+    public void recentTracesAreListed() throws IOException {
+        new traces(sessionTracing).doGet(request, response);
+
+        verify(response).setStatus(200);
+        assertThat(responseContent.toString(), containsString("?id=" + trace.getTraceId()));
+    }
+
+    @Test
+    public void traceIsShownAsWaterfall() throws IOException {
+        when(request.getParameter("id")).thenReturn(trace.getTraceId());
+
+        new traces(sessionTracing).doGet(request, response);
+
+        verify(response).setStatus(200);
+        assertThat(responseContent.toString(), containsString(SessionTracing.QUEUE_WAIT));
+        assertThat(responseContent.toString(), containsString(SessionTracing.CONTAINER_LAUNCH));
+    }
+
+    @Test
+    public void unknownTraceIsNotFound() throws IOException {
+        when(request.getParameter("id")).thenReturn("unknown");
+
+        new traces(sessionTracing).doGet(request, response);
+
+        verify(response).setStatus(404);
+    }
+
+}
@@ -0,0 +1,53 @@
+package de.zalando.tip.zalenium.util;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/*
+    Only compiled with the jfr-events profile, like the event types.
+ */
+public class FlightRecorderEventTypesTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void restoreEvents() {
+        FlightRecorderEvents.setEnabled(true);
+    }
+
+    @Test
+    public void eventsAreCommittedWhileRecording() throws IOException {
+        Assume.assumeTrue(FlightRecorder.isAvailable());
+        FlightRecorderEvents.setEnabled(true);
+        Path recordingFile = temporaryFolder.getRoot().toPath().resolve("zalenium.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("de.zalando.tip.zalenium.VideoCopy");
+            recording.start();
+            FlightRecorderEvents.videoCopy("container-id").setCount(2).setBytes(1024).end(true);
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getString("containerId"), is("container-id"));
+        assertThat(events.get(0).getInt("files"), is(2));
+        assertThat(events.get(0).getLong("bytes"), is(1024L));
+    }
+
+}
@@ -0,0 +1,24 @@
+package de.zalando.tip.zalenium.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FlightRecorderEventsTest {
+
+    @After
+    public void restoreEvents() {
+        FlightRecorderEvents.setEnabled(true);
+    }
+
+    @Test
+    public void nothingIsCreatedWhenDisabled() {
+        FlightRecorderEvents.setEnabled(false);
+
+        assertThat(FlightRecorderEvents.dockerApiCall("listContainers", null) == FlightRecorderEvents.Timing.NONE,
+                is(true));
+    }
+
+}
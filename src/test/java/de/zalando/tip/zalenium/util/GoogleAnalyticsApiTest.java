@@ -0,0 +1,130 @@
+package de.zalando.tip.zalenium.util;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.util.EntityUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GoogleAnalyticsApiTest {
+
+    private Environment env;
+    private HttpClient httpClient;
+    private GoogleAnalyticsDispatcher dispatcher;
+    private GoogleAnalyticsApi ga;
+
+    @Before
+    public void setUp() throws IOException {
+        env = mock(Environment.class);
+        when(env.getBooleanEnvVariable("ZALENIUM_SEND_ANONYMOUS_USAGE_INFO", false)).thenReturn(true);
+        when(env.getStringEnvVariable("ZALENIUM_GA_API_VERSION", "")).thenReturn("1");
+        when(env.getStringEnvVariable("ZALENIUM_GA_TRACKING_ID", "")).thenReturn("UA-88441352");
+        when(env.getStringEnvVariable("ZALENIUM_GA_ENDPOINT", "")).thenReturn("https://www.google-analytics.com/collect");
+        when(env.getStringEnvVariable("ZALENIUM_GA_ANONYMOUS_CLIENT_ID", "")).thenReturn("RANDOM_STRING");
+        httpClient = mock(HttpClient.class);
+        when(httpClient.execute(any(HttpPost.class))).thenReturn(mock(HttpResponse.class));
+        dispatcher = new GoogleAnalyticsDispatcher(3, false);
+        ga = new GoogleAnalyticsApi();
+        ga.setEnv(env);
+        ga.setHttpClient(httpClient);
+        ga.setDispatcher(dispatcher);
+        ga.setTelemetrySink(TelemetrySink.NO_OP);
+    }
+
+    @Test
+    public void singleHitIsSentToTheCollectEndpoint() throws IOException {
+        ga.testEvent("proxy", "{browserName=chrome}", 10, TelemetryEvent.OUTCOME_COMPLETED);
+        dispatcher.sendQueuedHits();
+
+        ArgumentCaptor<HttpPost> httpPost = ArgumentCaptor.forClass(HttpPost.class);
+        verify(httpClient, times(1)).execute(httpPost.capture());
+        Assert.assertEquals("https://www.google-analytics.com/collect", httpPost.getValue().getURI().toString());
+        Assert.assertEquals("v=1&tid=UA-88441352&cid=RANDOM_STRING&t=event&ec=test&ea=proxy&el={browserName=chrome}" +
+                "&ev=10", EntityUtils.toString(httpPost.getValue().getEntity()));
+    }
+
+    @Test
+    public void queuedHitsAreSentInOneBatch() throws IOException {
+        ga.trackException(new IllegalStateException("first"));
+        ga.trackException(new IllegalStateException("second"));
+        dispatcher.sendQueuedHits();
+
+        ArgumentCaptor<HttpPost> httpPost = ArgumentCaptor.forClass(HttpPost.class);
+        verify(httpClient, times(1)).execute(httpPost.capture());
+        Assert.assertEquals("https://www.google-analytics.com/batch", httpPost.getValue().getURI().toString());
+        String body = EntityUtils.toString(httpPost.getValue().getEntity());
+        Assert.assertEquals(2, body.split("\n").length);
+        Assert.assertTrue(body.contains("exd=first") && body.contains("exd=second"));
+    }
+
+    @Test
+    public void hitsAreDroppedWhenTheQueueIsFull() {
+        for (int i = 0; i < 5; i++) {
+            ga.trackException(new IllegalStateException("storm " + i));
+        }
+
+        Assert.assertEquals(3, dispatcher.getQueuedHits());
+        Assert.assertEquals(2, dispatcher.getDroppedHits());
+    }
+
+    @Test
+    public void configurationIsReadOnce() {
+        ga.trackException(new IllegalStateException("first"));
+        ga.trackException(new IllegalStateException("second"));
+
+        verify(env, times(1)).getStringEnvVariable("ZALENIUM_GA_ENDPOINT", "");
+    }
+
+    @Test
+    public void nothingIsQueuedWhenTrackingIsDisabled() throws IOException {
+        when(env.getBooleanEnvVariable("ZALENIUM_SEND_ANONYMOUS_USAGE_INFO", false)).thenReturn(false);
+        ga.setEnv(env);
+
+        ga.trackException(new IllegalStateException("not sent"));
+        dispatcher.sendQueuedHits();
+
+        Assert.assertEquals(0, dispatcher.getQueuedHits());
+        verify(httpClient, never()).execute(any(HttpPost.class));
+    }
+
+    @Test
+    public void eventsAreRecordedLocallyEvenWhenTrackingIsDisabled() {
+        when(env.getBooleanEnvVariable("ZALENIUM_SEND_ANONYMOUS_USAGE_INFO", false)).thenReturn(false);
+        ga.setEnv(env);
+        TelemetrySink telemetrySink = mock(TelemetrySink.class);
+        ga.setTelemetrySink(telemetrySink);
+
+        ga.testEvent("proxy", "{browserName=chrome}", 10, TelemetryEvent.OUTCOME_COMPLETED);
+        ga.trackException(new IllegalStateException("recorded"));
+
+        verify(telemetrySink, times(2)).record(any(TelemetryEvent.class));
+        Assert.assertEquals(0, dispatcher.getQueuedHits());
+    }
+
+    @Test
+    public void sessionOutcomeIsRecordedLocally() {
+        TelemetrySink telemetrySink = mock(TelemetrySink.class);
+        ga.setTelemetrySink(telemetrySink);
+
+        ga.testEvent("proxy", "{browserName=chrome}", 10, TelemetryEvent.getSessionOutcome(500));
+
+        ArgumentCaptor<TelemetryEvent> event = ArgumentCaptor.forClass(TelemetryEvent.class);
+        verify(telemetrySink).record(event.capture());
+        Assert.assertEquals(TelemetryEvent.OUTCOME_FAILED, event.getValue().getOutcome());
+    }
+
+}
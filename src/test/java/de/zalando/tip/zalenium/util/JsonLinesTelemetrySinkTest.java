@@ -0,0 +1,86 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JsonLinesTelemetrySinkTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void eventsAreWrittenAsJsonLines() throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve("telemetry/events.jsonl");
+        JsonLinesTelemetrySink sink = new JsonLinesTelemetrySink(file, 10, 1024 * 1024, 3, false);
+
+        sink.record(TelemetryEvent.session("DockerSeleniumRemoteProxy", "{browserName=chrome}", 42,
+                TelemetryEvent.OUTCOME_COMPLETED));
+        sink.record(TelemetryEvent.exception(new IllegalStateException("docker is gone")));
+        sink.flush();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Assert.assertEquals(2, lines.size());
+        JsonObject session = new JsonParser().parse(lines.get(0)).getAsJsonObject();
+        Assert.assertEquals("SESSION", session.get("type").getAsString());
+        Assert.assertEquals("{browserName=chrome}", session.get("capabilities").getAsString());
+        Assert.assertEquals(42, session.get("durationSeconds").getAsLong());
+        Assert.assertEquals("COMPLETED", session.get("outcome").getAsString());
+        JsonObject exception = new JsonParser().parse(lines.get(1)).getAsJsonObject();
+        Assert.assertEquals(IllegalStateException.class.getName(), exception.get("exceptionClass").getAsString());
+    }
+
+    @Test
+    public void oldestEventsAreOverwrittenWhenTheBufferIsFull() throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve("events.jsonl");
+        JsonLinesTelemetrySink sink = new JsonLinesTelemetrySink(file, 2, 1024 * 1024, 3, false);
+
+        for (int i = 0; i < 5; i++) {
+            sink.record(TelemetryEvent.session("proxy" + i, "{}", i, TelemetryEvent.OUTCOME_COMPLETED));
+        }
+        sink.flush();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Assert.assertEquals(2, lines.size());
+        Assert.assertTrue(lines.get(0).contains("proxy3"));
+        Assert.assertTrue(lines.get(1).contains("proxy4"));
+        Assert.assertEquals(3, sink.getOverwrittenEvents());
+    }
+
+    @Test
+    public void fileIsRotatedWhenItReachesTheMaximumSize() throws IOException {
+        Path file = temporaryFolder.getRoot().toPath().resolve("events.jsonl");
+        JsonLinesTelemetrySink sink = new JsonLinesTelemetrySink(file, 10, 150, 2, false);
+
+        for (int i = 0; i < 4; i++) {
+            sink.record(TelemetryEvent.session("proxy" + i, "{}", i, TelemetryEvent.OUTCOME_COMPLETED));
+            sink.flush();
+        }
+
+        Assert.assertTrue(Files.exists(file.resolveSibling("events.jsonl.1")));
+        Assert.assertFalse(Files.exists(file.resolveSibling("events.jsonl.2")));
+        Assert.assertTrue(Files.size(file) <= 150);
+        Assert.assertTrue(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains("proxy3"));
+    }
+
+    @Test
+    public void sinkIsDisabledWithoutFile() {
+        Environment env = mock(Environment.class);
+        when(env.getStringEnvVariable(JsonLinesTelemetrySink.ZALENIUM_TELEMETRY_FILE, "")).thenReturn("");
+
+        Assert.assertSame(TelemetrySink.NO_OP, JsonLinesTelemetrySink.fromEnvironment(env));
+    }
+
+}
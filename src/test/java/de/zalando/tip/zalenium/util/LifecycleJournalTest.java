@@ -0,0 +1,98 @@
+package de.zalando.tip.zalenium.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class LifecycleJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void entriesAreReadInTheOrderTheyWereAppended() throws IOException {
+        LifecycleJournal journal = new LifecycleJournal(journalFile(), 16);
+        long before = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+        journal.append(LifecycleJournal.Event.CONTAINER_CREATED, "zalenium_40000", 40000);
+        journal.append(LifecycleJournal.Event.NODE_REGISTERED, "http://localhost:40000", 40000);
+        journal.append(LifecycleJournal.Event.SESSION_STARTED, "http://localhost:40000", 1);
+
+        List<LifecycleJournal.Entry> entries = journal.read(10, null);
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals(LifecycleJournal.Event.CONTAINER_CREATED, entries.get(0).getEvent());
+        Assert.assertEquals("zalenium_40000", entries.get(0).getSubject());
+        Assert.assertEquals(40000, entries.get(0).getValue());
+        Assert.assertEquals(LifecycleJournal.Event.SESSION_STARTED, entries.get(2).getEvent());
+        Assert.assertTrue(entries.get(0).getEpochNanos() >= before - TimeUnit.MILLISECONDS.toNanos(1));
+        Assert.assertTrue(entries.get(0).getEpochNanos() <= entries.get(2).getEpochNanos());
+    }
+
+    @Test
+    public void oldestEntriesAreOverwrittenWhenTheJournalIsFull() throws IOException {
+        LifecycleJournal journal = new LifecycleJournal(journalFile(), 4);
+
+        for (int i = 0; i < 10; i++) {
+            journal.append(LifecycleJournal.Event.SESSION_STARTED, "node", i);
+        }
+
+        List<LifecycleJournal.Entry> entries = journal.read(100, null);
+        Assert.assertEquals(4, entries.size());
+        Assert.assertEquals(6, entries.get(0).getValue());
+        Assert.assertEquals(9, entries.get(3).getValue());
+        Assert.assertEquals(2, journal.read(2, null).size());
+        Assert.assertEquals(9, journal.read(2, null).get(1).getValue());
+    }
+
+    @Test
+    public void journalSurvivesARestart() throws IOException {
+        Path file = journalFile();
+        LifecycleJournal journal = new LifecycleJournal(file, 8);
+        journal.append(LifecycleJournal.Event.SESSION_STARTED, "before restart", 1);
+
+        LifecycleJournal reopened = new LifecycleJournal(file, 8);
+        reopened.append(LifecycleJournal.Event.NODE_TORN_DOWN, "after restart", 2);
+
+        List<LifecycleJournal.Entry> entries = reopened.read(10, null);
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals("before restart", entries.get(0).getSubject());
+        Assert.assertEquals(2, entries.get(1).getSequence());
+    }
+
+    @Test
+    public void longSubjectsAreTruncatedAndCanBeFiltered() throws IOException {
+        LifecycleJournal journal = new LifecycleJournal(journalFile(), 8);
+        String longSubject = "http://a-very-long-host-name.example.com:40000/wd/hub";
+
+        journal.append(LifecycleJournal.Event.SESSION_STARTED, longSubject, 1);
+        journal.append(LifecycleJournal.Event.SESSION_STARTED, "http://localhost:40001", 1);
+
+        List<LifecycleJournal.Entry> entries = journal.read(10, "long-host-name");
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals(longSubject.substring(0, LifecycleJournal.SUBJECT_SIZE), entries.get(0).getSubject());
+    }
+
+    @Test
+    public void valuesAreNotTruncated() throws IOException {
+        LifecycleJournal journal = new LifecycleJournal(journalFile(), 8);
+        long executionTime = Integer.MAX_VALUE + 10L;
+
+        journal.append(LifecycleJournal.Event.SESSION_STOPPED, "http://localhost:40000", executionTime);
+        journal.append(LifecycleJournal.Event.SESSION_STOPPED, "http://localhost:40000", -1);
+
+        List<LifecycleJournal.Entry> entries = journal.read(10, null);
+        Assert.assertEquals(executionTime, entries.get(0).getValue());
+        Assert.assertEquals(-1, entries.get(1).getValue());
+    }
+
+    private Path journalFile() {
+        return temporaryFolder.getRoot().toPath().resolve("journal.bin");
+    }
+
+}
@@ -0,0 +1,116 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class NewSessionBodyRewriterTest {
+
+    private NewSessionBodyRewriter rewriter;
+    private Map<String, String> credentials;
+
+    @Before
+    public void setUp() {
+        rewriter = new NewSessionBodyRewriter();
+        credentials = new LinkedHashMap<>();
+        credentials.put("username", "user");
+        credentials.put("accessKey", "key");
+    }
+
+    @Test
+    public void credentialsAreAddedToDesiredCapabilities() {
+        String body = "{\"desiredCapabilities\":{\"browserName\":\"safari\",\"platform\":\"MAC\"}}";
+
+        String rewritten = rewriter.rewrite(body, credentials);
+
+        Assert.assertEquals("{\"desiredCapabilities\":{\"browserName\":\"safari\",\"platform\":\"MAC\"," +
+                "\"username\":\"user\",\"accessKey\":\"key\"}}", rewritten);
+    }
+
+    @Test
+    public void outputIsTheSameAsTheTreeBasedRewrite() {
+        String body = "{\"desiredCapabilities\":{\"browserName\":\"chrome\",\"version\":\"\",\"count\":10," +
+                "\"ratio\":1.50,\"enabled\":true,\"proxy\":null,\"args\":[\"--a\",\"<b>\"],\"username\":\"old\"}," +
+                "\"requiredCapabilities\":{}}";
+        JsonObject jsonObject = new JsonParser().parse(body).getAsJsonObject();
+        JsonObject desiredCapabilities = jsonObject.getAsJsonObject("desiredCapabilities");
+        desiredCapabilities.remove("username");
+        desiredCapabilities.addProperty("username", "user");
+        desiredCapabilities.addProperty("accessKey", "key");
+
+        Assert.assertEquals(jsonObject.toString(), rewriter.rewrite(body, credentials));
+    }
+
+    @Test
+    public void nullCredentialsAreWrittenAsJsonNulls() {
+        Map<String, String> nullCredentials = new LinkedHashMap<>();
+        nullCredentials.put("username", null);
+        nullCredentials.put("accessKey", null);
+
+        String rewritten = rewriter.rewrite("{\"desiredCapabilities\":{}}", nullCredentials);
+
+        Assert.assertEquals("{\"desiredCapabilities\":{\"username\":null,\"accessKey\":null}}", rewritten);
+    }
+
+    @Test
+    public void credentialsAreAddedToW3CAlwaysMatch() {
+        String body = "{\"capabilities\":{\"alwaysMatch\":{\"browserName\":\"safari\"}," +
+                "\"firstMatch\":[{\"platformName\":\"mac\"}]}}";
+
+        String rewritten = rewriter.rewrite(body, credentials);
+
+        Assert.assertEquals("{\"capabilities\":{\"alwaysMatch\":{\"browserName\":\"safari\",\"username\":\"user\"," +
+                "\"accessKey\":\"key\"},\"firstMatch\":[{\"platformName\":\"mac\"}]}}", rewritten);
+    }
+
+    @Test
+    public void alwaysMatchIsCreatedWhenW3CBodyHasOnlyFirstMatch() {
+        String body = "{\"capabilities\":{\"firstMatch\":[{\"browserName\":\"safari\"}]}}";
+
+        String rewritten = rewriter.rewrite(body, credentials);
+
+        Assert.assertEquals("{\"capabilities\":{\"firstMatch\":[{\"browserName\":\"safari\"}]," +
+                "\"alwaysMatch\":{\"username\":\"user\",\"accessKey\":\"key\"}}}", rewritten);
+    }
+
+    @Test
+    public void bothDialectsAreRewrittenWhenPresent() {
+        String body = "{\"desiredCapabilities\":{\"browserName\":\"safari\"}," +
+                "\"capabilities\":{\"alwaysMatch\":{\"browserName\":\"safari\"}}}";
+
+        JsonObject rewritten = new JsonParser().parse(rewriter.rewrite(body, credentials)).getAsJsonObject();
+
+        Assert.assertEquals("user", rewritten.getAsJsonObject("desiredCapabilities").get("username").getAsString());
+        Assert.assertEquals("key", rewritten.getAsJsonObject("capabilities").getAsJsonObject("alwaysMatch")
+                .get("accessKey").getAsString());
+    }
+
+    @Test
+    public void desiredCapabilitiesAreCreatedWhenMissing() {
+        String rewritten = rewriter.rewrite("{\"sessionId\":null}", credentials);
+
+        Assert.assertEquals("{\"sessionId\":null,\"desiredCapabilities\":{\"username\":\"user\"," +
+                "\"accessKey\":\"key\"}}", rewritten);
+    }
+
+    @Test
+    public void nullDesiredCapabilitiesAreReplaced() {
+        String rewritten = rewriter.rewrite("{\"desiredCapabilities\":null}", credentials);
+
+        Assert.assertEquals("{\"desiredCapabilities\":{\"username\":\"user\",\"accessKey\":\"key\"}}", rewritten);
+    }
+
+    @Test
+    public void invalidBodiesAreNotModified() {
+        Assert.assertNull(rewriter.rewrite(null, credentials));
+        Assert.assertEquals("", rewriter.rewrite("", credentials));
+        Assert.assertEquals("[1,2]", rewriter.rewrite("[1,2]", credentials));
+        Assert.assertEquals("{\"desiredCapabilities\":{", rewriter.rewrite("{\"desiredCapabilities\":{", credentials));
+    }
+
+}
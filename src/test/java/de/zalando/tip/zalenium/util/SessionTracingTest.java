@@ -0,0 +1,89 @@
+package de.zalando.tip.zalenium.util;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openqa.grid.internal.DefaultTimeSource;
+import org.openqa.grid.internal.TestSession;
+import org.openqa.grid.internal.TestSlot;
+import org.openqa.grid.web.servlet.handler.RequestType;
+import org.openqa.grid.web.servlet.handler.WebDriverRequest;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SessionTracingTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sessionPhasesAreRecordedAndExported() throws IOException {
+        Path traceFile = temporaryFolder.getRoot().toPath().resolve("traces.json");
+        OtlpTraceExporter exporter = new OtlpTraceExporter(traceFile, 10, false);
+        SessionTracing sessionTracing = new SessionTracing(10, exporter);
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put("browserName", "chrome");
+
+        SessionTrace trace = sessionTracing.traceFor(requestedCapability);
+        assertThat(trace == sessionTracing.traceFor(requestedCapability), is(true));
+        trace.startSpan(SessionTracing.CONTAINER_LAUNCH).end();
+
+        TestSession session = new TestSession(mock(TestSlot.class), requestedCapability,
+                new DefaultTimeSource());
+        sessionTracing.sessionAssigned(requestedCapability, session, "http://localhost:40000");
+        assertThat(SessionTracing.getTrace(session) == trace, is(true));
+
+        WebDriverRequest request = mock(WebDriverRequest.class);
+        when(request.getRequestType()).thenReturn(RequestType.REGULAR);
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getPathInfo()).thenReturn("/session/123/url");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getStatus()).thenReturn(200);
+        SessionTracing.commandStarted(session, request);
+        SessionTracing.commandFinished(session, response);
+        sessionTracing.finish(trace);
+        exporter.writeQueuedTraces();
+
+        List<SessionTrace.Span> spans = trace.getSpans();
+        assertThat(spans.get(0).getName(), is(SessionTracing.QUEUE_WAIT));
+        assertThat(spans.get(0).isEnded(), is(true));
+        assertThat(spans.get(2).getAttributes().get("http.status_code"), is("200"));
+        assertThat(sessionTracing.getTrace(trace.getTraceId()) == trace, is(true));
+
+        List<String> lines = Files.readAllLines(traceFile, StandardCharsets.UTF_8);
+        assertThat(lines.size(), is(1));
+        JsonObject exported = new JsonParser().parse(lines.get(0)).getAsJsonObject();
+        assertThat(exported.getAsJsonArray("resourceSpans").get(0).getAsJsonObject().getAsJsonArray("scopeSpans")
+                .get(0).getAsJsonObject().getAsJsonArray("spans").size(), is(4));
+        assertThat(lines.get(0), containsString("/session/123/url"));
+    }
+
+    @Test
+    public void commandSpansAreCapped() {
+        SessionTrace trace = new SessionTrace("session");
+        for (int i = 0; i < SessionTrace.MAX_COMMAND_SPANS + 5; i++) {
+            SessionTrace.Span span = trace.startCommandSpan(SessionTracing.COMMAND);
+            if (span != null) {
+                span.end();
+            }
+        }
+        assertThat(trace.getSpans().size(), is(SessionTrace.MAX_COMMAND_SPANS));
+        assertThat(trace.getDroppedSpans(), is(5));
+    }
+
+}
@@ -0,0 +1,65 @@
+package de.zalando.tip.zalenium.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class StateStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void stateIsReloadedFromTheSnapshotAndTheLog() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        StateStore store = new StateStore(directory);
+        store.put("container/local/zalenium_40000", "{\"port\":40000}");
+        store.put("container/local/zalenium_40001", "{\"port\":40001}");
+        store.put("capabilities", "{}");
+        store.remove("container/local/zalenium_40000");
+
+        StateStore reloaded = new StateStore(directory);
+
+        Assert.assertEquals("{}", reloaded.get("capabilities"));
+        Assert.assertNull(reloaded.get("container/local/zalenium_40000"));
+        Assert.assertEquals(1, reloaded.getAll("container/").size());
+        Assert.assertEquals("{\"port\":40001}", reloaded.get("container/local/zalenium_40001"));
+        // Reloading compacts the log into the snapshot
+        Assert.assertEquals(0, Files.size(directory.resolve(StateStore.LOG_FILE)));
+    }
+
+    @Test
+    public void entryTornByACrashIsIgnored() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        StateStore store = new StateStore(directory);
+        store.put("first", "1");
+        Files.write(directory.resolve(StateStore.LOG_FILE), "{\"key\":\"second\",\"val".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        StateStore reloaded = new StateStore(directory);
+
+        Assert.assertEquals("1", reloaded.get("first"));
+        Assert.assertNull(reloaded.get("second"));
+    }
+
+    @Test
+    public void logIsCompactedAfterManyChanges() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        StateStore store = new StateStore(directory);
+        for (int i = 0; i < StateStore.COMPACT_AFTER_ENTRIES + 10; i++) {
+            store.put("key", String.valueOf(i));
+        }
+
+        Assert.assertTrue(Files.readAllLines(directory.resolve(StateStore.LOG_FILE)).size() <= 10);
+        Assert.assertEquals(String.valueOf(StateStore.COMPACT_AFTER_ENTRIES + 9),
+                new StateStore(directory).get("key"));
+    }
+
+}
@@ -0,0 +1,39 @@
+package de.zalando.tip.zalenium.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ZaleniumPrioritizerTest {
+
+    @Test
+    public void requestsWithHigherPriorityAreServedFirst() {
+        List<Map<String, Object>> queue = new ArrayList<>();
+        queue.add(request("nightly-1", -1));
+        queue.add(request("default-1", null));
+        queue.add(request("pre-merge-1", 10));
+        queue.add(request("default-2", "not a number"));
+        queue.add(request("pre-merge-2", "10"));
+
+        ZaleniumPrioritizer prioritizer = new ZaleniumPrioritizer();
+        queue.sort(prioritizer::compareTo);
+
+        List<Object> names = new ArrayList<>();
+        queue.forEach(request -> names.add(request.get("name")));
+        Assert.assertEquals("[pre-merge-1, pre-merge-2, default-1, default-2, nightly-1]", names.toString());
+    }
+
+    private static Map<String, Object> request(String name, Object priority) {
+        Map<String, Object> requestedCapability = new HashMap<>();
+        requestedCapability.put("name", name);
+        if (priority != null) {
+            requestedCapability.put(ZaleniumPrioritizer.PRIORITY_CAPABILITY, priority);
+        }
+        return requestedCapability;
+    }
+
+}